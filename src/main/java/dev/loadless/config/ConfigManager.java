@@ -1,22 +1,75 @@
 package dev.loadless.config;
 
 import org.w3c.dom.*;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
 import javax.xml.parsers.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import dev.loadless.core.Logger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * config.xml: DOM для записи (authKey, параметры модулей, localize) и неизменяемый
+ * {@link ConfigSnapshot} для чтения. Все обращения к DOM идут под монитором менеджера;
+ * после каждого изменения или перечитывания файла публикуется новый снимок, и
+ * подписчики получают пару (прежний, новый).
+ * <p>
+ * Изменения через сеттеры сохраняются отложенно: серия изменений за
+ * {@code <core><persistence><flushInterval>} мс записывается одним разом в фоновом
+ * потоке (временный файл и переименование), а {@link #close()} дописывает остаток.
+ */
 public class ConfigManager {
     private static final String CONFIG_FILE = "config.xml";
+
+    /** Подписчик на смену снимка; вызывается вне монитора менеджера. */
+    public interface ReloadListener {
+        void onConfigReload(ConfigSnapshot previous, ConfigSnapshot current);
+    }
+
     private Document configDoc;
     private File configFile;
     private Logger logger;
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+    private final List<ReloadListener> listeners = new CopyOnWriteArrayList<>();
+    // SHA-256 содержимого файла, которое сейчас в памяти: собственная запись не вызывает перечитывания
+    private byte[] loadedDigest;
+    private ConfigWatcher watcher;
+    // Отложенная запись: dirty и pendingFlush защищены монитором менеджера
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Loadless-ConfigWriter");
+        t.setDaemon(true);
+        return t;
+    });
+    // Порядок записей в файл; берётся раньше монитора менеджера
+    private final Object writeLock = new Object();
+    private boolean dirty;
+    private boolean closed;
+    private ScheduledFuture<?> pendingFlush;
 
     public ConfigManager(Logger logger) throws Exception {
         this.logger = logger;
@@ -25,6 +78,7 @@ public class ConfigManager {
             createDefaultConfig();
         }
         loadConfig();
+        snapshot.set(new ConfigSnapshot(configDoc, logger));
         // Генерация ключа при первом запуске
         if (getAuthKey() == null || getAuthKey().isEmpty()) {
             String key = generateRandomKey(48);
@@ -52,6 +106,139 @@ public class ConfigManager {
         Element port = configDoc.createElement("port");
         port.setTextContent("25566");
         core.appendChild(port);
+        // <engine>: blocking (поток на подключение) или nio (selector-потоки)
+        Element engine = configDoc.createElement("engine");
+        engine.setTextContent("blocking");
+        core.appendChild(engine);
+        // <threads>: виртуальные потоки на Java 21+, иначе ограниченный пул
+        Element threads = configDoc.createElement("threads");
+        Element threadMode = configDoc.createElement("mode");
+        threadMode.setTextContent("auto");
+        threads.appendChild(threadMode);
+        Element maxPlatform = configDoc.createElement("maxPlatform");
+        maxPlatform.setTextContent("1024");
+        threads.appendChild(maxPlatform);
+        core.appendChild(threads);
+        // <relay>: буферы и параметры сокетов для пересылки после логина (0 — значение ОС)
+        Element relay = configDoc.createElement("relay");
+        Element tcpNoDelay = configDoc.createElement("tcpNoDelay");
+        tcpNoDelay.setTextContent("true");
+        relay.appendChild(tcpNoDelay);
+        Element sendBuffer = configDoc.createElement("sendBuffer");
+        sendBuffer.setTextContent("0");
+        relay.appendChild(sendBuffer);
+        Element receiveBuffer = configDoc.createElement("receiveBuffer");
+        receiveBuffer.setTextContent("0");
+        relay.appendChild(receiveBuffer);
+        Element bufferSize = configDoc.createElement("bufferSize");
+        bufferSize.setTextContent("16384");
+        relay.appendChild(bufferSize);
+        Element maxBufferSize = configDoc.createElement("maxBufferSize");
+        maxBufferSize.setTextContent("131072");
+        relay.appendChild(maxBufferSize);
+        core.appendChild(relay);
+        // <limits>: допуск подключений (в секунду; 0 — без ограничения)
+        Element limits = configDoc.createElement("limits");
+        Element maxPerIp = configDoc.createElement("maxPerIp");
+        maxPerIp.setTextContent("16");
+        limits.appendChild(maxPerIp);
+        limits.appendChild(createRateLimits("ip", 8, 4, 2));
+        limits.appendChild(createRateLimits("global", 1000, 500, 100));
+        core.appendChild(limits);
+        // <prelogin>: сроки фаз до логина (мс) и пределы длины пакета в них (байт)
+        Element prelogin = configDoc.createElement("prelogin");
+        String[][] preloginDefaults = {
+                {"handshakeTimeout", "3000"}, {"statusTimeout", "3000"}, {"pingTimeout", "300"}, {"loginTimeout", "5000"},
+                {"maxHandshakeFrame", "2048"}, {"maxStatusFrame", "64"}, {"maxLoginFrame", "8192"}};
+        for (String[] param : preloginDefaults) {
+            Element el = configDoc.createElement(param[0]);
+            el.setTextContent(param[1]);
+            prelogin.appendChild(el);
+        }
+        core.appendChild(prelogin);
+        // <accept>: число потоков accept (SO_REUSEPORT, 0 — по числу ядер) и очередь ожидающих подключений
+        Element accept = configDoc.createElement("accept");
+        Element acceptors = configDoc.createElement("acceptors");
+        acceptors.setTextContent("1");
+        accept.appendChild(acceptors);
+        Element backlog = configDoc.createElement("backlog");
+        backlog.setTextContent("1024");
+        accept.appendChild(backlog);
+        core.appendChild(accept);
+        // <persistence>: задержка записи изменений из сеттеров и модулей в config.xml, мс
+        Element persistence = configDoc.createElement("persistence");
+        Element flushInterval = configDoc.createElement("flushInterval");
+        flushInterval.setTextContent("1000");
+        persistence.appendChild(flushInterval);
+        core.appendChild(persistence);
+        // <logging>: уровень (debug, info, warn, error), размер файла лога до ротации (байт)
+        // и поведение при переполнении буфера лога (drop — отбросить строку, block — ждать)
+        Element logging = configDoc.createElement("logging");
+        Element logLevel = configDoc.createElement("level");
+        logLevel.setTextContent("info");
+        logging.appendChild(logLevel);
+        Element maxFileSize = configDoc.createElement("maxFileSize");
+        maxFileSize.setTextContent("10485760");
+        logging.appendChild(maxFileSize);
+        Element overflow = configDoc.createElement("overflow");
+        overflow.setTextContent("drop");
+        logging.appendChild(overflow);
+        core.appendChild(logging);
+        // <metrics>: эндпоинт /metrics в формате Prometheus (по умолчанию выключен; адрес — только localhost).
+        // Теги не host/port, чтобы не совпасть с <core><host>/<port> при поиске по имени
+        Element metrics = configDoc.createElement("metrics");
+        Element metricsEnabled = configDoc.createElement("enabled");
+        metricsEnabled.setTextContent("false");
+        metrics.appendChild(metricsEnabled);
+        Element metricsHost = configDoc.createElement("address");
+        metricsHost.setTextContent("127.0.0.1");
+        metrics.appendChild(metricsHost);
+        Element metricsPort = configDoc.createElement("listen");
+        metricsPort.setTextContent("9225");
+        metrics.appendChild(metricsPort);
+        core.appendChild(metrics);
+        // <trace>: порог медленного подключения для лога (мс, 0 — не логировать) и число
+        // последних входов и ping, которые хранятся для команды trace
+        Element trace = configDoc.createElement("trace");
+        Element slowThreshold = configDoc.createElement("slowThreshold");
+        slowThreshold.setTextContent("2000");
+        trace.appendChild(slowThreshold);
+        Element history = configDoc.createElement("history");
+        history.setTextContent("256");
+        trace.appendChild(history);
+        core.appendChild(trace);
+        // <shutdown>: сколько ждать (мс) отключения игроков при остановке, прежде чем закрыть их сессии
+        Element shutdown = configDoc.createElement("shutdown");
+        Element grace = configDoc.createElement("grace");
+        grace.setTextContent("10000");
+        shutdown.appendChild(grace);
+        core.appendChild(shutdown);
+        // <lua>: бюджет вызова Lua-обработчика (инструкции и мс, 0 — без лимита), срок консольной
+        // команды модуля и число превышений, после которого обработчик отключается (0 — никогда)
+        Element lua = configDoc.createElement("lua");
+        Element instructionLimit = configDoc.createElement("instructionLimit");
+        instructionLimit.setTextContent("1000000");
+        lua.appendChild(instructionLimit);
+        Element handlerTimeout = configDoc.createElement("handlerTimeout");
+        handlerTimeout.setTextContent("100");
+        lua.appendChild(handlerTimeout);
+        Element commandTimeout = configDoc.createElement("commandTimeout");
+        commandTimeout.setTextContent("5000");
+        lua.appendChild(commandTimeout);
+        Element maxViolations = configDoc.createElement("maxViolations");
+        maxViolations.setTextContent("5");
+        lua.appendChild(maxViolations);
+        // pingBudget: сколько (мс) ответ status ждёт всю цепочку onPing, иначе уходит ответ без Lua
+        Element pingBudget = configDoc.createElement("pingBudget");
+        pingBudget.setTextContent("50");
+        lua.appendChild(pingBudget);
+        // compile: none — main.lua разбирается при каждом запуске; luac — скомпилированные чанки
+        // кэшируются в modules/.cache по хэшу модуля; luajc — вдобавок компиляция в байткод JVM
+        // (только для модулей без лимитов инструкций и времени, остальные загружаются как luac)
+        Element compile = configDoc.createElement("compile");
+        compile.setTextContent("none");
+        lua.appendChild(compile);
+        core.appendChild(lua);
         // <version>
         Element version = configDoc.createElement("version");
         Element versionName = configDoc.createElement("name");
@@ -60,6 +247,9 @@ public class ConfigManager {
         Element versionProtocol = configDoc.createElement("protocol");
         versionProtocol.setTextContent("765");
         version.appendChild(versionProtocol);
+        Element echoProtocol = configDoc.createElement("echoProtocol");
+        echoProtocol.setTextContent("false");
+        version.appendChild(echoProtocol);
         core.appendChild(version);
         // <motd>
         Element motd = configDoc.createElement("motd");
@@ -78,7 +268,28 @@ public class ConfigManager {
         Element realPort = configDoc.createElement("port");
         realPort.setTextContent("25565");
         realServer.appendChild(realPort);
+        Element pollInterval = configDoc.createElement("pollInterval");
+        pollInterval.setTextContent("5000");
+        realServer.appendChild(pollInterval);
         rootElement.appendChild(realServer);
+        // <backends>: пул реальных серверов; пока он пуст, используется <realServer>
+        Element backends = configDoc.createElement("backends");
+        Element strategy = configDoc.createElement("strategy");
+        strategy.setTextContent("round-robin");
+        backends.appendChild(strategy);
+        // <health>: circuit breaker и таймаут подключения к backend
+        Element health = configDoc.createElement("health");
+        Element failures = configDoc.createElement("failures");
+        failures.setTextContent("2");
+        health.appendChild(failures);
+        Element openTime = configDoc.createElement("openTime");
+        openTime.setTextContent("10000");
+        health.appendChild(openTime);
+        Element connectTimeout = configDoc.createElement("connectTimeout");
+        connectTimeout.setTextContent("2000");
+        health.appendChild(connectTimeout);
+        backends.appendChild(health);
+        rootElement.appendChild(backends);
         // <modules>
         Element modules = configDoc.createElement("modules");
         rootElement.appendChild(modules);
@@ -87,100 +298,402 @@ public class ConfigManager {
         Element offline = configDoc.createElement("offline");
         offline.setTextContent("offline");
         localize.appendChild(offline);
+        Element full = configDoc.createElement("full");
+        full.setTextContent("Server is full");
+        localize.appendChild(full);
+        Element restarting = configDoc.createElement("restarting");
+        restarting.setTextContent("Server is restarting");
+        localize.appendChild(restarting);
         rootElement.appendChild(localize);
-        // <extraProxies>
+        // <extraProxies>: переадресации запускаются при старте, поэтому по умолчанию список пуст
         Element extraProxies = configDoc.createElement("extraProxies");
-        Element proxy = configDoc.createElement("proxy");
-        Element listen = configDoc.createElement("listen");
-        listen.setTextContent("25570");
-        proxy.appendChild(listen);
-        Element targetHost = configDoc.createElement("targetHost");
-        targetHost.setTextContent("127.0.0.1");
-        proxy.appendChild(targetHost);
-        Element targetPort = configDoc.createElement("targetPort");
-        targetPort.setTextContent("25580");
-        proxy.appendChild(targetPort);
-        extraProxies.appendChild(proxy);
         rootElement.appendChild(extraProxies);
         saveConfig();
     }
 
+    private Element createRateLimits(String tag, int connections, int pings, int logins) {
+        Element el = configDoc.createElement(tag);
+        Element c = configDoc.createElement("connections");
+        c.setTextContent(String.valueOf(connections));
+        el.appendChild(c);
+        Element p = configDoc.createElement("pings");
+        p.setTextContent(String.valueOf(pings));
+        el.appendChild(p);
+        Element l = configDoc.createElement("logins");
+        l.setTextContent(String.valueOf(logins));
+        el.appendChild(l);
+        return el;
+    }
+
     private void loadConfig() throws Exception {
+        byte[] content = Files.readAllBytes(configFile.toPath());
+        configDoc = parse(content);
+        loadedDigest = digest(content);
+    }
+
+    private static Document parse(byte[] content) throws Exception {
         DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
         DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        configDoc = dBuilder.parse(configFile);
-        configDoc.getDocumentElement().normalize();
-    }
-
-    public void saveConfig() throws TransformerException {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        DOMSource source = new DOMSource(configDoc);
-        StreamResult result = new StreamResult(configFile);
-        transformer.transform(source, result);
+        // Ошибку разбора сообщает вызывающий, без печати парсера в stderr
+        dBuilder.setErrorHandler(new DefaultHandler() {
+            @Override
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                throw e;
+            }
+        });
+        Document doc = dBuilder.parse(new ByteArrayInputStream(content));
+        doc.getDocumentElement().normalize();
+        return doc;
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Записать конфиг немедленно, не дожидаясь отложенной записи. */
+    public void saveConfig() throws IOException {
+        synchronized (this) {
+            dirty = true;
+        }
+        flush();
+    }
+
+    /**
+     * Записать накопленные изменения, если они есть. Файл пишется во временный
+     * config.xml.tmp и переименовывается поверх config.xml, поэтому при сбое на диске
+     * остаётся либо прежний, либо новый конфиг целиком.
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            byte[] content;
+            byte[] contentDigest;
+            byte[] previousDigest;
+            synchronized (this) {
+                if (!dirty) return;
+                content = serialize();
+                contentDigest = digest(content);
+                // Отметить содержимое до записи, чтобы наблюдатель не перечитал собственный файл
+                previousDigest = loadedDigest;
+                loadedDigest = contentDigest;
+                dirty = false;
+            }
+            try {
+                writeAtomically(configFile.getAbsoluteFile().toPath(), content);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (Arrays.equals(loadedDigest, contentDigest)) loadedDigest = previousDigest;
+                    markDirty();
+                }
+                throw e;
+            }
+        }
         if (logger != null) logger.log("[Config] Конфиг сохранён: " + configFile.getAbsolutePath());
     }
 
+    /** Остановить отслеживание и записать несохранённые изменения; вызывается при завершении. */
+    public void close() {
+        stopWatching();
+        synchronized (this) {
+            closed = true;
+            if (pendingFlush != null) pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.error("[Config] Не удалось сохранить конфиг при завершении: " + e.getMessage());
+        }
+        writer.shutdown();
+    }
+
+    // Вызывается под монитором: запланировать запись, если она ещё не запланирована
+    private void markDirty() {
+        dirty = true;
+        if (closed || pendingFlush != null) return;
+        long delay = Math.max(0, snapshot.get().configFlushInterval);
+        pendingFlush = writer.schedule(this::flushScheduled, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushScheduled() {
+        synchronized (this) {
+            pendingFlush = null;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.error("[Config] Не удалось сохранить конфиг, повтор позже: " + e.getMessage());
+        }
+    }
+
+    private byte[] serialize() throws IOException {
+        try {
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            Transformer transformer = transformerFactory.newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            transformer.transform(new DOMSource(configDoc), new StreamResult(out));
+            return out.toByteArray();
+        } catch (TransformerException e) {
+            throw new IOException("Не удалось сериализовать конфиг: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** DOM конфига; обращаться к нему можно только под монитором этого менеджера. */
     public Document getConfigDoc() {
         return configDoc;
     }
 
-    // Новый способ получения параметров
-    private Element getElementByTagChain(String... tags) {
-        Element el = configDoc.getDocumentElement();
-        for (String tag : tags) {
-            NodeList nl = el.getElementsByTagName(tag);
-            if (nl.getLength() == 0) return null;
-            el = (Element) nl.item(0);
+    public void addReloadListener(ReloadListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeReloadListener(ReloadListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Следить за config.xml и перечитывать его при изменении (поток-демон). */
+    public synchronized void startWatching() {
+        if (watcher != null) return;
+        try {
+            watcher = new ConfigWatcher(configFile.getAbsoluteFile().toPath(), this::reload, logger);
+            watcher.start();
+        } catch (IOException e) {
+            watcher = null;
+            logger.error("[Config] Не удалось включить отслеживание " + configFile.getAbsolutePath() + ": " + e.getMessage());
         }
-        return el;
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) watcher.stop();
+        watcher = null;
+    }
+
+    /**
+     * Перечитать config.xml. Файл с тем же содержимым (в том числе только что
+     * сохранённый самим менеджером) и файл с ошибками разбора не меняют снимок.
+     * @return true, если опубликован новый снимок
+     */
+    public boolean reload() {
+        ConfigSnapshot previous;
+        ConfigSnapshot current;
+        synchronized (this) {
+            byte[] content;
+            Document doc;
+            try {
+                content = Files.readAllBytes(configFile.toPath());
+                byte[] contentDigest = digest(content);
+                if (Arrays.equals(contentDigest, loadedDigest)) return false;
+                doc = parse(content);
+                current = new ConfigSnapshot(doc, logger);
+                loadedDigest = contentDigest;
+            } catch (Exception e) {
+                logger.error("[Config] Не удалось перечитать " + configFile.getName() + ", остаётся прежний конфиг: " + e.getMessage());
+                return false;
+            }
+            if (dirty) {
+                // Файл изменён снаружи раньше, чем записаны изменения из сеттеров: побеждает файл
+                logger.error("[Config] Несохранённые изменения заменены содержимым " + configFile.getName());
+                dirty = false;
+                if (pendingFlush != null) pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            configDoc = doc;
+            previous = snapshot.getAndSet(current);
+        }
+        logger.log("[Config] Конфиг перечитан из " + configFile.getAbsolutePath());
+        notifyListeners(previous, current);
+        return true;
+    }
+
+    // Пересобрать снимок после изменения DOM через сеттеры
+    private void publish() {
+        ConfigSnapshot previous;
+        ConfigSnapshot current;
+        synchronized (this) {
+            current = new ConfigSnapshot(configDoc, logger);
+            previous = snapshot.getAndSet(current);
+        }
+        notifyListeners(previous, current);
+    }
+
+    private void notifyListeners(ConfigSnapshot previous, ConfigSnapshot current) {
+        for (ReloadListener listener : listeners) {
+            try {
+                listener.onConfigReload(previous, current);
+            } catch (RuntimeException e) {
+                logger.error("[Config] Ошибка применения нового конфига: " + e.getMessage());
+            }
+        }
+    }
+
+    // Параметры читаются из неизменяемого снимка: без обхода DOM и безопасно из любых потоков
+    public ConfigSnapshot getSnapshot() {
+        return snapshot.get();
     }
 
     public String getCoreHost() {
-        Element el = getElementByTagChain("core", "host");
-        return el != null ? el.getTextContent() : "0.0.0.0";
+        return snapshot.get().coreHost;
     }
     public int getCorePort() {
-        Element el = getElementByTagChain("core", "port");
-        try { return el != null ? Integer.parseInt(el.getTextContent()) : 25565; } catch (Exception e) { return 25565; }
+        return snapshot.get().corePort;
+    }
+    public String getEngine() {
+        return snapshot.get().engine;
+    }
+    // Число selector-потоков NIO-движка (0 — по числу ядер)
+    public int getIoThreads() {
+        return snapshot.get().ioThreads;
+    }
+    // Режим потоков блокирующего движка: auto, virtual или platform
+    public String getThreadMode() {
+        return snapshot.get().threadMode;
+    }
+    public int getMaxPlatformThreads() {
+        return snapshot.get().maxPlatformThreads;
+    }
+    // Параметры пересылки байт после логина: <core><relay>
+    public boolean getRelayTcpNoDelay() {
+        return snapshot.get().relayTcpNoDelay;
+    }
+    public int getRelaySendBuffer() {
+        return snapshot.get().relaySendBuffer;
+    }
+    public int getRelayReceiveBuffer() {
+        return snapshot.get().relayReceiveBuffer;
+    }
+    public int getRelayBufferSize() {
+        return snapshot.get().relayBufferSize;
+    }
+    public int getRelayMaxBufferSize() {
+        return snapshot.get().relayMaxBufferSize;
+    }
+    // Допуск подключений: <core><limits> (частоты — в секунду, 0 — без ограничения)
+    public int getLimitMaxPerIp() {
+        return snapshot.get().limitMaxPerIp;
+    }
+    public int getLimitIpConnections() {
+        return snapshot.get().limitIpConnections;
+    }
+    public int getLimitIpPings() {
+        return snapshot.get().limitIpPings;
+    }
+    public int getLimitIpLogins() {
+        return snapshot.get().limitIpLogins;
+    }
+    public int getLimitGlobalConnections() {
+        return snapshot.get().limitGlobalConnections;
+    }
+    public int getLimitGlobalPings() {
+        return snapshot.get().limitGlobalPings;
+    }
+    public int getLimitGlobalLogins() {
+        return snapshot.get().limitGlobalLogins;
+    }
+    // Фазы до логина: <core><prelogin>
+    public long getHandshakeTimeout() {
+        return snapshot.get().handshakeTimeout;
+    }
+    public long getStatusTimeout() {
+        return snapshot.get().statusTimeout;
+    }
+    public long getPingTimeout() {
+        return snapshot.get().pingTimeout;
+    }
+    public long getLoginTimeout() {
+        return snapshot.get().loginTimeout;
+    }
+    public int getMaxHandshakeFrame() {
+        return snapshot.get().maxHandshakeFrame;
+    }
+    public int getMaxStatusFrame() {
+        return snapshot.get().maxStatusFrame;
+    }
+    public int getMaxLoginFrame() {
+        return snapshot.get().maxLoginFrame;
+    }
+    // Приём подключений: <core><accept>
+    public int getAcceptors() {
+        return snapshot.get().acceptors;
+    }
+    public int getAcceptBacklog() {
+        return snapshot.get().acceptBacklog;
     }
     public String getVersionName() {
-        Element el = getElementByTagChain("core", "version", "name");
-        return el != null ? el.getTextContent() : "1.20.6";
+        return snapshot.get().versionName;
     }
     public int getVersionProtocol() {
-        Element el = getElementByTagChain("core", "version", "protocol");
-        try { return el != null ? Integer.parseInt(el.getTextContent()) : 765; } catch (Exception e) { return 765; }
+        return snapshot.get().versionProtocol;
+    }
+    // Отвечать на ping протоколом клиента, чтобы любая версия клиента считалась совместимой
+    public boolean getVersionEchoProtocol() {
+        return snapshot.get().versionEchoProtocol;
     }
     public int getPlayersMax() {
-        Element el = getElementByTagChain("core", "players", "max");
-        try { return el != null ? Integer.parseInt(el.getTextContent()) : 20; } catch (Exception e) { return 20; }
+        return snapshot.get().playersMax;
     }
     public int getPlayersOnline() {
-        Element el = getElementByTagChain("core", "players", "online");
-        try { return el != null ? Integer.parseInt(el.getTextContent()) : 1; } catch (Exception e) { return 1; }
+        return snapshot.get().playersOnline;
     }
     public String getDefaultMotd() {
-        Element el = getElementByTagChain("core", "motd");
-        return el != null ? el.getTextContent() : "§aLoadless Proxy Server";
+        return snapshot.get().motd;
+    }
+    // Имя иконки из папки icons для основного прокси (пусто — server-icon.png)
+    public String getIconName() {
+        return snapshot.get().iconName;
     }
     public String getRealServerHost() {
-        Element el = getElementByTagChain("realServer", "host");
-        return el != null ? el.getTextContent() : "127.0.0.1";
+        return snapshot.get().realServerHost;
     }
     public int getRealServerPort() {
-        Element el = getElementByTagChain("realServer", "port");
-        try { return el != null ? Integer.parseInt(el.getTextContent()) : 25566; } catch (Exception e) { return 25566; }
+        return snapshot.get().realServerPort;
+    }
+    // Интервал фонового опроса онлайна реального сервера, мс
+    public long getStatusPollInterval() {
+        return snapshot.get().statusPollInterval;
+    }
+    // Стратегия выбора backend: round-robin, least-connections, hash-uuid или hash-name
+    public String getBalancingStrategy() {
+        return snapshot.get().balancingStrategy;
+    }
+    // Ошибок подряд (проверки или подключения игроков), после которых backend исключается из пула
+    public int getHealthFailureThreshold() {
+        return snapshot.get().healthFailureThreshold;
+    }
+    // Минимальное время исключения backend из пула, мс
+    public long getHealthOpenTime() {
+        return snapshot.get().healthOpenTime;
+    }
+    // Таймаут подключения игрока к backend, мс
+    public int getBackendConnectTimeout() {
+        return snapshot.get().backendConnectTimeout;
     }
     public String getAuthKey() {
-        Element el = getElementByTagChain("core", "authKey");
-        return el != null ? el.getTextContent() : null;
+        return snapshot.get().authKey;
     }
-    public void setAuthKey(String value) throws TransformerException {
-        Element core = getElementByTagChain("core");
-        if (core != null) {
+    public void setAuthKey(String value) {
+        synchronized (this) {
+            Element core = getElementByTagChain("core");
+            if (core == null) return;
             NodeList list = core.getElementsByTagName("authKey");
             Element el;
             if (list.getLength() > 0) {
@@ -190,12 +703,23 @@ public class ConfigManager {
                 core.appendChild(el);
             }
             el.setTextContent(value);
-            saveConfig();
+            markDirty();
+        }
+        publish();
+    }
+
+    private Element getElementByTagChain(String... tags) {
+        Element el = configDoc.getDocumentElement();
+        for (String tag : tags) {
+            NodeList nl = el.getElementsByTagName(tag);
+            if (nl.getLength() == 0) return null;
+            el = (Element) nl.item(0);
         }
+        return el;
     }
 
     // Модули теперь в <modules><module name="..."></module></modules>
-    public Element getOrCreateModuleConfig(String moduleName) {
+    public synchronized Element getOrCreateModuleConfig(String moduleName) {
         NodeList modulesList = configDoc.getElementsByTagName("modules");
         Element modules;
         if (modulesList.getLength() > 0) {
@@ -218,7 +742,7 @@ public class ConfigManager {
         return module;
     }
 
-    public String getModuleParam(String moduleName, String key, String defaultValue) {
+    public synchronized String getModuleParam(String moduleName, String key, String defaultValue) {
         Element module = getOrCreateModuleConfig(moduleName);
         NodeList params = module.getElementsByTagName(key);
         if (params.getLength() > 0) {
@@ -227,7 +751,7 @@ public class ConfigManager {
         return defaultValue;
     }
 
-    public void setModuleParam(String moduleName, String key, String value) throws TransformerException {
+    public synchronized void setModuleParam(String moduleName, String key, String value) {
         Element module = getOrCreateModuleConfig(moduleName);
         NodeList params = module.getElementsByTagName(key);
         Element param;
@@ -238,25 +762,31 @@ public class ConfigManager {
             module.appendChild(param);
         }
         param.setTextContent(value);
-        saveConfig();
+        markDirty();
         if (logger != null) logger.log("[Config] Параметр модуля '" + moduleName + "' -> " + key + " = " + value);
     }
     public String getOfflineFlag() {
-        Element el = getElementByTagChain("localize", "offline");
-        return el != null ? el.getTextContent() : "offline";
+        return snapshot.get().offlineFlag;
     }
-    public void setOfflineFlag(String value) throws TransformerException {
-        Element localize = getOrCreateLocalize();
-        NodeList list = localize.getElementsByTagName("offline");
-        Element el;
-        if (list.getLength() > 0) {
-            el = (Element) list.item(0);
-        } else {
-            el = configDoc.createElement("offline");
-            localize.appendChild(el);
+    public void setOfflineFlag(String value) {
+        synchronized (this) {
+            Element localize = getOrCreateLocalize();
+            NodeList list = localize.getElementsByTagName("offline");
+            Element el;
+            if (list.getLength() > 0) {
+                el = (Element) list.item(0);
+            } else {
+                el = configDoc.createElement("offline");
+                localize.appendChild(el);
+            }
+            el.setTextContent(value);
+            markDirty();
         }
-        el.setTextContent(value);
-        saveConfig();
+        publish();
+    }
+    // Причина отключения, если у всех backend исчерпан лимит игроков
+    public String getFullMessage() {
+        return snapshot.get().fullMessage;
     }
     private Element getOrCreateLocalize() {
         NodeList list = configDoc.getElementsByTagName("localize");
@@ -279,19 +809,50 @@ public class ConfigManager {
             this.targetHost = targetHost;
             this.targetPort = targetPort;
         }
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ExtraProxyConfig)) return false;
+            ExtraProxyConfig other = (ExtraProxyConfig) o;
+            return listenPort == other.listenPort && targetPort == other.targetPort && Objects.equals(targetHost, other.targetHost);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(listenPort, targetHost, targetPort);
+        }
     }
     public List<ExtraProxyConfig> getExtraProxies() {
-        List<ExtraProxyConfig> result = new ArrayList<>();
-        NodeList proxies = configDoc.getElementsByTagName("proxy");
-        for (int i = 0; i < proxies.getLength(); i++) {
-            Element proxy = (Element) proxies.item(i);
-            try {
-                int listen = Integer.parseInt(proxy.getElementsByTagName("listen").item(0).getTextContent());
-                String targetHost = proxy.getElementsByTagName("targetHost").item(0).getTextContent();
-                int targetPort = Integer.parseInt(proxy.getElementsByTagName("targetPort").item(0).getTextContent());
-                result.add(new ExtraProxyConfig(listen, targetHost, targetPort));
-            } catch (Exception ignored) {}
+        return snapshot.get().extraProxies;
+    }
+
+    public static class BackendConfig {
+        public final String name;
+        public final String host;
+        public final int port;
+        // Доля подключений относительно других backend (минимум 1)
+        public final int weight;
+        // Предел одновременных игроков (0 — без ограничения)
+        public final int maxPlayers;
+        public BackendConfig(String name, String host, int port, int weight, int maxPlayers) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.weight = weight;
+            this.maxPlayers = maxPlayers;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BackendConfig)) return false;
+            BackendConfig other = (BackendConfig) o;
+            return name.equals(other.name) && host.equals(other.host) && port == other.port
+                    && weight == other.weight && maxPlayers == other.maxPlayers;
         }
-        return result;
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, host, port, weight, maxPlayers);
+        }
+    }
+    // Пул из <backends><backend>; если он пуст — единственный backend из <realServer>
+    public List<BackendConfig> getBackends() {
+        return snapshot.get().backends;
     }
 }
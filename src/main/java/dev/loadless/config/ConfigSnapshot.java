@@ -0,0 +1,256 @@
+package dev.loadless.config;
+
+import dev.loadless.config.ConfigManager.BackendConfig;
+import dev.loadless.config.ConfigManager.ExtraProxyConfig;
+import dev.loadless.core.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Неизменяемый разобранный config.xml. Строится один раз при загрузке или перечитывании
+ * файла и публикуется через {@link ConfigManager#getSnapshot()}, поэтому горячий путь
+ * (ping, логин) читает готовые поля, а не DOM. Умолчания совпадают с createDefaultConfig.
+ */
+public final class ConfigSnapshot {
+    // <core>
+    public final String coreHost;
+    public final int corePort;
+    public final String engine;
+    public final int ioThreads;
+    public final String threadMode;
+    public final int maxPlatformThreads;
+    // <core><relay>
+    public final boolean relayTcpNoDelay;
+    public final int relaySendBuffer;
+    public final int relayReceiveBuffer;
+    public final int relayBufferSize;
+    public final int relayMaxBufferSize;
+    // <core><limits>
+    public final int limitMaxPerIp;
+    public final int limitIpConnections;
+    public final int limitIpPings;
+    public final int limitIpLogins;
+    public final int limitGlobalConnections;
+    public final int limitGlobalPings;
+    public final int limitGlobalLogins;
+    // <core><prelogin>
+    public final long handshakeTimeout;
+    public final long statusTimeout;
+    public final long pingTimeout;
+    public final long loginTimeout;
+    public final int maxHandshakeFrame;
+    public final int maxStatusFrame;
+    public final int maxLoginFrame;
+    // <core><accept>
+    public final int acceptors;
+    public final int acceptBacklog;
+    // <core><persistence>
+    public final long configFlushInterval;
+    // <core><logging>
+    public final String loggingLevel;
+    public final long loggingMaxFileSize;
+    public final String loggingOverflow;
+    // <core><metrics>
+    public final boolean metricsEnabled;
+    public final String metricsHost;
+    public final int metricsPort;
+    // <core><trace>
+    public final long traceSlowThreshold;
+    public final int traceHistory;
+    // <core><shutdown>
+    public final long shutdownGrace;
+    // <core><lua>
+    public final long luaInstructionLimit;
+    public final long luaHandlerTimeout;
+    public final long luaCommandTimeout;
+    public final int luaMaxViolations;
+    public final long luaPingBudget;
+    public final String luaCompile;
+    // <core><version>, <players>, <motd>, <icon>, <authKey>
+    public final String versionName;
+    public final int versionProtocol;
+    public final boolean versionEchoProtocol;
+    public final int playersMax;
+    public final int playersOnline;
+    public final String motd;
+    public final String iconName;
+    public final String authKey;
+    // <realServer>
+    public final String realServerHost;
+    public final int realServerPort;
+    public final long statusPollInterval;
+    // <backends>
+    public final String balancingStrategy;
+    public final int healthFailureThreshold;
+    public final long healthOpenTime;
+    public final int backendConnectTimeout;
+    public final List<BackendConfig> backends;
+    // <localize>
+    public final String offlineFlag;
+    public final String fullMessage;
+    public final String restartingMessage;
+    // <extraProxies>
+    public final List<ExtraProxyConfig> extraProxies;
+
+    ConfigSnapshot(Document doc, Logger logger) {
+        Element root = doc.getDocumentElement();
+        coreHost = text(root, "0.0.0.0", "core", "host").trim();
+        corePort = integer(root, 25565, "core", "port");
+        engine = text(root, "blocking", "core", "engine").trim().toLowerCase(Locale.ROOT);
+        ioThreads = integer(root, 0, "core", "ioThreads");
+        threadMode = text(root, "auto", "core", "threads", "mode").trim().toLowerCase(Locale.ROOT);
+        maxPlatformThreads = integer(root, 1024, "core", "threads", "maxPlatform");
+        Element tcpNoDelay = element(root, "core", "relay", "tcpNoDelay");
+        relayTcpNoDelay = tcpNoDelay == null || !"false".equalsIgnoreCase(tcpNoDelay.getTextContent().trim());
+        relaySendBuffer = integer(root, 0, "core", "relay", "sendBuffer");
+        relayReceiveBuffer = integer(root, 0, "core", "relay", "receiveBuffer");
+        relayBufferSize = integer(root, 16384, "core", "relay", "bufferSize");
+        relayMaxBufferSize = integer(root, 131072, "core", "relay", "maxBufferSize");
+        limitMaxPerIp = integer(root, 16, "core", "limits", "maxPerIp");
+        limitIpConnections = integer(root, 8, "core", "limits", "ip", "connections");
+        limitIpPings = integer(root, 4, "core", "limits", "ip", "pings");
+        limitIpLogins = integer(root, 2, "core", "limits", "ip", "logins");
+        limitGlobalConnections = integer(root, 1000, "core", "limits", "global", "connections");
+        limitGlobalPings = integer(root, 500, "core", "limits", "global", "pings");
+        limitGlobalLogins = integer(root, 100, "core", "limits", "global", "logins");
+        handshakeTimeout = integer(root, 3000, "core", "prelogin", "handshakeTimeout");
+        statusTimeout = integer(root, 3000, "core", "prelogin", "statusTimeout");
+        pingTimeout = integer(root, 300, "core", "prelogin", "pingTimeout");
+        loginTimeout = integer(root, 5000, "core", "prelogin", "loginTimeout");
+        maxHandshakeFrame = integer(root, 2048, "core", "prelogin", "maxHandshakeFrame");
+        maxStatusFrame = integer(root, 64, "core", "prelogin", "maxStatusFrame");
+        maxLoginFrame = integer(root, 8192, "core", "prelogin", "maxLoginFrame");
+        int acceptorCount = integer(root, 1, "core", "accept", "acceptors");
+        acceptors = acceptorCount > 0 ? acceptorCount : Runtime.getRuntime().availableProcessors();
+        acceptBacklog = integer(root, 1024, "core", "accept", "backlog");
+        configFlushInterval = longValue(root, 1000, "core", "persistence", "flushInterval");
+        loggingLevel = text(root, "info", "core", "logging", "level").trim().toLowerCase(Locale.ROOT);
+        loggingMaxFileSize = longValue(root, 10485760, "core", "logging", "maxFileSize");
+        loggingOverflow = text(root, "drop", "core", "logging", "overflow").trim().toLowerCase(Locale.ROOT);
+        Element metricsFlag = element(root, "core", "metrics", "enabled");
+        metricsEnabled = metricsFlag != null && "true".equalsIgnoreCase(metricsFlag.getTextContent().trim());
+        metricsHost = text(root, "127.0.0.1", "core", "metrics", "address").trim();
+        metricsPort = integer(root, 9225, "core", "metrics", "listen");
+        traceSlowThreshold = longValue(root, 2000, "core", "trace", "slowThreshold");
+        traceHistory = integer(root, 256, "core", "trace", "history");
+        shutdownGrace = longValue(root, 10000, "core", "shutdown", "grace");
+        luaInstructionLimit = longValue(root, 1000000, "core", "lua", "instructionLimit");
+        luaHandlerTimeout = longValue(root, 100, "core", "lua", "handlerTimeout");
+        luaCommandTimeout = longValue(root, 5000, "core", "lua", "commandTimeout");
+        luaMaxViolations = integer(root, 5, "core", "lua", "maxViolations");
+        luaPingBudget = longValue(root, 50, "core", "lua", "pingBudget");
+        luaCompile = text(root, "none", "core", "lua", "compile").trim().toLowerCase(Locale.ROOT);
+        versionName = text(root, "1.20.6", "core", "version", "name");
+        versionProtocol = integer(root, 765, "core", "version", "protocol");
+        Element echo = element(root, "core", "version", "echoProtocol");
+        versionEchoProtocol = echo != null && "true".equalsIgnoreCase(echo.getTextContent().trim());
+        playersMax = integer(root, 20, "core", "players", "max");
+        playersOnline = integer(root, 1, "core", "players", "online");
+        motd = text(root, "§aLoadless Proxy Server", "core", "motd");
+        iconName = text(root, "", "core", "icon").trim();
+        authKey = text(root, null, "core", "authKey");
+        realServerHost = text(root, "127.0.0.1", "realServer", "host").trim();
+        realServerPort = integer(root, 25566, "realServer", "port");
+        statusPollInterval = longValue(root, 5000, "realServer", "pollInterval");
+        balancingStrategy = text(root, "round-robin", "backends", "strategy").trim().toLowerCase(Locale.ROOT);
+        healthFailureThreshold = integer(root, 2, "backends", "health", "failures");
+        healthOpenTime = longValue(root, 10000, "backends", "health", "openTime");
+        backendConnectTimeout = integer(root, 2000, "backends", "health", "connectTimeout");
+        backends = Collections.unmodifiableList(parseBackends(root, logger));
+        offlineFlag = text(root, "offline", "localize", "offline");
+        fullMessage = text(root, "Server is full", "localize", "full");
+        restartingMessage = text(root, "Server is restarting", "localize", "restarting");
+        extraProxies = Collections.unmodifiableList(parseExtraProxies(root));
+    }
+
+    /**
+     * Совпадают ли параметры, которые применяются только при запуске прокси
+     * (адрес, движок, потоки, пересылка, приём подключений).
+     */
+    public boolean sameStartupSettings(ConfigSnapshot other) {
+        return coreHost.equals(other.coreHost) && corePort == other.corePort && engine.equals(other.engine)
+                && ioThreads == other.ioThreads && threadMode.equals(other.threadMode)
+                && maxPlatformThreads == other.maxPlatformThreads
+                && relayTcpNoDelay == other.relayTcpNoDelay && relaySendBuffer == other.relaySendBuffer
+                && relayReceiveBuffer == other.relayReceiveBuffer && relayBufferSize == other.relayBufferSize
+                && relayMaxBufferSize == other.relayMaxBufferSize
+                && acceptors == other.acceptors && acceptBacklog == other.acceptBacklog;
+    }
+
+    // Первый потомок по цепочке тегов (как getElementsByTagName на каждом шаге)
+    private static Element element(Element root, String... tags) {
+        Element el = root;
+        for (String tag : tags) {
+            NodeList nl = el.getElementsByTagName(tag);
+            if (nl.getLength() == 0) return null;
+            el = (Element) nl.item(0);
+        }
+        return el;
+    }
+
+    private static String text(Element root, String defaultValue, String... tags) {
+        Element el = element(root, tags);
+        return el != null ? el.getTextContent() : defaultValue;
+    }
+
+    private static int integer(Element root, int defaultValue, String... tags) {
+        Element el = element(root, tags);
+        try { return el != null ? Integer.parseInt(el.getTextContent().trim()) : defaultValue; } catch (Exception e) { return defaultValue; }
+    }
+
+    private static long longValue(Element root, long defaultValue, String... tags) {
+        Element el = element(root, tags);
+        try { return el != null ? Long.parseLong(el.getTextContent().trim()) : defaultValue; } catch (Exception e) { return defaultValue; }
+    }
+
+    // Пул из <backends><backend>; если он пуст — единственный backend из <realServer>
+    private List<BackendConfig> parseBackends(Element root, Logger logger) {
+        List<BackendConfig> result = new ArrayList<>();
+        NodeList nodes = root.getElementsByTagName("backend");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element backend = (Element) nodes.item(i);
+            try {
+                String host = backend.getElementsByTagName("host").item(0).getTextContent().trim();
+                int port = Integer.parseInt(backend.getElementsByTagName("port").item(0).getTextContent().trim());
+                String name = backend.getAttribute("name");
+                if (name.isEmpty()) name = host + ":" + port;
+                int weight = Math.max(1, childInt(backend, "weight", 1));
+                int maxPlayers = Math.max(0, childInt(backend, "maxPlayers", 0));
+                result.add(new BackendConfig(name, host, port, weight, maxPlayers));
+            } catch (Exception e) {
+                if (logger != null) logger.error("[Config] Некорректный <backend> #" + (i + 1) + " пропущен: " + e.getMessage());
+            }
+        }
+        if (result.isEmpty()) {
+            result.add(new BackendConfig(realServerHost + ":" + realServerPort, realServerHost, realServerPort, 1, 0));
+        }
+        return result;
+    }
+
+    private static List<ExtraProxyConfig> parseExtraProxies(Element root) {
+        List<ExtraProxyConfig> result = new ArrayList<>();
+        NodeList proxies = root.getElementsByTagName("proxy");
+        for (int i = 0; i < proxies.getLength(); i++) {
+            Element proxy = (Element) proxies.item(i);
+            try {
+                int listen = Integer.parseInt(proxy.getElementsByTagName("listen").item(0).getTextContent().trim());
+                String targetHost = proxy.getElementsByTagName("targetHost").item(0).getTextContent().trim();
+                int targetPort = Integer.parseInt(proxy.getElementsByTagName("targetPort").item(0).getTextContent().trim());
+                result.add(new ExtraProxyConfig(listen, targetHost, targetPort));
+            } catch (Exception ignored) {}
+        }
+        return result;
+    }
+
+    private static int childInt(Element parent, String tag, int defaultValue) {
+        NodeList nl = parent.getElementsByTagName(tag);
+        if (nl.getLength() == 0) return defaultValue;
+        try { return Integer.parseInt(nl.item(0).getTextContent().trim()); } catch (Exception e) { return defaultValue; }
+    }
+}
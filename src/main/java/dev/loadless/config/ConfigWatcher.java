@@ -0,0 +1,87 @@
+package dev.loadless.config;
+
+import dev.loadless.core.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отслеживает один файл через WatchService его каталога. Серия событий (редактор
+ * пишет файл в несколько приёмов или заменяет его переименованием) сводится к одному
+ * вызову onChange после паузы в {@link #QUIET_MS} мс.
+ */
+final class ConfigWatcher implements Runnable {
+    private static final long QUIET_MS = 300;
+
+    private final Path file;
+    private final Runnable onChange;
+    private final Logger logger;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    ConfigWatcher(Path file, Runnable onChange, Logger logger) throws IOException {
+        this.file = file;
+        this.onChange = onChange;
+        this.logger = logger;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this, "Loadless-ConfigWatcher");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+        logger.log("[Config] Отслеживание изменений " + file);
+    }
+
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+                // Ждём, пока файл перестанет меняться
+                while (true) {
+                    WatchKey next = watchService.poll(QUIET_MS, TimeUnit.MILLISECONDS);
+                    if (next == null) break;
+                    changed |= drain(next);
+                }
+                if (changed) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException e) {
+                        logger.error("[Config] Ошибка перечитывания конфига: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Отслеживание остановлено
+        }
+    }
+
+    // Разобрать события ключа; true — среди них есть наш файл (или события потеряны)
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
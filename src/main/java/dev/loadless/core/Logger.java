@@ -1,46 +1,315 @@
 package dev.loadless.core;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Асинхронный логгер. Вызывающий поток только кладёт строку в кольцевой буфер на
+ * {@link #CAPACITY} записей; поток "Loadless-Logger" пачками форматирует их (метка
+ * времени пересчитывается раз в секунду) и пишет в консоль, logs/latest.log и файл
+ * с датой — по одной записи на пачку в каждый приёмник. Файл с датой сменяется при
+ * превышении размера и при смене суток. При переполнении буфера строка либо
+ * отбрасывается (по умолчанию, с подсчётом в {@link #getDroppedLines()}), либо
+ * вызывающий ждёт освобождения места.
+ */
 public class Logger {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR;
+
+        public static Level parse(String value, Level defaultValue) {
+            if (value == null) return defaultValue;
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return defaultValue;
+            }
+        }
+    }
+
     private static final String LOGS_DIR = "logs";
     private static final String LATEST_LOG = "latest.log";
-    private final PrintWriter writer;
-    private final PrintWriter latestWriter;
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private static final class Entry {
+        final Level level;
+        final long millis;
+        final String msg;
+
+        Entry(Level level, long millis, String msg) {
+            this.level = level;
+            this.millis = millis;
+            this.msg = msg;
+        }
+    }
+
+    // Ограниченная очередь многих писателей и одного читателя: у ячейки свой номер
+    // последовательности, запись публикуется его volatile-записью
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final Entry[] entries = new Entry[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // только поток записи
+
+    private final LongAdder dropped = new LongAdder();
+    private volatile Level level = Level.INFO;
+    private volatile boolean blockWhenFull;
+    private volatile long maxFileSize = 10L * 1024 * 1024;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    private final Thread thread;
+
+    // Состояние потока записи
+    private final ZoneId zone = ZoneId.systemDefault();
+    private FileOutputStream dated;
+    private FileOutputStream latest;
+    private long datedSize;
+    private long datedDay;
+    private long cachedSecond = Long.MIN_VALUE;
+    private long cachedDay;
+    private String cachedPrefix;
+    private long reportedDropped;
 
     public Logger() throws IOException {
         Files.createDirectories(Path.of(LOGS_DIR));
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
-        File logFile = new File(LOGS_DIR, timestamp + ".log");
-        File latestFile = new File(LOGS_DIR, LATEST_LOG);
-        this.writer = new PrintWriter(new FileWriter(logFile, true), true);
-        this.latestWriter = new PrintWriter(new FileWriter(latestFile, false), true);
+        for (int i = 0; i < CAPACITY; i++) sequences.set(i, i);
+        openFiles(System.currentTimeMillis(), false);
+        this.thread = new Thread(this::run, "Loadless-Logger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void debug(String msg) {
+        if (level == Level.DEBUG) enqueue(Level.DEBUG, msg);
     }
 
     public void log(String msg) {
-        String line = timePrefix() + msg;
-        System.out.println(line);
-        writer.println(line);
-        latestWriter.println(line);
+        if (level.compareTo(Level.INFO) <= 0) enqueue(Level.INFO, msg);
+    }
+
+    public void warn(String msg) {
+        if (level.compareTo(Level.WARN) <= 0) enqueue(Level.WARN, msg);
     }
 
     public void error(String msg) {
-        String line = timePrefix() + "[ERROR] " + msg;
-        System.err.println(line);
-        writer.println(line);
-        latestWriter.println(line);
+        enqueue(Level.ERROR, msg);
+    }
+
+    public boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /** Размер файла с датой, после которого начинается новый файл (0 — без ограничения). */
+    public void setMaxFileSize(long bytes) {
+        this.maxFileSize = bytes;
+    }
+
+    /** true — при заполненном буфере ждать места, false — отбрасывать строку. */
+    public void setBlockWhenFull(boolean block) {
+        this.blockWhenFull = block;
     }
 
-    private String timePrefix() {
-        return "[" + new SimpleDateFormat("HH:mm:ss").format(new Date()) + "] ";
+    /** Сколько строк отброшено из-за переполнения буфера с запуска. */
+    public long getDroppedLines() {
+        return dropped.sum();
     }
 
+    /** Дописать всё из буфера и закрыть файлы; последующие строки идут только в консоль. */
     public void close() {
-        writer.close();
-        latestWriter.close();
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Level lineLevel, String msg) {
+        Entry entry = new Entry(lineLevel, System.currentTimeMillis(), msg);
+        if (closed) {
+            printDirect(entry);
+            return;
+        }
+        while (!offer(entry)) {
+            if (!blockWhenFull || closed) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(50_000);
+        }
+        if (sleeping) LockSupport.unpark(thread);
+    }
+
+    private boolean offer(Entry entry) {
+        while (true) {
+            long pos = tail.get();
+            int i = (int) (pos & MASK);
+            long diff = sequences.get(i) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    entries[i] = entry;
+                    sequences.set(i, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // буфер заполнен
+            }
+        }
+    }
+
+    private Entry poll() {
+        int i = (int) (head & MASK);
+        if (sequences.get(i) != head + 1) return null;
+        Entry entry = entries[i];
+        entries[i] = null;
+        sequences.set(i, head + CAPACITY);
+        head++;
+        return entry;
+    }
+
+    private void run() {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        StringBuilder file = new StringBuilder();
+        while (true) {
+            int n = 0;
+            long lastMillis = 0;
+            Entry entry;
+            while (n < MAX_BATCH && (entry = poll()) != null) {
+                String line = prefix(entry.millis) + label(entry.level) + entry.msg;
+                (entry.level.compareTo(Level.WARN) >= 0 ? err : out).append(line).append(System.lineSeparator());
+                file.append(line).append(System.lineSeparator());
+                lastMillis = entry.millis;
+                n++;
+            }
+            long droppedNow = dropped.sum();
+            if (droppedNow != reportedDropped) {
+                long now = System.currentTimeMillis();
+                String line = prefix(now) + "[WARN] [Logger] Буфер лога переполнен, отброшено строк: " + (droppedNow - reportedDropped);
+                err.append(line).append(System.lineSeparator());
+                file.append(line).append(System.lineSeparator());
+                reportedDropped = droppedNow;
+                lastMillis = now;
+                n++;
+            }
+            if (n > 0) {
+                writeBatch(out, err, file, lastMillis);
+                continue;
+            }
+            if (closed) break;
+            sleeping = true;
+            if (sequences.get((int) (head & MASK)) == head + 1) {
+                sleeping = false;
+                continue;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            sleeping = false;
+        }
+        closeFiles();
+    }
+
+    private void writeBatch(StringBuilder out, StringBuilder err, StringBuilder file, long millis) {
+        if (out.length() > 0) {
+            System.out.print(out);
+            System.out.flush();
+            out.setLength(0);
+        }
+        if (err.length() > 0) {
+            System.err.print(err);
+            System.err.flush();
+            err.setLength(0);
+        }
+        byte[] bytes = file.toString().getBytes(StandardCharsets.UTF_8);
+        file.setLength(0);
+        try {
+            long limit = maxFileSize;
+            if (datedSize > 0 && ((limit > 0 && datedSize + bytes.length > limit) || day(millis) != datedDay)) {
+                closeFiles();
+                openFiles(millis, true);
+            }
+            dated.write(bytes);
+            latest.write(bytes);
+            datedSize += bytes.length;
+        } catch (IOException e) {
+            System.err.println("[Logger] Ошибка записи лога: " + e.getMessage());
+        }
+    }
+
+    // Файл с датой запуска (или ротации) и latest.log с его же содержимым
+    private void openFiles(long millis, boolean rotation) throws IOException {
+        String base = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone).format(FILE_NAME);
+        File logFile = new File(LOGS_DIR, base + ".log");
+        for (int i = 1; rotation && logFile.exists(); i++) {
+            logFile = new File(LOGS_DIR, base + "_" + i + ".log");
+        }
+        dated = new FileOutputStream(logFile, true);
+        latest = new FileOutputStream(new File(LOGS_DIR, LATEST_LOG), false);
+        datedSize = logFile.length();
+        datedDay = day(millis);
+    }
+
+    private void closeFiles() {
+        try {
+            dated.close();
+            latest.close();
+        } catch (IOException ignored) {}
+    }
+
+    private long day(long millis) {
+        prefix(millis);
+        return cachedDay;
+    }
+
+    // "[HH:mm:ss] " пересчитывается только при смене секунды
+    private String prefix(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != cachedSecond) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+            cachedPrefix = "[" + time.format(TIME) + "] ";
+            cachedDay = time.toLocalDate().toEpochDay();
+            cachedSecond = second;
+        }
+        return cachedPrefix;
+    }
+
+    private static String label(Level level) {
+        switch (level) {
+            case DEBUG: return "[DEBUG] ";
+            case WARN: return "[WARN] ";
+            case ERROR: return "[ERROR] ";
+            default: return "";
+        }
+    }
+
+    private static void printDirect(Entry entry) {
+        String line = "[" + LocalDateTime.now().format(TIME) + "] " + label(entry.level) + entry.msg;
+        if (entry.level.compareTo(Level.WARN) >= 0) System.err.println(line);
+        else System.out.println(line);
     }
 }
@@ -2,6 +2,7 @@ package dev.loadless.core;
 
 import dev.loadless.api.ConsoleCommand;
 import dev.loadless.config.ConfigManager;
+import dev.loadless.config.ConfigSnapshot;
 import dev.loadless.manager.EulaManager;
 import dev.loadless.manager.ModulesManager;
 import dev.loadless.modules.LuaModuleLoader;
@@ -9,12 +10,21 @@ import dev.loadless.proxy.ProxyServer;
 import dev.loadless.proxy.MotdManager;
 import dev.loadless.core.command.ListUsersCommand;
 import dev.loadless.core.command.KickUserCommand;
+import dev.loadless.core.command.ListenersCommand;
+import dev.loadless.core.command.LuaCommand;
+import dev.loadless.core.command.StatsCommand;
+import dev.loadless.core.command.TraceCommand;
 
 import java.io.File;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Main {
     private static ConsoleCommandManager staticCmdManager;
+    // Остановка выполняется один раз: quit и сигнал завершения ждут одну и ту же последовательность
+    private static final AtomicBoolean shutdownStarted = new AtomicBoolean();
+    private static final CountDownLatch shutdownDone = new CountDownLatch(1);
     public static void registerLuaCommand(ConsoleCommand cmd) {
         if (staticCmdManager != null) {
             staticCmdManager.register(cmd);
@@ -36,19 +46,25 @@ public class Main {
                 ModulesManager modulesManager = new ModulesManager();
                 modulesManager.createModulesDir();
                 ConfigManager configManager = new ConfigManager(logger);
+                applyLogging(logger, configManager.getSnapshot());
+                configManager.addReloadListener((previous, current) -> applyLogging(logger, current));
                 LuaModuleLoader luaModuleLoader = new LuaModuleLoader(new File("modules"));
                 String host = configManager.getCoreHost();
                 int port = configManager.getCorePort();
-                String realHost = configManager.getRealServerHost();
-                int realPort = configManager.getRealServerPort();
                 MotdManager motdManager = new MotdManager(configManager);
-                ProxyServer proxyServer = new ProxyServer(host, port, motdManager, logger, realHost, realPort, configManager);
+                ProxyServer proxyServer = new ProxyServer(host, port, motdManager, logger, configManager);
                 proxyServer.setLuaModuleLoader(luaModuleLoader);
                 proxyServer.start();
+                // Изменения config.xml применяются без перезапуска
+                configManager.startWatching();
+                // Плавная остановка и при quit, и при сигнале завершения (SIGTERM, Ctrl+C)
+                Runnable shutdown = () -> shutdown(proxyServer, luaModuleLoader, configManager, logger);
+                Runtime.getRuntime().addShutdownHook(new Thread(shutdown, "Loadless-Shutdown"));
 
                 // --- Console commands ---
                 ConsoleCommandManager cmdManager = new ConsoleCommandManager();
                 staticCmdManager = cmdManager;
+                luaModuleLoader.configure(configManager.getSnapshot());
                 luaModuleLoader.loadModules();
                 // help
                 cmdManager.register(new ConsoleCommand() {
@@ -76,6 +92,7 @@ public class Main {
                     public String getDescription() { return "Завершить работу прокси"; }
                     public String execute(String[] args) {
                         logger.log("[Core] Завершение работы по команде quit");
+                        shutdown.run();
                         System.exit(0);
                         return null;
                     }
@@ -84,6 +101,14 @@ public class Main {
                 cmdManager.register(new ListUsersCommand(proxyServer));
                 // kick
                 cmdManager.register(new KickUserCommand(proxyServer));
+                // listeners
+                cmdManager.register(new ListenersCommand(proxyServer));
+                // stats
+                cmdManager.register(new StatsCommand(proxyServer));
+                // trace
+                cmdManager.register(new TraceCommand(proxyServer));
+                // lua
+                cmdManager.register(new LuaCommand(luaModuleLoader));
                 // Регистрация команд от Lua-модулей
                 for (var module : luaModuleLoader.getLoadedModules()) {
                     if (module instanceof dev.loadless.api.LuaModule) {
@@ -114,6 +139,44 @@ public class Main {
             System.err.println("Ошибка при инициализации: " + e.getMessage());
         }
     }
+
+    /**
+     * Порядок остановки: прокси (закрыть порты, дождаться отключения игроков в пределах
+     * <core><shutdown><grace>, закрыть оставшихся), onUnload Lua-модулей, запись отложенных
+     * изменений конфига, сброс буфера лога. Повторный вызов ждёт завершения первого.
+     */
+    private static void shutdown(ProxyServer proxyServer, LuaModuleLoader luaModuleLoader, ConfigManager configManager, Logger logger) {
+        if (!shutdownStarted.compareAndSet(false, true)) {
+            try {
+                shutdownDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        try {
+            logger.log("[Core] Остановка Loadless...");
+            try {
+                proxyServer.shutdown(configManager.getSnapshot().shutdownGrace);
+                luaModuleLoader.unloadModules();
+            } catch (RuntimeException e) {
+                // Конфиг и лог дописываются в любом случае
+                logger.error("[Core] Ошибка при остановке: " + e);
+            }
+            configManager.close();
+            logger.log("[Core] Loadless остановлен");
+            logger.close();
+        } finally {
+            shutdownDone.countDown();
+        }
+    }
+
+    // <core><logging> применяется и при старте, и при перечитывании конфига
+    private static void applyLogging(Logger logger, ConfigSnapshot config) {
+        logger.setLevel(Logger.Level.parse(config.loggingLevel, Logger.Level.INFO));
+        logger.setMaxFileSize(config.loggingMaxFileSize);
+        logger.setBlockWhenFull("block".equals(config.loggingOverflow));
+    }
 }
                 // Пример: вызов middleware для события onPing (MOTD)
                 // (реальную интеграцию вставить в ProxyServer или нужное место)
@@ -0,0 +1,121 @@
+package dev.loadless.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Единая точка запуска блокирующих задач прокси (обработка клиента, пересылка байт).
+ * На Java 21+ может использовать виртуальные потоки, на Java 17 — ограниченный пул
+ * платформенных потоков. Ведёт счётчики запущенных, активных и отклонённых задач.
+ */
+public class TaskExecutor {
+    private final String mode;
+    private final ThreadFactory virtualFactory;
+    private final ExecutorService platformPool;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private TaskExecutor(String mode, ThreadFactory virtualFactory, ExecutorService platformPool) {
+        this.mode = mode;
+        this.virtualFactory = virtualFactory;
+        this.platformPool = platformPool;
+    }
+
+    /**
+     * @param mode auto (виртуальные потоки, если доступны), virtual или platform
+     * @param maxPlatformThreads предел пула платформенных потоков
+     */
+    public static TaskExecutor create(String mode, int maxPlatformThreads, Logger logger) {
+        if (!"platform".equals(mode)) {
+            ThreadFactory factory = virtualThreadFactory();
+            if (factory != null) {
+                logger.log("[Core] Подключения обслуживаются виртуальными потоками");
+                return new TaskExecutor("virtual", factory, null);
+            }
+            if ("virtual".equals(mode)) {
+                logger.log("[Core] Виртуальные потоки недоступны на Java " + Runtime.version().feature() + ", используется пул платформенных потоков");
+            }
+        }
+        int max = maxPlatformThreads > 0 ? maxPlatformThreads : 1024;
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(0, max, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "Loadless-Worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        logger.log("[Core] Подключения обслуживаются пулом платформенных потоков (максимум " + max + ")");
+        return new TaskExecutor("platform", null, pool);
+    }
+
+    // Thread.ofVirtual() появился в Java 21; проект собирается под Java 17, поэтому через reflection
+    private static ThreadFactory virtualThreadFactory() {
+        if (Runtime.version().feature() < 21) return null;
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Loadless-Virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Запустить задачу. Имя потока на время выполнения задачи заменяется на name.
+     * @throws RejectedExecutionException если пул платформенных потоков исчерпан
+     */
+    public void execute(String name, Runnable task) {
+        Runnable wrapped = () -> {
+            Thread current = Thread.currentThread();
+            String previousName = current.getName();
+            current.setName(name);
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                current.setName(previousName);
+            }
+        };
+        try {
+            if (virtualFactory != null) {
+                Thread t = virtualFactory.newThread(wrapped);
+                if (t == null) throw new RejectedExecutionException("Не удалось создать виртуальный поток");
+                t.start();
+            } else {
+                platformPool.execute(wrapped);
+            }
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        if (platformPool != null) platformPool.shutdownNow();
+    }
+}
@@ -0,0 +1,170 @@
+package dev.loadless.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Общий hashed timer wheel для множества коротких таймаутов (фазы подключений).
+ * Планирование и отмена — O(1) и без блокировок: новые и отменённые таймауты
+ * передаются единственному потоку таймера через очереди, он же раскладывает их
+ * по ячейкам колеса и выполняет истёкшие. Точность — один тик.
+ * Задачи выполняются в потоке таймера и должны быть короткими (закрыть сокет,
+ * передать событие в event loop).
+ */
+public final class TimerWheel {
+    /** Запланированная задача; отмена после срабатывания ничего не делает. */
+    public interface Timeout {
+        /** @return true, если задача отменена до срабатывания */
+        boolean cancel();
+    }
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    // Сколько новых таймаутов переносится в колесо за тик (остальные — на следующем)
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<Entry> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    // Номер текущего тика; читается и пишется только потоком таймера
+    private long tick;
+
+    /**
+     * @param tickMs длительность тика
+     * @param ticksPerWheel число ячеек (округляется вверх до степени двойки)
+     */
+    public TimerWheel(long tickMs, int ticksPerWheel, Logger logger) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        int size = Integer.highestOneBit(Math.max(2, ticksPerWheel) - 1) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.logger = logger;
+        this.worker = new Thread(this::run, "Loadless-Timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Выполнить task через delayMs миллисекунд (не раньше). */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        Entry entry = new Entry(task, deadline);
+        added.add(entry);
+        return entry;
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long tickDeadline = (tick + 1) * tickNanos;
+            long sleep = tickDeadline - (System.nanoTime() - startNanos);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            removeCancelled();
+            transferAdded();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Entry entry = added.poll();
+            if (entry == null) return;
+            if (entry.state.get() != PENDING) continue;
+            // Тик, на котором таймаут истекает; просроченные — в текущую ячейку
+            long expireTick = Math.max(tick, (entry.deadline + tickNanos - 1) / tickNanos);
+            entry.rounds = (expireTick - tick) / wheel.length;
+            wheel[(int) (expireTick & mask)].add(entry);
+        }
+    }
+
+    private void removeCancelled() {
+        Entry entry;
+        while ((entry = cancelled.poll()) != null) {
+            if (entry.bucket != null) entry.bucket.remove(entry);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Entry entry = bucket.head;
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.rounds <= 0) {
+                bucket.remove(entry);
+                if (entry.state.compareAndSet(PENDING, EXPIRED)) {
+                    try {
+                        entry.task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("[Core] Ошибка в задаче таймера: " + e.getMessage());
+                    }
+                }
+            } else {
+                entry.rounds--;
+            }
+            entry = next;
+        }
+    }
+
+    private final class Entry implements Timeout {
+        final Runnable task;
+        // Срок относительно startNanos
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        // Поля ниже принадлежат потоку таймера
+        long rounds;
+        Bucket bucket;
+        Entry prev;
+        Entry next;
+
+        Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+            // Из ячейки запись уберёт поток таймера, чтобы колесо не копило отменённые таймауты
+            cancelled.add(this);
+            return true;
+        }
+    }
+
+    // Двусвязный список записей одной ячейки (доступ только из потока таймера)
+    private static final class Bucket {
+        Entry head;
+        Entry tail;
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            entry.prev = tail;
+            entry.next = null;
+            if (tail == null) head = entry; else tail.next = entry;
+            tail = entry;
+        }
+
+        void remove(Entry entry) {
+            if (entry.prev == null) head = entry.next; else entry.prev.next = entry.next;
+            if (entry.next == null) tail = entry.prev; else entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+    }
+}
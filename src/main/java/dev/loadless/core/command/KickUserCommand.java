@@ -2,9 +2,7 @@ package dev.loadless.core.command;
 
 import dev.loadless.api.ConsoleCommand;
 import dev.loadless.proxy.ProxyServer;
-import dev.loadless.proxy.ProxyServer.ConnectedUser;
-import java.io.IOException;
-import java.util.Map;
+import dev.loadless.proxy.Session;
 
 public class KickUserCommand implements ConsoleCommand {
     private final ProxyServer proxyServer;
@@ -27,17 +25,8 @@ public class KickUserCommand implements ConsoleCommand {
     public String execute(String[] args) {
         if (args.length < 1) return "Использование: kick <ник|uuid> [причина]";
         String target = args[0];
-        Map<String, ConnectedUser> users = proxyServer.getConnectedUsers();
-        ConnectedUser user = users.values().stream()
-                .filter(u -> u.name.equalsIgnoreCase(target) || u.uuid.equalsIgnoreCase(target))
-                .findFirst().orElse(null);
-        if (user == null) return "Игрок не найден: " + target;
-        try {
-            user.socket.close();
-            proxyServer.kickUser(user.name);
-        } catch (IOException e) {
-            return "Ошибка при отключении: " + e.getMessage();
-        }
-        return "Игрок отключён: " + user.name + " (UUID: " + user.uuid + ")";
+        Session session = proxyServer.kickUser(target);
+        if (session == null) return "Игрок не найден: " + target;
+        return "Игрок отключён: " + session.name + " (UUID: " + session.getUuid() + ")";
     }
 }
@@ -2,8 +2,8 @@ package dev.loadless.core.command;
 
 import dev.loadless.api.ConsoleCommand;
 import dev.loadless.proxy.ProxyServer;
-import dev.loadless.proxy.ProxyServer.ConnectedUser;
-import java.util.Map;
+import dev.loadless.proxy.Session;
+import java.util.Collection;
 import java.util.stream.Collectors;
 
 public class ListUsersCommand implements ConsoleCommand {
@@ -20,15 +20,17 @@ public class ListUsersCommand implements ConsoleCommand {
 
     @Override
     public String getDescription() {
-        return "Показать список подключённых игроков (ник, UUID, время входа)";
+        return "Показать список подключённых игроков (ник, UUID, IP, backend, время входа, трафик)";
     }
 
     @Override
     public String execute(String[] args) {
-        Map<String, ConnectedUser> users = proxyServer.getConnectedUsers();
-        if (users.isEmpty()) return "Нет подключённых игроков.";
-        return users.values().stream()
-                .map(u -> String.format("%s (UUID: %s, с %s)", u.name, u.uuid, u.connectedAt))
+        Collection<Session> sessions = proxyServer.getSessions().all();
+        if (sessions.isEmpty()) return "Нет подключённых игроков.";
+        return sessions.stream()
+                .map(s -> String.format("%s (UUID: %s, IP: %s, backend: %s, с %s, байт от клиента/к клиенту: %d/%d)",
+                        s.name, s.getUuid(), s.getAddress() != null ? s.getAddress().getHostAddress() : "-",
+                        s.backend, s.connectedAt, s.getBytesFromClient(), s.getBytesToClient()))
                 .collect(Collectors.joining("\n"));
     }
 }
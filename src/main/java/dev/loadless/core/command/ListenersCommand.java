@@ -0,0 +1,60 @@
+package dev.loadless.core.command;
+
+import dev.loadless.api.ConsoleCommand;
+import dev.loadless.proxy.ListenerStats;
+import dev.loadless.proxy.ProxyServer;
+import java.io.IOException;
+import java.util.stream.Collectors;
+
+public class ListenersCommand implements ConsoleCommand {
+    private static final String USAGE = "Использование: listeners [add <порт> <хост>:<порт> | remove <имя>]";
+    private final ProxyServer proxyServer;
+
+    public ListenersCommand(ProxyServer proxyServer) {
+        this.proxyServer = proxyServer;
+    }
+
+    @Override
+    public String getName() {
+        return "listeners";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Слушающие порты и их счётчики; listeners add <порт> <хост>:<порт> / listeners remove <имя> — переадресации";
+    }
+
+    @Override
+    public String execute(String[] args) {
+        if (args.length == 0) {
+            return proxyServer.getListeners().stream()
+                    .map(ListenerStats::toString)
+                    .collect(Collectors.joining("\n"));
+        }
+        switch (args[0]) {
+            case "add": {
+                if (args.length < 3) return USAGE;
+                int sep = args[2].lastIndexOf(':');
+                if (sep <= 0) return USAGE;
+                try {
+                    int listenPort = Integer.parseInt(args[1]);
+                    int targetPort = Integer.parseInt(args[2].substring(sep + 1));
+                    ListenerStats stats = proxyServer.addForward(listenPort, args[2].substring(0, sep), targetPort);
+                    return "Запущен слушатель " + stats.name;
+                } catch (NumberFormatException e) {
+                    return USAGE;
+                } catch (IOException | RuntimeException e) {
+                    return "Не удалось запустить переадресацию: " + e.getMessage();
+                }
+            }
+            case "remove": {
+                if (args.length < 2) return USAGE;
+                return proxyServer.removeListener(args[1])
+                        ? "Слушатель остановлен: " + args[1]
+                        : "Переадресация не найдена: " + args[1];
+            }
+            default:
+                return USAGE;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package dev.loadless.core.command;
+
+import dev.loadless.api.ConsoleCommand;
+import dev.loadless.metrics.MetricsRegistry;
+import dev.loadless.modules.LuaBudgetException;
+import dev.loadless.modules.LuaModuleActor;
+import dev.loadless.modules.LuaModuleLoader;
+
+import java.util.List;
+
+public class LuaCommand implements ConsoleCommand {
+    private final LuaModuleLoader luaModuleLoader;
+
+    public LuaCommand(LuaModuleLoader luaModuleLoader) {
+        this.luaModuleLoader = luaModuleLoader;
+    }
+
+    @Override
+    public String getName() {
+        return "lua";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Lua-модули: время вызовов, превышения бюджета, отключённые обработчики";
+    }
+
+    @Override
+    public String execute(String[] args) {
+        List<LuaModuleActor> modules = luaModuleLoader.getModules();
+        if (modules.isEmpty()) return "Lua-модули не загружены";
+        List<LuaModuleLoader.MiddlewareHandler> handlers = luaModuleLoader.getAllHandlers();
+        StringBuilder sb = new StringBuilder();
+        for (LuaModuleActor module : modules) {
+            sb.append(module.getName());
+            if (module.getInstanceCount() > 1) sb.append(" (экземпляров: ").append(module.getInstanceCount()).append(')');
+            sb.append(": ").append(MetricsRegistry.summarize(module.getLatency()))
+                    .append("; ошибок ").append(module.getErrors())
+                    .append(", прервано по инструкциям ").append(module.getAborted(LuaBudgetException.Reason.INSTRUCTIONS))
+                    .append(", по времени ").append(module.getAborted(LuaBudgetException.Reason.TIMEOUT))
+                    .append(", отклонено ").append(module.getRejected()).append('\n');
+            for (LuaModuleLoader.MiddlewareHandler mw : handlers) {
+                if (mw.actor != module || !mw.isDisabled()) continue;
+                sb.append("  отключён ").append(mw.handler).append(" (").append(mw.event).append(")\n");
+            }
+        }
+        sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+}
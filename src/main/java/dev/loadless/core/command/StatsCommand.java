@@ -0,0 +1,28 @@
+package dev.loadless.core.command;
+
+import dev.loadless.api.ConsoleCommand;
+import dev.loadless.proxy.ProxyServer;
+
+public class StatsCommand implements ConsoleCommand {
+    private final ProxyServer proxyServer;
+
+    public StatsCommand(ProxyServer proxyServer) {
+        this.proxyServer = proxyServer;
+    }
+
+    @Override
+    public String getName() {
+        return "stats";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Метрики прокси; stats <подстрока> — только метрики с ней в имени";
+    }
+
+    @Override
+    public String execute(String[] args) {
+        String result = proxyServer.getMetrics().describe(args.length > 0 ? args[0] : null);
+        return result.isEmpty() ? "Метрики не найдены" : result;
+    }
+}
@@ -0,0 +1,58 @@
+package dev.loadless.core.command;
+
+import dev.loadless.api.ConsoleCommand;
+import dev.loadless.proxy.ConnectionTrace;
+import dev.loadless.proxy.ConnectionTracer;
+import dev.loadless.proxy.ProxyServer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+public class TraceCommand implements ConsoleCommand {
+    private static final int DEFAULT_LIMIT = 10;
+    private final ProxyServer proxyServer;
+
+    public TraceCommand(ProxyServer proxyServer) {
+        this.proxyServer = proxyServer;
+    }
+
+    @Override
+    public String getName() {
+        return "trace";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Фазы последних входов; trace slow — самые долгие, trace pings — ping, число — сколько показать";
+    }
+
+    @Override
+    public String execute(String[] args) {
+        boolean slow = false;
+        boolean logins = true;
+        int limit = DEFAULT_LIMIT;
+        for (String arg : args) {
+            if ("slow".equals(arg)) slow = true;
+            else if ("pings".equals(arg)) logins = false;
+            else if ("logins".equals(arg)) logins = true;
+            else {
+                try {
+                    limit = Math.max(1, Integer.parseInt(arg));
+                } catch (NumberFormatException e) {
+                    return "Использование: trace [slow] [logins|pings] [число]";
+                }
+            }
+        }
+        ConnectionTracer tracer = proxyServer.getTracer();
+        List<ConnectionTrace> traces = slow ? tracer.slowest(logins, limit) : tracer.recent(logins, limit);
+        if (traces.isEmpty()) return logins ? "Входов пока не было" : "Ping пока не было";
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss");
+        StringBuilder sb = new StringBuilder();
+        for (ConnectionTrace trace : traces) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append('[').append(time.format(new Date(trace.getAcceptedMillis()))).append("] ").append(trace.describe());
+        }
+        return sb.toString();
+    }
+}
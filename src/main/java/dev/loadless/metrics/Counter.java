@@ -0,0 +1,20 @@
+package dev.loadless.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Монотонный счётчик; инкремент без блокировок и без выделения памяти. */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,81 @@
+package dev.loadless.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с фиксированными границами корзин. Наблюдение — поиск
+ * корзины по короткому массиву и два инкремента {@link LongAdder}, без блокировок и
+ * выделения памяти. Квантили оцениваются по верхней границе корзины.
+ */
+public final class Histogram {
+    // 100 мкс .. 10 с
+    private static final long[] LATENCY_BOUNDS_MICROS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+    // Верхние границы корзин, нс; последняя корзина (+Inf) не имеет границы
+    private final long[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+
+    public Histogram(long... boundsNanos) {
+        this.bounds = boundsNanos.clone();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /** Границы для задержек от 100 мкс до 10 с. */
+    public static Histogram latency() {
+        long[] bounds = new long[LATENCY_BOUNDS_MICROS.length];
+        for (int i = 0; i < bounds.length; i++) bounds[i] = TimeUnit.MICROSECONDS.toNanos(LATENCY_BOUNDS_MICROS[i]);
+        return new Histogram(bounds);
+    }
+
+    public void observeNanos(long nanos) {
+        int i = 0;
+        while (i < bounds.length && nanos > bounds[i]) i++;
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /** Оценка квантиля q (0..1), с; 0 — наблюдений не было. */
+    public double quantileSeconds(double q) {
+        long[] counts = snapshot();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBoundSeconds(Math.min(i, bounds.length - 1));
+        }
+        return upperBoundSeconds(bounds.length - 1);
+    }
+
+    int bucketCount() {
+        return bounds.length;
+    }
+
+    double upperBoundSeconds(int i) {
+        return bounds[i] / 1e9;
+    }
+
+    // Число наблюдений по корзинам (не накопительно); последний элемент — корзина +Inf
+    long[] snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+}
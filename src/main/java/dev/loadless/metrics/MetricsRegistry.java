@@ -0,0 +1,185 @@
+package dev.loadless.metrics;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Реестр метрик. Горячий путь обновляет только заранее созданные {@link Counter} и
+ * {@link Histogram}; значения, которые уже считают сами компоненты (счётчики слушателей,
+ * допуска, фаз), читаются функциями в момент сбора. Сбор выдаёт текстовый формат
+ * Prometheus ({@link #scrape()}) или сводку для консоли ({@link #describe(String)}).
+ */
+public final class MetricsRegistry {
+    /** Приёмник значений семейства с метками; labels — готовая строка из {@link #labels}. */
+    public interface Samples {
+        void add(String labels, double value);
+    }
+
+    /** Приёмник гистограмм семейства с метками. */
+    public interface HistogramSamples {
+        void add(String labels, Histogram histogram);
+    }
+
+    private static final class Family {
+        final String name;
+        final String type;
+        final String help;
+        final Consumer<Samples> collector;
+        // Гистограммы: без меток — одна, с метками — собираются при сборе
+        final Consumer<HistogramSamples> histograms;
+
+        Family(String name, String type, String help, Consumer<Samples> collector, Consumer<HistogramSamples> histograms) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.collector = collector;
+            this.histograms = histograms;
+        }
+    }
+
+    private final List<Family> families = new CopyOnWriteArrayList<>();
+
+    public Counter counter(String name, String help) {
+        Counter counter = new Counter();
+        counter(name, help, counter::get);
+        return counter;
+    }
+
+    public void counter(String name, String help, LongSupplier value) {
+        register(new Family(name, "counter", help, s -> s.add("", value.getAsLong()), null));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(new Family(name, "gauge", help, s -> s.add("", value.getAsDouble()), null));
+    }
+
+    /** Счётчики с метками, набор которых известен только при сборе (слушатели, backend). */
+    public void counters(String name, String help, Consumer<Samples> collector) {
+        register(new Family(name, "counter", help, collector, null));
+    }
+
+    public void gauges(String name, String help, Consumer<Samples> collector) {
+        register(new Family(name, "gauge", help, collector, null));
+    }
+
+    /** Гистограмма длительностей; наблюдения — в наносекундах, экспорт — в секундах. */
+    public Histogram histogram(String name, String help) {
+        Histogram histogram = Histogram.latency();
+        register(new Family(name, "histogram", help, null, s -> s.add("", histogram)));
+        return histogram;
+    }
+
+    /** Гистограммы с метками, набор которых известен только при сборе (Lua-модули). */
+    public void histograms(String name, String help, Consumer<HistogramSamples> collector) {
+        register(new Family(name, "histogram", help, null, collector));
+    }
+
+    private void register(Family family) {
+        synchronized (families) {
+            for (Family f : families) {
+                if (f.name.equals(family.name)) throw new IllegalArgumentException("Метрика " + family.name + " уже зарегистрирована");
+            }
+            families.add(family);
+        }
+    }
+
+    /** Строка меток для {@link Samples#add}: labels("listener", "minecraft", "direction", "in"). */
+    public static String labels(String... keyValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(keyValues[i]).append("=\"");
+            String value = keyValues[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') sb.append('\\').append(c);
+                else if (c == '\n') sb.append("\\n");
+                else sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    /** Текстовый формат Prometheus 0.0.4. */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family f : families) {
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            if (f.histograms != null) {
+                f.histograms.accept((labels, h) -> writeHistogram(sb, f.name, labels, h));
+            } else {
+                f.collector.accept((labels, value) -> {
+                    sb.append(f.name);
+                    if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+                    sb.append(' ').append(format(value)).append('\n');
+                });
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void writeHistogram(StringBuilder sb, String name, String labels, Histogram h) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        long[] counts = h.snapshot();
+        long cumulative = 0;
+        for (int i = 0; i < h.bucketCount(); i++) {
+            cumulative += counts[i];
+            sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(format(h.upperBoundSeconds(i))).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts[counts.length - 1];
+        sb.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        sb.append(name).append("_sum").append(suffix).append(' ').append(format(h.getSumSeconds())).append('\n');
+        sb.append(name).append("_count").append(suffix).append(' ').append(cumulative).append('\n');
+    }
+
+    /**
+     * Сводка для консоли: по строке на значение, гистограммы — числом наблюдений,
+     * средним и оценками p50/p99.
+     * @param filter подстрока имени метрики (null или пусто — все)
+     */
+    public String describe(String filter) {
+        StringBuilder sb = new StringBuilder();
+        for (Family f : families) {
+            if (filter != null && !filter.isEmpty() && !f.name.contains(filter)) continue;
+            if (f.histograms != null) {
+                f.histograms.accept((labels, h) -> {
+                    sb.append(f.name);
+                    if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+                    sb.append(": ").append(summarize(h)).append('\n');
+                });
+            } else {
+                f.collector.accept((labels, value) -> {
+                    sb.append(f.name);
+                    if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+                    sb.append(' ').append(format(value)).append('\n');
+                });
+            }
+        }
+        if (sb.length() > 0) sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+
+    /** Число наблюдений, среднее и оценки p50/p99 одной строкой. */
+    public static String summarize(Histogram h) {
+        long count = h.getCount();
+        if (count == 0) return "0 набл.";
+        return String.format(Locale.ROOT, "%d набл., среднее %.2f мс, p50 ≤ %s мс, p99 ≤ %s мс", count,
+                h.getSumSeconds() * 1000 / count,
+                format(h.quantileSeconds(0.5) * 1000), format(h.quantileSeconds(0.99) * 1000));
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,36 @@
+package dev.loadless.modules;
+
+import org.json.JSONObject;
+
+/**
+ * Ограничения одного вызова Lua: число инструкций виртуальной машины и время от постановки
+ * в очередь модуля до завершения. 0 — без ограничения.
+ */
+public final class LuaBudget {
+    public static final LuaBudget UNLIMITED = new LuaBudget(0, 0);
+
+    public final long instructions;
+    public final long timeoutMillis;
+
+    public LuaBudget(long instructions, long timeoutMillis) {
+        this.instructions = Math.max(0, instructions);
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+    }
+
+    public boolean isLimited() {
+        return instructions > 0 || timeoutMillis > 0;
+    }
+
+    /** Переопределение из manifest.json: поля "instructionLimit" и "timeout" (мс), отсутствующие наследуются. */
+    LuaBudget override(JSONObject json) {
+        long limit = json.has("instructionLimit") ? json.optLong("instructionLimit", instructions) : instructions;
+        long timeout = json.has("timeout") ? json.optLong("timeout", timeoutMillis) : timeoutMillis;
+        return limit == instructions && timeout == timeoutMillis ? this : new LuaBudget(limit, timeout);
+    }
+
+    @Override
+    public String toString() {
+        return (instructions > 0 ? instructions + " инстр." : "без лимита инструкций") + ", "
+                + (timeoutMillis > 0 ? timeoutMillis + " мс" : "без лимита времени");
+    }
+}
@@ -0,0 +1,28 @@
+package dev.loadless.modules;
+
+/** Вызов Lua прерван или не дождался результата: превышен {@link LuaBudget}. */
+public final class LuaBudgetException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        INSTRUCTIONS("лимит инструкций"),
+        TIMEOUT("лимит времени");
+
+        final String label;
+
+        Reason(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Reason reason;
+
+    LuaBudgetException(String module, Reason reason) {
+        super("Модуль " + module + ": превышен " + reason.label, null, false, false);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
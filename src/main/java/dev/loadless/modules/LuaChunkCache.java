@@ -0,0 +1,126 @@
+package dev.loadless.modules;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.DumpState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Кэш скомпилированных main.lua на диске: двоичные чанки LuaJ (формат string.dump), ключ —
+ * SHA-256 содержимого ZIP или всех файлов папки модуля. Неизменённый модуль при запуске
+ * не разбирается заново; для каждого модуля хранится только последняя версия.
+ */
+final class LuaChunkCache {
+    // Меняется при смене формата чанка (версии LuaJ), чтобы старый кэш не подхватывался
+    private static final String FORMAT = "luaj-3.0";
+    private static final String SUFFIX = ".luac";
+
+    private final Path dir;
+
+    LuaChunkCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Хэш содержимого модуля: ZIP целиком или файлы папки (по относительным путям). */
+    static String hash(File moduleFile) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+        Path root = moduleFile.toPath();
+        if (moduleFile.isDirectory()) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                digest.update(root.relativize(file).toString().replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Files.readAllBytes(file));
+            }
+        } else {
+            digest.update(Files.readAllBytes(root));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Прототип main.lua: из кэша, если модуль не менялся, иначе компиляция исходника и запись в кэш.
+     * Ошибки чтения и записи кэша не мешают загрузке — модуль компилируется из исходника.
+     */
+    Prototype load(String moduleName, String hash, byte[] source, String chunkName, Globals compiler) throws IOException {
+        Path cached = dir.resolve(fileName(moduleName, hash));
+        if (Files.isRegularFile(cached)) {
+            try (InputStream in = Files.newInputStream(cached)) {
+                return compiler.loadPrototype(in, chunkName, "b");
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[LuaModuleLoader] Кэш " + cached.getFileName() + " повреждён, модуль компилируется заново: " + e.getMessage());
+            }
+        }
+        Prototype prototype = compiler.compilePrototype(new ByteArrayInputStream(source), chunkName);
+        try {
+            store(moduleName, cached, prototype);
+        } catch (IOException e) {
+            System.err.println("[LuaModuleLoader] Не удалось записать кэш модуля " + moduleName + ": " + e.getMessage());
+        }
+        return prototype;
+    }
+
+    // Запись через временный файл и переименование; прежние версии модуля удаляются
+    private void store(String moduleName, Path target, Prototype prototype) throws IOException {
+        Files.createDirectories(dir);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Отладочная информация сохраняется: номера строк нужны в сообщениях об ошибках
+        DumpState.dump(prototype, bytes, false);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            bytes.writeTo(out);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Только файлы вида <модуль>-<хэш>.luac: префикс одного модуля может быть началом имени другого
+        Pattern versions = Pattern.compile(Pattern.quote(prefix(moduleName)) + "[0-9a-f]{32}" + Pattern.quote(SUFFIX));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (!file.equals(target) && versions.matcher(file.getFileName().toString()).matches()) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static String fileName(String moduleName, String hash) {
+        return prefix(moduleName) + hash.substring(0, 32) + SUFFIX;
+    }
+
+    // Имя файла модуля без символов, недопустимых в имени файла
+    private static String prefix(String moduleName) {
+        return moduleName.replaceAll("[^A-Za-z0-9._-]", "_") + "-";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
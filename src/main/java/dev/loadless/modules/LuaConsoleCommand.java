@@ -1,19 +1,20 @@
 package dev.loadless.modules;
 
 import dev.loadless.api.ConsoleCommand;
-import org.luaj.vm2.Globals;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
 
 public class LuaConsoleCommand implements ConsoleCommand {
     private final String name;
     private final String description;
-    private final Globals globals;
+    private final LuaModuleActor module;
+    private final LuaBudget budget;
 
-    public LuaConsoleCommand(String name, String description, Globals globals) {
+    public LuaConsoleCommand(String name, String description, LuaModuleActor module, LuaBudget budget) {
         this.name = name;
         this.description = description;
-        this.globals = globals;
+        this.module = module;
+        this.budget = budget;
     }
 
     @Override
@@ -28,6 +29,18 @@ public class LuaConsoleCommand implements ConsoleCommand {
 
     @Override
     public String execute(String[] args) {
+        // Команда выполняется в потоке модуля (первый экземпляр), консоль ждёт результат
+        try {
+            return module.call(0, budget, (instance, globals) -> run(globals, args));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "[Lua] Выполнение команды прервано";
+        } catch (RuntimeException e) {
+            return "[Lua] Ошибка выполнения команды: " + e.getMessage();
+        }
+    }
+
+    private String run(org.luaj.vm2.Globals globals, String[] args) {
         LuaValue onCommand = globals.get("onCommand");
         if (onCommand.isnil() || !onCommand.isfunction()) {
             return "[Lua] В этом модуле не реализована обработка команд (onCommand отсутствует)";
@@ -37,18 +50,14 @@ public class LuaConsoleCommand implements ConsoleCommand {
         for (int i = 0; i < args.length; i++) {
             luaArgs.set(i + 1, LuaValue.valueOf(args[i]));
         }
-        try {
-            org.luaj.vm2.Varargs result = onCommand.invoke(LuaValue.varargsOf(new LuaValue[]{luaCmd, luaArgs}));
-            if (result.narg() > 0) {
-                LuaValue v = result.arg1();
-                if (v.isstring()) {
-                    return v.tojstring();
-                } else if (v.toboolean()) {
-                    return null;
-                }
+        Varargs result = onCommand.invoke(LuaValue.varargsOf(new LuaValue[]{luaCmd, luaArgs}));
+        if (result.narg() > 0) {
+            LuaValue v = result.arg1();
+            if (v.isstring()) {
+                return v.tojstring();
+            } else if (v.toboolean()) {
+                return null;
             }
-        } catch (Exception e) {
-            return "[Lua] Ошибка выполнения команды: " + e.getMessage();
         }
         return "[Lua] Команда не реализована в onCommand";
     }
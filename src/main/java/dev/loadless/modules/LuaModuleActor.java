@@ -0,0 +1,328 @@
+package dev.loadless.modules;
+
+import dev.loadless.metrics.Histogram;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.DebugLib;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Исполнитель Lua-модуля. Globals LuaJ не потокобезопасны, поэтому каждый экземпляр globals
+ * доступен только из своего потока: загрузка, вызовы middleware, команд и onUnload передаются
+ * туда через ограниченную очередь. Модуль без состояния ("stateless" в manifest.json) получает
+ * несколько независимых экземпляров со своими потоками, вызовы распределяются по кругу.
+ *
+ * <p>Каждый вызов идёт с {@link LuaBudget}. В globals охраняемого модуля ставится хук
+ * debug.sethook на каждые {@link #HOOK_INTERVAL} инструкций: он считает инструкции вызова,
+ * проверяет срок и флаг прерывания от {@link LuaWatchdog} и прерывает вызов исключением,
+ * которое Lua-код не может перехватить через pcall. В LuaJ хук у каждой сопрограммы свой, поэтому
+ * coroutine.create и coroutine.wrap заменены версиями, ставящими его и на новые сопрограммы;
+ * таблица debug модулю недоступна, чтобы хук нельзя было снять.
+ */
+public final class LuaModuleActor {
+    /** Работа внутри экземпляра модуля; instance — номер экземпляра (для заранее найденных функций). */
+    public interface Task<T> {
+        T run(int instance, Globals globals);
+    }
+
+    // Период хука в инструкциях: точность лимита инструкций и задержка реакции на срок
+    static final int HOOK_INTERVAL = 1000;
+    // Сколько вызывающий ждёт сверх срока, чтобы хук успел прервать вызов и вернуть причину
+    private static final long CALLER_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(LuaWatchdog.PERIOD_MILLIS);
+
+    private final String name;
+    private final Globals[] instances;
+    private final Guard[] guards;
+    private final ThreadPoolExecutor[] executors;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder abortedInstructions = new LongAdder();
+    private final LongAdder abortedTimeout = new LongAdder();
+    // Время выполнения вызова в потоке модуля (без ожидания в очереди)
+    private final Histogram latency = Histogram.latency();
+
+    /**
+     * @param instances новые globals (main.lua ещё не выполнен); дальше ими владеет исполнитель
+     * @param mailbox ёмкость очереди каждого экземпляра; при переполнении вызов отклоняется
+     * @param guarded ставить ли хук инструкций; без него лимиты соблюдает только вызывающий,
+     *                а зациклившийся код продолжает занимать поток модуля
+     */
+    LuaModuleActor(String name, Globals[] instances, int mailbox, boolean guarded) {
+        this.name = name;
+        this.instances = instances;
+        this.guards = new Guard[instances.length];
+        this.executors = new ThreadPoolExecutor[instances.length];
+        for (int i = 0; i < instances.length; i++) {
+            guards[i] = new Guard();
+            if (guarded) installGuard(instances[i], guards[i]);
+            String threadName = "Loadless-Lua-" + name + (instances.length > 1 ? "-" + i : "");
+            executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(mailbox), r -> {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getInstanceCount() {
+        return instances.length;
+    }
+
+    /** Вызовы, отклонённые из-за переполненной очереди. */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /** Вызовы, завершившиеся ошибкой Lua. */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /** Вызовы, прерванные по причине reason. */
+    public long getAborted(LuaBudgetException.Reason reason) {
+        return (reason == LuaBudgetException.Reason.INSTRUCTIONS ? abortedInstructions : abortedTimeout).sum();
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /** Асинхронный вызов в очередном экземпляре. */
+    public <T> CompletableFuture<T> submit(LuaBudget budget, Task<T> task) {
+        int instance = instances.length == 1 ? 0 : Math.floorMod(next.getAndIncrement(), instances.length);
+        return submit(instance, budget, task);
+    }
+
+    /**
+     * Асинхронный вызов в заданном экземпляре. Срок бюджета отсчитывается от постановки в
+     * очередь: вызов, дождавшийся очереди после срока, не выполняется. При переполненной очереди
+     * или остановленном модуле future сразу завершается {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(int instance, LuaBudget budget, Task<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long deadline = budget.timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget.timeoutMillis) : 0;
+        try {
+            executors[instance].execute(() -> run(instance, budget.instructions, deadline, task, result));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private <T> void run(int instance, long instructions, long deadline, Task<T> task, CompletableFuture<T> result) {
+        if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+            abortedTimeout.increment();
+            result.completeExceptionally(new LuaBudgetException(name, LuaBudgetException.Reason.TIMEOUT));
+            return;
+        }
+        Guard guard = guards[instance];
+        guard.begin(instructions, deadline);
+        long started = System.nanoTime();
+        try {
+            T value = task.run(instance, instances[instance]);
+            // Прерывание внутри сопрограммы LuaJ превращает в обычную ошибку resume, которую код мог проигнорировать
+            if (guard.raised != null) throw new Abort(guard.raised);
+            result.complete(value);
+        } catch (Abort abort) {
+            (abort.reason == LuaBudgetException.Reason.INSTRUCTIONS ? abortedInstructions : abortedTimeout).increment();
+            result.completeExceptionally(new LuaBudgetException(name, abort.reason));
+        } catch (Throwable e) {
+            // Хук прервал сопрограмму или сторож — блокирующий вызов: это тоже превышение бюджета
+            LuaBudgetException.Reason reason = guard.raised != null ? guard.raised
+                    : guard.abort ? LuaBudgetException.Reason.TIMEOUT : null;
+            if (reason != null) {
+                (reason == LuaBudgetException.Reason.INSTRUCTIONS ? abortedInstructions : abortedTimeout).increment();
+                result.completeExceptionally(new LuaBudgetException(name, reason));
+            } else {
+                errors.increment();
+                result.completeExceptionally(e);
+            }
+        } finally {
+            guard.end();
+            latency.observeNanos(System.nanoTime() - started);
+        }
+    }
+
+    /** Синхронный вызов в очередном экземпляре: ошибка Lua (или отказ очереди) пробрасывается как есть. */
+    public <T> T call(LuaBudget budget, Task<T> task) throws InterruptedException {
+        return await(submit(budget, task), budget);
+    }
+
+    public <T> T call(int instance, LuaBudget budget, Task<T> task) throws InterruptedException {
+        return await(submit(instance, budget, task), budget);
+    }
+
+    // Вызывающий ждёт не дольше срока: вызов, застрявший вне Lua, не держит его поток
+    private <T> T await(CompletableFuture<T> future, LuaBudget budget) throws InterruptedException {
+        try {
+            if (budget.timeoutMillis == 0) return future.get();
+            return future.get(TimeUnit.MILLISECONDS.toNanos(budget.timeoutMillis) + CALLER_SLACK_NANOS, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new LuaBudgetException(name, LuaBudgetException.Reason.TIMEOUT);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // Вызывается сторожем: просроченный вызов помечается для хука, поток модуля прерывается
+    void abortOverdue(long now) {
+        for (int i = 0; i < guards.length; i++) {
+            Guard guard = guards[i];
+            long deadline = guard.deadline;
+            if (deadline == 0 || now - deadline < 0 || guard.abort) continue;
+            synchronized (guard) {
+                // Вызов мог завершиться, пока шла проверка; прерывать следующий нельзя
+                if (guard.deadline != deadline || guard.thread == null) continue;
+                guard.abort = true;
+                guard.thread.interrupt();
+            }
+        }
+    }
+
+    /** Остановить потоки: уже принятые вызовы выполняются, новые отклоняются. */
+    void shutdown(long timeoutMillis) throws InterruptedException {
+        for (ThreadPoolExecutor executor : executors) executor.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (ThreadPoolExecutor executor : executors) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !executor.awaitTermination(left, TimeUnit.NANOSECONDS)) executor.shutdownNow();
+        }
+    }
+
+    // DebugLib остаётся подключённым к globals (через него вызывается хук), но из окружения модуля убирается
+    private static void installGuard(Globals globals, Guard guard) {
+        globals.load(new DebugLib());
+        LuaValue sethook = globals.get("debug").get("sethook");
+        globals.set("debug", LuaValue.NIL);
+        LuaValue loaded = globals.get("package").get("loaded");
+        if (loaded.istable()) loaded.set("debug", LuaValue.NIL);
+        Varargs hook = LuaValue.varargsOf(guard, LuaValue.valueOf(""), LuaValue.valueOf(HOOK_INTERVAL));
+        sethook.invoke(hook);
+        // Таблица coroutine общая с package.loaded.coroutine: замена видна и через require
+        LuaValue coroutine = globals.get("coroutine");
+        if (!coroutine.istable()) return;
+        GuardedCreate create = new GuardedCreate(coroutine.get("create"), sethook, hook);
+        coroutine.set("create", create);
+        coroutine.set("wrap", new GuardedWrap(create));
+    }
+
+    // coroutine.create, ставящий хук на новую сопрограмму до её первого запуска
+    private static final class GuardedCreate extends OneArgFunction {
+        private final LuaValue create;
+        private final LuaValue sethook;
+        private final Varargs hook;
+
+        GuardedCreate(LuaValue create, LuaValue sethook, Varargs hook) {
+            this.create = create;
+            this.sethook = sethook;
+            this.hook = hook;
+        }
+
+        @Override
+        public LuaValue call(LuaValue function) {
+            LuaValue thread = create.call(function);
+            sethook.invoke(LuaValue.varargsOf(thread, hook));
+            return thread;
+        }
+    }
+
+    // coroutine.wrap поверх охраняемого create; поведение как у wrap из LuaJ
+    private static final class GuardedWrap extends OneArgFunction {
+        private final GuardedCreate create;
+
+        GuardedWrap(GuardedCreate create) {
+            this.create = create;
+        }
+
+        @Override
+        public LuaValue call(LuaValue function) {
+            LuaThread thread = create.call(function).checkthread();
+            return new VarArgFunction() {
+                @Override
+                public Varargs invoke(Varargs args) {
+                    Varargs result = thread.resume(args);
+                    if (result.arg1().toboolean()) return result.subargs(2);
+                    return error(result.arg(2).tojstring());
+                }
+            };
+        }
+    }
+
+    // Хук инструкций одного экземпляра и бюджет его текущего вызова
+    private static final class Guard extends TwoArgFunction {
+        // Только поток модуля (и его сопрограммы, которые выполняются строго по очереди с ним)
+        private long instructionsLeft;
+        // Причина последнего прерывания в текущем вызове
+        LuaBudgetException.Reason raised;
+        // System.nanoTime() срока текущего вызова; 0 — вызова нет или срок не задан
+        volatile long deadline;
+        volatile boolean abort;
+        Thread thread;
+
+        void begin(long instructions, long deadline) {
+            instructionsLeft = instructions > 0 ? instructions : Long.MAX_VALUE;
+            raised = null;
+            abort = false;
+            synchronized (this) {
+                thread = Thread.currentThread();
+                this.deadline = deadline;
+            }
+        }
+
+        void end() {
+            synchronized (this) {
+                deadline = 0;
+                thread = null;
+                // Прерывание от сторожа не должно достаться следующему вызову
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public LuaValue call(LuaValue event, LuaValue line) {
+            if ((instructionsLeft -= HOOK_INTERVAL) <= 0) return abort(LuaBudgetException.Reason.INSTRUCTIONS);
+            long d = deadline;
+            if (abort || (d != 0 && System.nanoTime() - d >= 0)) return abort(LuaBudgetException.Reason.TIMEOUT);
+            return NONE;
+        }
+
+        private LuaValue abort(LuaBudgetException.Reason reason) {
+            raised = reason;
+            throw new Abort(reason);
+        }
+    }
+
+    // Error, а не LuaError: pcall в LuaJ перехватывает только исключения, и Lua-код не может его подавить
+    private static final class Abort extends Error {
+        private static final long serialVersionUID = 1L;
+        final LuaBudgetException.Reason reason;
+
+        Abort(LuaBudgetException.Reason reason) {
+            super(null, null, false, false);
+            this.reason = reason;
+        }
+    }
+}
@@ -1,43 +1,105 @@
 package dev.loadless.modules;
 
 import dev.loadless.api.LuaModule;
+import dev.loadless.config.ConfigSnapshot;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import org.json.JSONObject;
 
 public class LuaModuleLoader {
+    // Очередь вызовов модуля по умолчанию ("mailbox" в manifest.json)
+    private static final int DEFAULT_MAILBOX = 256;
+    // Кэш скомпилированных модулей внутри modules; скрытые записи не считаются модулями
+    private static final String CACHE_DIR = ".cache";
     private final File modulesDir;
     private final List<LuaModule> loadedModules = new ArrayList<>();
+    // Успешно загруженные модули в порядке загрузки; список заменяется целиком
+    private volatile List<LuaModuleActor> modules = List.of();
+    // Бюджеты из <core><lua>; применяются к модулям при загрузке
+    private LuaBudget handlerBudget = LuaBudget.UNLIMITED;
+    private LuaBudget commandBudget = LuaBudget.UNLIMITED;
+    private int maxViolations;
+    private final LuaWatchdog watchdog = new LuaWatchdog();
+    // <core><lua><compile>: none — разбор исходника при каждом запуске, luac — кэш прототипов,
+    // luajc — кэш прототипов и компиляция в байткод JVM
+    private CompileMode compileMode = CompileMode.NONE;
+    private final LuaChunkCache chunkCache;
+
+    private enum CompileMode { NONE, LUAC, LUAJC }
 
     public LuaModuleLoader(File modulesDir) {
         this.modulesDir = modulesDir;
+        this.chunkCache = new LuaChunkCache(new File(modulesDir, CACHE_DIR).toPath());
+    }
+
+    /**
+     * Бюджеты вызовов из &lt;core&gt;&lt;lua&gt;. Обработчики получают instructionLimit и handlerTimeout
+     * (manifest.json может их переопределить для модуля и для отдельного middleware), загрузка,
+     * команды и onUnload — только commandTimeout. Там же режим компиляции main.lua (compile).
+     * Действует для модулей, загруженных после вызова.
+     */
+    public void configure(ConfigSnapshot config) {
+        handlerBudget = new LuaBudget(config.luaInstructionLimit, config.luaHandlerTimeout);
+        commandBudget = new LuaBudget(0, config.luaCommandTimeout);
+        maxViolations = Math.max(0, config.luaMaxViolations);
+        switch (config.luaCompile) {
+            case "luac":
+                compileMode = CompileMode.LUAC;
+                break;
+            case "luajc":
+                compileMode = CompileMode.LUAJC;
+                // LuaJC генерирует классы через Apache BCEL; без неё остаётся кэш прототипов
+                try {
+                    Class.forName("org.apache.bcel.generic.ClassGen");
+                } catch (ClassNotFoundException e) {
+                    System.err.println("[LuaModuleLoader] LuaJC недоступен (нет Apache BCEL), используется режим luac");
+                    compileMode = CompileMode.LUAC;
+                }
+                break;
+            case "none":
+                compileMode = CompileMode.NONE;
+                break;
+            default:
+                System.err.println("[LuaModuleLoader] Неизвестный режим компиляции: " + config.luaCompile + ", используется none");
+                compileMode = CompileMode.NONE;
+        }
     }
 
     public void loadModules() {
         loadedModules.clear();
-        if (!modulesDir.exists() || !modulesDir.isDirectory()) return;
-        File[] files = modulesDir.listFiles((dir, name) -> name.endsWith(".zip") || new File(dir, name).isDirectory());
-        if (files == null) return;
+        // Модули и обработчики собираются отдельно и публикуются одной заменой после загрузки всех модулей
+        List<LuaModuleActor> loaded = new ArrayList<>();
+        List<MiddlewareHandler> handlers = new ArrayList<>();
+        File[] files = modulesDir.isDirectory()
+                ? modulesDir.listFiles((dir, name) -> !name.startsWith(".") && (name.endsWith(".zip") || new File(dir, name).isDirectory()))
+                : null;
+        if (files == null) files = new File[0];
         for (File moduleFile : files) {
             try {
-                File manifestFile;
-                File mainLuaFile;
                 if (moduleFile.isDirectory()) {
-                    manifestFile = new File(moduleFile, "manifest.json");
-                    mainLuaFile = new File(moduleFile, "main.lua");
+                    File manifestFile = new File(moduleFile, "manifest.json");
+                    File mainLuaFile = new File(moduleFile, "main.lua");
                     if (!manifestFile.exists() || !mainLuaFile.exists()) {
                         System.err.println("[LuaModuleLoader] Пропущен модуль (нет manifest.json или main.lua): " + moduleFile.getName());
                         continue;
                     }
+                    // Чтение manifest.json
+                    String manifestJson = Files.readString(manifestFile.toPath(), StandardCharsets.UTF_8);
+                    byte[] source = Files.readAllBytes(mainLuaFile.toPath());
+                    loadModule(moduleFile, new JSONObject(manifestJson), source, loaded, handlers);
                 } else {
                     try (ZipFile zip = new ZipFile(moduleFile)) {
                         ZipEntry manifestEntry = zip.getEntry("manifest.json");
@@ -51,163 +113,216 @@ public class LuaModuleLoader {
                         try (InputStream is = zip.getInputStream(manifestEntry)) {
                             manifestJson = new String(is.readAllBytes(), StandardCharsets.UTF_8);
                         }
-                        JSONObject manifest = new JSONObject(manifestJson);
-                        String name = manifest.optString("name", moduleFile.getName());
-                        String version = manifest.optString("version", "1.0.0");
-                        List<String> commands = new ArrayList<>();
-                        if (manifest.has("commands")) {
-                            var arr = manifest.getJSONArray("commands");
-                            for (int i = 0; i < arr.length(); i++) {
-                                var cmdObj = arr.get(i);
-                                if (cmdObj instanceof org.json.JSONObject) {
-                                    String nameCmd = ((org.json.JSONObject)cmdObj).optString("name", "");
-                                    if (!nameCmd.isEmpty()) commands.add(nameCmd);
-                                } else if (cmdObj instanceof String) {
-                                    commands.add((String)cmdObj);
-                                }
-                            }
-                        }
-                        // Распаковка main.lua во временный файл
-                        Path tempLua = Files.createTempFile("loadless-lua-", ".lua");
+                        // main.lua компилируется прямо из архива, без временных файлов
+                        byte[] source;
                         try (InputStream is = zip.getInputStream(mainLuaEntry)) {
-                            Files.copy(is, tempLua, StandardCopyOption.REPLACE_EXISTING);
-                        }
-                        // Интеграция с LuaJ: запуск main.lua, регистрация API, вызов onLoad
-                        org.luaj.vm2.Globals globals = null;
-                        try {
-                            globals = org.luaj.vm2.lib.jse.JsePlatform.standardGlobals();
-                            org.luaj.vm2.LuaValue chunk = globals.loadfile(tempLua.toString());
-                            chunk.call();
-                            // Вызов onLoad, если определён
-                            org.luaj.vm2.LuaValue onLoad = globals.get("onLoad");
-                            if (!onLoad.isnil()) {
-                                onLoad.call();
-                                System.out.println("[LuaModuleLoader] Вызван onLoad() для " + name);
-                            }
-                        } catch (Exception e) {
-                            System.err.println("[LuaModuleLoader] Ошибка LuaJ в модуле: " + name + ": " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                        // Регистрируем команды Lua-модуля как ConsoleCommand
-                        if (globals != null && !commands.isEmpty()) {
-                            for (String cmdName : commands) {
-                                String desc = null;
-                                if (manifest.has("commands")) {
-                                    var arr = manifest.getJSONArray("commands");
-                                    for (int i = 0; i < arr.length(); i++) {
-                                        var cmdObj = arr.get(i);
-                                        if (cmdObj instanceof org.json.JSONObject) {
-                                            String n = ((org.json.JSONObject)cmdObj).optString("name", "");
-                                            if (n.equals(cmdName)) {
-                                                desc = ((org.json.JSONObject)cmdObj).optString("description", "");
-                                                break;
-                                            }
-                                        }
-                                    }
-                                }
-                                dev.loadless.core.Main.registerLuaCommand((dev.loadless.api.ConsoleCommand) new LuaConsoleCommand(cmdName, desc, globals));
-                            }
-                        }
-                        // Парсим middleware
-                        if (manifest.has("middleware")) {
-                            var arr = manifest.getJSONArray("middleware");
-                            for (int i = 0; i < arr.length(); i++) {
-                                var mw = arr.getJSONObject(i);
-                                String event = mw.optString("event", "");
-                                String handler = mw.optString("handler", "");
-                                int priority = mw.has("priority") ? mw.getInt("priority") : 100;
-                                if (!event.isEmpty() && !handler.isEmpty()) {
-                                    middlewareHandlers.add(new MiddlewareHandler(event, handler, priority, globals));
-                                }
-                            }
-                        }
-                        System.out.println("[LuaModuleLoader] Найден Lua-модуль: " + name + " v" + version + " (" + moduleFile.getName() + ")");
-                        if (!commands.isEmpty()) {
-                            System.out.println("[LuaModuleLoader] Команды модуля: " + String.join(", ", commands));
+                            source = is.readAllBytes();
                         }
-                        continue;
+                        loadModule(moduleFile, new JSONObject(manifestJson), source, loaded, handlers);
                     }
                 }
-                // --- Для папки ---
-                // Чтение manifest.json
-                String manifestJson = Files.readString(manifestFile.toPath(), StandardCharsets.UTF_8);
-                JSONObject manifest = new JSONObject(manifestJson);
-                String name = manifest.optString("name", moduleFile.getName());
-                String version = manifest.optString("version", "1.0.0");
-                List<String> commands = new ArrayList<>();
-                if (manifest.has("commands")) {
-                    var arr = manifest.getJSONArray("commands");
-                    for (int i = 0; i < arr.length(); i++) {
-                        var cmdObj = arr.get(i);
-                        if (cmdObj instanceof org.json.JSONObject) {
-                            String nameCmd = ((org.json.JSONObject)cmdObj).optString("name", "");
-                            if (!nameCmd.isEmpty()) commands.add(nameCmd);
-                        } else if (cmdObj instanceof String) {
-                            commands.add((String)cmdObj);
-                        }
-                    }
+            } catch (IOException e) {
+                System.err.println("[LuaModuleLoader] Ошибка при загрузке модуля: " + moduleFile.getName());
+                e.printStackTrace();
+            }
+        }
+        modules = List.copyOf(loaded);
+        publish(handlers);
+    }
+
+    // Общая часть для папки и ZIP: экземпляры globals, исполнитель, команды и middleware модуля
+    private void loadModule(File moduleFile, JSONObject manifest, byte[] source, List<LuaModuleActor> loaded,
+                            List<MiddlewareHandler> handlers) throws IOException {
+        String name = manifest.optString("name", moduleFile.getName());
+        String version = manifest.optString("version", "1.0.0");
+        List<String> commands = new ArrayList<>();
+        if (manifest.has("commands")) {
+            var arr = manifest.getJSONArray("commands");
+            for (int i = 0; i < arr.length(); i++) {
+                var cmdObj = arr.get(i);
+                if (cmdObj instanceof org.json.JSONObject) {
+                    String nameCmd = ((org.json.JSONObject)cmdObj).optString("name", "");
+                    if (!nameCmd.isEmpty()) commands.add(nameCmd);
+                } else if (cmdObj instanceof String) {
+                    commands.add((String)cmdObj);
                 }
-                // main.lua — используем напрямую
-                Path tempLua = mainLuaFile.toPath();
-                // Интеграция с LuaJ: запуск main.lua, регистрация API, вызов onLoad
-                org.luaj.vm2.Globals globals = null;
-                try {
-                    globals = org.luaj.vm2.lib.jse.JsePlatform.standardGlobals();
-                    org.luaj.vm2.LuaValue chunk = globals.loadfile(tempLua.toString());
-                    chunk.call();
+            }
+        }
+        // Модуль без состояния можно выполнять в нескольких копиях параллельно; по умолчанию — по числу ядер
+        int instanceCount = 1;
+        if (manifest.optBoolean("stateless", false)) {
+            instanceCount = Math.max(1, manifest.optInt("instances", Runtime.getRuntime().availableProcessors()));
+        }
+        int mailbox = Math.max(1, manifest.optInt("mailbox", DEFAULT_MAILBOX));
+        // Бюджет обработчиков модуля; хук инструкций ставится, только если есть что ограничивать
+        LuaBudget moduleBudget = handlerBudget.override(manifest);
+        // Интеграция с LuaJ: запуск main.lua, регистрация API, вызов onLoad — уже в потоках модуля
+        // Код LuaJC не вызывает отладочный хук: ни лимит инструкций, ни срок в нём не действуют,
+        // поэтому модуль с бюджетом выполняется интерпретатором (кэш прототипов остаётся)
+        boolean luajc = compileMode == CompileMode.LUAJC && !moduleBudget.isLimited();
+        if (compileMode == CompileMode.LUAJC && !luajc) {
+            System.err.println("[LuaModuleLoader] Модуль " + name + ": бюджет вызовов в режиме luajc не соблюсти, используется режим luac");
+        }
+        org.luaj.vm2.Globals[] instances = new org.luaj.vm2.Globals[instanceCount];
+        for (int i = 0; i < instanceCount; i++) {
+            instances[i] = org.luaj.vm2.lib.jse.JsePlatform.standardGlobals();
+            if (luajc) org.luaj.vm2.luajc.LuaJC.install(instances[i]);
+        }
+        // main.lua разбирается один раз (или берётся из кэша); прототип общий для всех экземпляров
+        String chunkName = "@" + moduleFile.getName() + "/main.lua";
+        org.luaj.vm2.Prototype prototype;
+        try {
+            prototype = compileMode == CompileMode.NONE
+                    ? instances[0].compilePrototype(new ByteArrayInputStream(source), chunkName)
+                    : chunkCache.load(moduleFile.getName(), LuaChunkCache.hash(moduleFile), source, chunkName, instances[0]);
+        } catch (org.luaj.vm2.LuaError e) {
+            System.err.println("[LuaModuleLoader] Ошибка LuaJ в модуле: " + name + ": " + e.getMessage());
+            return;
+        }
+        LuaModuleActor actor = new LuaModuleActor(name, instances, mailbox, moduleBudget.isLimited());
+        // Функции-обработчики middleware по экземплярам; ищутся в потоке модуля после main.lua и onLoad
+        List<String> handlerNames = middlewareHandlerNames(manifest);
+        Map<String, org.luaj.vm2.LuaFunction[]> functions = new HashMap<>();
+        for (String handler : handlerNames) functions.put(handler, new org.luaj.vm2.LuaFunction[instanceCount]);
+        try {
+            for (int i = 0; i < instanceCount; i++) {
+                actor.call(i, commandBudget, (instance, globals) -> {
+                    try {
+                        globals.loader.load(prototype, chunkName, globals).call();
+                    } catch (IOException e) {
+                        throw new org.luaj.vm2.LuaError(e);
+                    }
+                    // Вызов onLoad, если определён (в каждом экземпляре)
                     org.luaj.vm2.LuaValue onLoad = globals.get("onLoad");
                     if (!onLoad.isnil()) {
                         onLoad.call();
-                        System.out.println("[LuaModuleLoader] Вызван onLoad() для " + name);
+                        if (instance == 0) System.out.println("[LuaModuleLoader] Вызван onLoad() для " + name);
                     }
-                } catch (Exception e) {
-                    System.err.println("[LuaModuleLoader] Ошибка LuaJ в модуле: " + name + ": " + e.getMessage());
-                    e.printStackTrace();
-                }
-                if (globals != null && !commands.isEmpty()) {
-                    for (String cmdName : commands) {
-                        String desc = null;
-                        if (manifest.has("commands")) {
-                            var arr = manifest.getJSONArray("commands");
-                            for (int i = 0; i < arr.length(); i++) {
-                                var cmdObj = arr.get(i);
-                                if (cmdObj instanceof org.json.JSONObject) {
-                                    String n = ((org.json.JSONObject)cmdObj).optString("name", "");
-                                    if (n.equals(cmdName)) {
-                                        desc = ((org.json.JSONObject)cmdObj).optString("description", "");
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        dev.loadless.core.Main.registerLuaCommand((dev.loadless.api.ConsoleCommand) new LuaConsoleCommand(cmdName, desc, globals));
+                    for (String handler : handlerNames) {
+                        org.luaj.vm2.LuaValue function = globals.get(handler);
+                        if (function.isfunction()) functions.get(handler)[instance] = function.checkfunction();
                     }
-                }
-                // Парсим middleware
-                if (manifest.has("middleware")) {
-                    var arr = manifest.getJSONArray("middleware");
-                    for (int i = 0; i < arr.length(); i++) {
-                        var mw = arr.getJSONObject(i);
-                        String event = mw.optString("event", "");
-                        String handler = mw.optString("handler", "");
-                        int priority = mw.has("priority") ? mw.getInt("priority") : 100;
-                        if (!event.isEmpty() && !handler.isEmpty()) {
-                            middlewareHandlers.add(new MiddlewareHandler(event, handler, priority, globals));
+                    return null;
+                });
+            }
+        } catch (Exception e) {
+            System.err.println("[LuaModuleLoader] Ошибка LuaJ в модуле: " + name + ": " + e.getMessage());
+            e.printStackTrace();
+            stop(actor);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return;
+        }
+        loaded.add(actor);
+        if (moduleBudget.isLimited()) watchdog.watch(actor);
+        // Регистрируем команды Lua-модуля как ConsoleCommand
+        for (String cmdName : commands) {
+            String desc = null;
+            if (manifest.has("commands")) {
+                var arr = manifest.getJSONArray("commands");
+                for (int i = 0; i < arr.length(); i++) {
+                    var cmdObj = arr.get(i);
+                    if (cmdObj instanceof org.json.JSONObject) {
+                        String n = ((org.json.JSONObject)cmdObj).optString("name", "");
+                        if (n.equals(cmdName)) {
+                            desc = ((org.json.JSONObject)cmdObj).optString("description", "");
+                            break;
                         }
                     }
                 }
-                System.out.println("[LuaModuleLoader] Найден Lua-модуль: " + name + " v" + version + " (" + moduleFile.getName() + ")");
-                if (!commands.isEmpty()) {
-                    System.out.println("[LuaModuleLoader] Команды модуля: " + String.join(", ", commands));
-                }
-            } catch (IOException e) {
-                System.err.println("[LuaModuleLoader] Ошибка при загрузке модуля: " + moduleFile.getName());
-                e.printStackTrace();
             }
+            dev.loadless.core.Main.registerLuaCommand((dev.loadless.api.ConsoleCommand) new LuaConsoleCommand(cmdName, desc, actor, commandBudget));
+        }
+        // Парсим middleware
+        parseMiddleware(manifest, actor, functions, moduleBudget, maxViolations, handlers);
+        System.out.println("[LuaModuleLoader] Найден Lua-модуль: " + name + " v" + version + " (" + moduleFile.getName() + ")"
+                + (instanceCount > 1 ? ", экземпляров: " + instanceCount : "") + ", бюджет: " + moduleBudget);
+        if (!commands.isEmpty()) {
+            System.out.println("[LuaModuleLoader] Команды модуля: " + String.join(", ", commands));
+        }
+    }
+
+    // Имена всех обработчиков middleware из manifest.json
+    private static List<String> middlewareHandlerNames(JSONObject manifest) {
+        List<String> names = new ArrayList<>();
+        if (!manifest.has("middleware")) return names;
+        var arr = manifest.getJSONArray("middleware");
+        for (int i = 0; i < arr.length(); i++) {
+            String handler = arr.getJSONObject(i).optString("handler", "");
+            if (!handler.isEmpty() && !names.contains(handler)) names.add(handler);
+        }
+        return names;
+    }
+
+    // functions — обработчики, найденные в каждом экземпляре при загрузке (в потоках модуля)
+    private static void parseMiddleware(JSONObject manifest, LuaModuleActor actor, Map<String, org.luaj.vm2.LuaFunction[]> functions,
+                                        LuaBudget moduleBudget, int maxViolations, List<MiddlewareHandler> into) {
+        if (!manifest.has("middleware")) return;
+        var arr = manifest.getJSONArray("middleware");
+        for (int i = 0; i < arr.length(); i++) {
+            var mw = arr.getJSONObject(i);
+            String event = mw.optString("event", "");
+            String handler = mw.optString("handler", "");
+            int priority = mw.has("priority") ? mw.getInt("priority") : 100;
+            if (event.isEmpty() || handler.isEmpty()) continue;
+            org.luaj.vm2.LuaFunction[] resolved = functions.get(handler);
+            if (Arrays.asList(resolved).contains(null)) {
+                System.err.println("[LuaModuleLoader] Обработчик " + handler + " (" + event + ") не найден в модуле " + actor.getName());
+                continue;
+            }
+            // Без хука в модуле лимит инструкций обработчика не соблюсти — остаётся только срок
+            LuaBudget budget = moduleBudget.override(mw);
+            if (!moduleBudget.isLimited() && budget.instructions > 0) {
+                System.err.println("[LuaModuleLoader] Лимит инструкций обработчика " + handler + " игнорируется: в модуле "
+                        + actor.getName() + " он не задан");
+            }
+            into.add(new MiddlewareHandler(event, handler, priority, actor, resolved, budget, maxViolations));
         }
     }
 
+    // Массивы по событиям, отсортированные по priority (при равном — в порядке загрузки)
+    private void publish(List<MiddlewareHandler> handlers) {
+        Map<String, List<MiddlewareHandler>> byEvent = new HashMap<>();
+        for (MiddlewareHandler h : handlers) {
+            byEvent.computeIfAbsent(h.event, e -> new ArrayList<>()).add(h);
+        }
+        Map<String, MiddlewareHandler[]> next = new HashMap<>();
+        byEvent.forEach((event, list) -> {
+            list.sort(Comparator.comparingInt(h -> h.priority));
+            next.put(event, list.toArray(NO_HANDLERS));
+        });
+        dispatch = Map.copyOf(next);
+    }
+
+    /**
+     * Снять middleware, вызвать onUnload() у всех модулей (в обратном порядке загрузки, в потоке
+     * каждого экземпляра) и остановить их исполнители.
+     */
     public void unloadModules() {
+        dispatch = Map.of();
+        List<LuaModuleActor> unloading = modules;
+        modules = List.of();
+        try {
+            for (int i = unloading.size() - 1; i >= 0; i--) {
+                LuaModuleActor module = unloading.get(i);
+                for (int k = 0; k < module.getInstanceCount(); k++) {
+                    try {
+                        boolean called = module.call(k, commandBudget, (instance, globals) -> {
+                            org.luaj.vm2.LuaValue onUnload = globals.get("onUnload");
+                            if (onUnload.isnil()) return false;
+                            onUnload.call();
+                            return true;
+                        });
+                        if (called && k == 0) System.out.println("[LuaModuleLoader] Вызван onUnload() для " + module.getName());
+                    } catch (RuntimeException e) {
+                        System.err.println("[LuaModuleLoader] Ошибка LuaJ в onUnload() модуля " + module.getName() + ": " + e.getMessage());
+                    }
+                }
+                stop(module);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watchdog.stop();
         for (LuaModule module : loadedModules) {
             try {
                 module.onUnload();
@@ -216,6 +331,20 @@ public class LuaModuleLoader {
         loadedModules.clear();
     }
 
+    private void stop(LuaModuleActor module) {
+        watchdog.unwatch(module);
+        try {
+            module.shutdown(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Загруженные Lua-модули в порядке загрузки. */
+    public List<LuaModuleActor> getModules() {
+        return modules;
+    }
+
     public List<LuaModule> getLoadedModules() {
         return List.copyOf(loadedModules);
     }
@@ -282,22 +411,84 @@ public class LuaModuleLoader {
         public final String event;
         public final String handler;
         public final int priority;
-        public final org.luaj.vm2.Globals globals;
-        public MiddlewareHandler(String event, String handler, int priority, org.luaj.vm2.Globals globals) {
+        // Модуль-исполнитель и функции-обработчики по экземплярам; вызывать только через actor
+        public final LuaModuleActor actor;
+        public final org.luaj.vm2.LuaFunction[] functions;
+        public final LuaBudget budget;
+        // После maxViolations превышений бюджета подряд обработчик отключается (0 — не отключать)
+        private final int maxViolations;
+        private final AtomicInteger violations = new AtomicInteger();
+        private volatile boolean disabled;
+
+        public MiddlewareHandler(String event, String handler, int priority, LuaModuleActor actor,
+                                 org.luaj.vm2.LuaFunction[] functions, LuaBudget budget, int maxViolations) {
             this.event = event;
             this.handler = handler;
             this.priority = priority;
-            this.globals = globals;
+            this.actor = actor;
+            this.functions = functions;
+            this.budget = budget;
+            this.maxViolations = maxViolations;
+        }
+
+        /**
+         * Вызвать обработчик в потоке модуля в пределах бюджета. Превышение бюджета
+         * ({@link LuaBudgetException}) учитывается и пробрасывается; успешный вызов сбрасывает счёт.
+         */
+        public org.luaj.vm2.LuaValue invoke(org.luaj.vm2.LuaValue event) throws InterruptedException {
+            return invoke(event, 0);
+        }
+
+        /**
+         * То же, но не дольше timeoutMillis (остаток общего срока цепочки, 0 — только свой бюджет).
+         * Если срок урезан общим, его истечение не считается нарушением обработчика.
+         */
+        public org.luaj.vm2.LuaValue invoke(org.luaj.vm2.LuaValue event, long timeoutMillis) throws InterruptedException {
+            boolean capped = timeoutMillis > 0 && (budget.timeoutMillis == 0 || timeoutMillis < budget.timeoutMillis);
+            LuaBudget limit = capped ? new LuaBudget(budget.instructions, timeoutMillis) : budget;
+            try {
+                org.luaj.vm2.LuaValue result = actor.call(limit, (instance, globals) -> functions[instance].call(event));
+                violations.set(0);
+                return result;
+            } catch (LuaBudgetException e) {
+                if (capped && e.getReason() == LuaBudgetException.Reason.TIMEOUT) throw e;
+                if (maxViolations > 0 && violations.incrementAndGet() == maxViolations) {
+                    disabled = true;
+                    System.err.println("[LuaMiddleware] Обработчик " + handler + " модуля " + actor.getName()
+                            + " отключён: " + maxViolations + " превышений бюджета подряд (" + budget + ")");
+                }
+                throw e;
+            }
         }
+
+        public boolean isDisabled() {
+            return disabled;
+        }
+
+        public int getViolations() {
+            return violations.get();
+        }
+    }
+    private static final MiddlewareHandler[] NO_HANDLERS = new MiddlewareHandler[0];
+    // Событие -> обработчики; неизменяемая карта заменяется целиком при загрузке и выгрузке модулей
+    private volatile Map<String, MiddlewareHandler[]> dispatch = Map.of();
+
+    /**
+     * Обработчики события в порядке priority. Массив общий для всех вызывающих — не изменять;
+     * поиск и сортировка выполнены при загрузке, вызов ничего не выделяет.
+     */
+    public MiddlewareHandler[] getHandlers(String event) {
+        return dispatch.getOrDefault(event, NO_HANDLERS);
     }
-    private final List<MiddlewareHandler> middlewareHandlers = new ArrayList<>();
 
     public List<MiddlewareHandler> getMiddlewareHandlers(String event) {
-        List<MiddlewareHandler> result = new ArrayList<>();
-        for (var m : middlewareHandlers) {
-            if (m.event.equals(event)) result.add(m);
-        }
-        result.sort(java.util.Comparator.comparingInt(h -> h.priority));
-        return result;
+        return List.of(getHandlers(event));
+    }
+
+    /** Все обработчики всех событий (для статистики). */
+    public List<MiddlewareHandler> getAllHandlers() {
+        List<MiddlewareHandler> all = new ArrayList<>();
+        for (MiddlewareHandler[] handlers : dispatch.values()) all.addAll(List.of(handlers));
+        return all;
     }
 }
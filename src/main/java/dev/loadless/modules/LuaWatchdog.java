@@ -0,0 +1,46 @@
+package dev.loadless.modules;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сторожевой поток Lua: раз в {@link #PERIOD_MILLIS} мс проверяет сроки текущих вызовов всех
+ * модулей. Зациклившийся Lua-код прерывает сам хук инструкций; сторож нужен для вызова,
+ * застрявшего в блокирующем Java-коде (ввод-вывод из Lua), — поток модуля прерывается.
+ */
+final class LuaWatchdog {
+    static final long PERIOD_MILLIS = 10;
+
+    private final Set<LuaModuleActor> actors = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService timer;
+
+    synchronized void watch(LuaModuleActor actor) {
+        actors.add(actor);
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Loadless-Lua-Watchdog");
+                t.setDaemon(true);
+                return t;
+            });
+            timer.scheduleWithFixedDelay(this::check, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void unwatch(LuaModuleActor actor) {
+        actors.remove(actor);
+    }
+
+    synchronized void stop() {
+        actors.clear();
+        if (timer != null) timer.shutdownNow();
+        timer = null;
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (LuaModuleActor actor : actors) actor.abortOverdue(now);
+    }
+}
@@ -0,0 +1,195 @@
+package dev.loadless.protocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Чтение и запись базовых типов протокола Minecraft поверх ByteBuffer и byte[]:
+ * VarInt, VarLong, строки UTF-8, UUID. Методы не создают промежуточных массивов.
+ */
+public final class Codec {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Codec() {}
+
+    public static int readVarInt(ByteBuffer buf) throws ProtocolException {
+        int result = 0;
+        int shift = 0;
+        try {
+            while (true) {
+                byte b = buf.get();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+                shift += 7;
+                if (shift >= 35) throw new ProtocolException("VarInt слишком длинный");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Пакет обрывается внутри VarInt");
+        }
+    }
+
+    public static long readVarLong(ByteBuffer buf) throws ProtocolException {
+        long result = 0;
+        int shift = 0;
+        try {
+            while (true) {
+                byte b = buf.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+                shift += 7;
+                if (shift >= 70) throw new ProtocolException("VarLong слишком длинный");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Пакет обрывается внутри VarLong");
+        }
+    }
+
+    public static void writeVarInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static void writeVarLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /** Запись VarInt в массив; возвращает позицию после записанных байт. */
+    public static int writeVarInt(byte[] arr, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            arr[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        arr[offset++] = (byte) value;
+        return offset;
+    }
+
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Строка протокола: VarInt длина в байтах + UTF-8.
+     * @param maxChars предел длины в символах (по протоколу байт может быть до 4 раз больше)
+     */
+    public static String readString(ByteBuffer buf, int maxChars) throws ProtocolException {
+        int len = readVarInt(buf);
+        if (len < 0 || len > maxChars * 4) throw new ProtocolException("Недопустимая длина строки: " + len);
+        if (len > buf.remaining()) throw new ProtocolException("Строка выходит за пределы пакета");
+        String s;
+        if (buf.hasArray()) {
+            s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+            buf.position(buf.position() + len);
+        } else {
+            byte[] bytes = new byte[len];
+            buf.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (s.length() > maxChars) throw new ProtocolException("Строка длиннее " + maxChars + " символов");
+        return s;
+    }
+
+    /**
+     * Длина строки в UTF-8 без кодирования. Непарный суррогат считается одним байтом:
+     * так же, как {@code String.getBytes(UTF_8)}, он записывается символом '?'.
+     */
+    public static int utf8Length(CharSequence value) {
+        int len = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    len += 4;
+                    i++;
+                } else {
+                    len++;
+                }
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    /** Строка протокола: UTF-8 кодируется прямо в буфер, без промежуточного byte[]. */
+    public static void writeString(ByteBuffer buf, String value) {
+        writeVarInt(buf, utf8Length(value));
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buf.put((byte) (0xF0 | (cp >> 18)));
+                    buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buf.put((byte) (0x80 | (cp & 0x3F)));
+                } else {
+                    buf.put((byte) '?');
+                }
+            } else {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /** Старшая половина UUID; UUID читается двумя long, без объекта java.util.UUID. */
+    public static long readUuidMost(ByteBuffer buf) throws ProtocolException {
+        return readLong(buf, "UUID");
+    }
+
+    /** Младшая половина UUID (после {@link #readUuidMost}). */
+    public static long readUuidLeast(ByteBuffer buf) throws ProtocolException {
+        return readLong(buf, "UUID");
+    }
+
+    private static long readLong(ByteBuffer buf, String what) throws ProtocolException {
+        if (buf.remaining() < Long.BYTES) throw new ProtocolException("Пакет обрывается внутри " + what);
+        return buf.getLong();
+    }
+
+    public static void writeUuid(ByteBuffer buf, long most, long least) {
+        buf.putLong(most);
+        buf.putLong(least);
+    }
+
+    /** UUID в виде 32 hex-символов без дефисов (как выводится в логах и команде list). */
+    public static String uuidToHex(long most, long least) {
+        char[] out = new char[32];
+        for (int i = 0; i < 16; i++) {
+            out[15 - i] = HEX[(int) (most >>> (i * 4)) & 0xF];
+            out[31 - i] = HEX[(int) (least >>> (i * 4)) & 0xF];
+        }
+        return new String(out);
+    }
+
+    /** Кадр пакета: VarInt длина + payload. */
+    public static byte[] frame(byte[] payload) {
+        byte[] out = new byte[varIntSize(payload.length) + payload.length];
+        int idx = writeVarInt(out, 0, payload.length);
+        System.arraycopy(payload, 0, out, idx, payload.length);
+        return out;
+    }
+}
@@ -0,0 +1,102 @@
+package dev.loadless.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Буфер входящих данных соединения до логина. Накапливает байты (из канала или потока),
+ * выделяет кадры через {@link FrameDecoder} и сохраняет все принятые байты с самого начала,
+ * чтобы handshake + login start можно было переслать на backend без повторного кодирования.
+ */
+public final class FrameBuffer {
+    private final FrameDecoder decoder;
+    private final int maxCapacity;
+    // Режим чтения: position — начало неразобранных данных, limit — конец принятых
+    private ByteBuffer buf;
+
+    public FrameBuffer(int initialCapacity, int maxFrameLength) {
+        this.decoder = new FrameDecoder(maxFrameLength);
+        // handshake + login start + небольшой хвост
+        this.maxCapacity = maxFrameLength * 2 + 16;
+        this.buf = ByteBuffer.allocate(initialCapacity);
+        buf.limit(0);
+    }
+
+    public FrameDecoder decoder() {
+        return decoder;
+    }
+
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    /** Неблокирующее (или блокирующее — по режиму канала) чтение; -1 при конце потока. */
+    public int fill(ReadableByteChannel ch) throws IOException {
+        ensureSpace();
+        int pos = buf.position();
+        buf.position(buf.limit());
+        buf.limit(buf.capacity());
+        int n;
+        try {
+            n = ch.read(buf);
+        } finally {
+            buf.limit(buf.position());
+            buf.position(pos);
+        }
+        return n;
+    }
+
+    /** Блокирующее чтение из потока (учитывает SO_TIMEOUT сокета). */
+    public int fill(InputStream in) throws IOException {
+        ensureSpace();
+        int end = buf.limit();
+        int n = in.read(buf.array(), buf.arrayOffset() + end, buf.capacity() - end);
+        if (n > 0) buf.limit(end + n);
+        return n;
+    }
+
+    /**
+     * @return длину payload очередного кадра (позиция — на начале payload) или -1, если кадр не пришёл целиком
+     */
+    public int nextFrame() throws ProtocolException {
+        return decoder.next(buf);
+    }
+
+    /** Блокирующее чтение до получения очередного кадра. */
+    public int readFrame(InputStream in) throws IOException {
+        int len;
+        while ((len = nextFrame()) < 0) {
+            if (fill(in) < 0) throw new EOFException("Соединение закрыто клиентом");
+        }
+        return len;
+    }
+
+    /** Все принятые байты с начала соединения (копия-представление, буфер не меняется). */
+    public ByteBuffer received() {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(0);
+        return dup;
+    }
+
+    /** Отбросить уже разобранные байты (для status, где пересылать нечего). */
+    public void discardParsed() {
+        if (buf.position() == buf.limit()) {
+            buf.position(0);
+            buf.limit(0);
+        }
+    }
+
+    private void ensureSpace() throws ProtocolException {
+        if (buf.limit() < buf.capacity()) return;
+        if (buf.capacity() >= maxCapacity) throw new FrameTooLongException("Слишком много данных до логина");
+        ByteBuffer bigger = ByteBuffer.allocate(Math.min(buf.capacity() * 4, maxCapacity));
+        int pos = buf.position();
+        bigger.put(buf.duplicate().position(0));
+        bigger.flip();
+        bigger.position(pos);
+        buf = bigger;
+    }
+}
@@ -0,0 +1,52 @@
+package dev.loadless.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Инкрементальное выделение кадров «VarInt длина + payload» из ByteBuffer.
+ * Если данных ещё не хватает, позиция буфера не меняется, и разбор можно
+ * повторить после следующего чтения из сокета.
+ */
+public final class FrameDecoder {
+    private int maxFrameLength;
+
+    public FrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /** Предел длины кадра можно менять между фазами соединения. */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * @param buf буфер в режиме чтения
+     * @return длину payload (позиция буфера — на начале payload) или -1, если кадр ещё не пришёл целиком
+     * @throws ProtocolException при испорченном VarInt
+     * @throws FrameTooLongException при длине больше предела
+     */
+    public int next(ByteBuffer buf) throws ProtocolException {
+        int start = buf.position();
+        int limit = buf.limit();
+        int len = 0;
+        int shift = 0;
+        int pos = start;
+        while (true) {
+            if (pos >= limit) return -1;
+            byte b = buf.get(pos++);
+            len |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+            shift += 7;
+            if (shift >= 21) throw new ProtocolException("Длина пакета слишком длинная (VarInt)");
+        }
+        if (len < 0) throw new ProtocolException("Недопустимая длина пакета: " + len);
+        if (len > maxFrameLength) throw new FrameTooLongException("Пакет длиннее " + maxFrameLength + " байт: " + len);
+        if (limit - pos < len) return -1;
+        buf.position(pos);
+        return len;
+    }
+}
@@ -0,0 +1,12 @@
+package dev.loadless.protocol;
+
+/**
+ * Кадр длиннее допустимого для текущей фазы соединения (или слишком много данных до логина).
+ */
+public class FrameTooLongException extends ProtocolException {
+    private static final long serialVersionUID = 1L;
+
+    public FrameTooLongException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,50 @@
+package dev.loadless.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Пакет handshake (0x00): версия протокола, адрес, порт и следующее состояние.
+ * Объект переиспользуемый: {@link #read} перезаписывает поля.
+ */
+public final class Handshake {
+    public static final int STATE_STATUS = 1;
+    public static final int STATE_LOGIN = 2;
+    public static final int STATE_TRANSFER = 3;
+
+    public int protocolVersion;
+    public String serverAddress;
+    public int serverPort;
+    public int nextState;
+
+    /**
+     * Разбирает payload длиной len с текущей позиции; после вызова позиция — за концом payload.
+     */
+    public Handshake read(ByteBuffer buf, int len) throws ProtocolException {
+        int end = buf.position() + len;
+        try {
+            if (Codec.readVarInt(buf) != 0x00) throw new ProtocolException("Ожидался handshake (0x00)");
+            protocolVersion = Codec.readVarInt(buf);
+            serverAddress = Codec.readString(buf, 255);
+            if (buf.position() + 2 > end) throw new ProtocolException("Handshake обрывается");
+            serverPort = buf.getShort() & 0xFFFF;
+            nextState = Codec.readVarInt(buf);
+            if (buf.position() > end) throw new ProtocolException("Handshake выходит за пределы пакета");
+        } finally {
+            buf.position(end);
+        }
+        return this;
+    }
+
+    public static int payloadLength(int protocolVersion, String serverAddress, int nextState) {
+        int hostLen = Codec.utf8Length(serverAddress);
+        return 1 + Codec.varIntSize(protocolVersion) + Codec.varIntSize(hostLen) + hostLen + 2 + Codec.varIntSize(nextState);
+    }
+
+    public static void write(ByteBuffer buf, int protocolVersion, String serverAddress, int serverPort, int nextState) {
+        Codec.writeVarInt(buf, 0x00);
+        Codec.writeVarInt(buf, protocolVersion);
+        Codec.writeString(buf, serverAddress);
+        buf.putShort((short) serverPort);
+        Codec.writeVarInt(buf, nextState);
+    }
+}
@@ -0,0 +1,28 @@
+package dev.loadless.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Пакеты состояния login, которые прокси отправляет сам, не доходя до реального сервера.
+ */
+public final class LoginPackets {
+    public static final int DISCONNECT = 0x00;
+
+    private LoginPackets() {}
+
+    /**
+     * Полный кадр login disconnect (0x00).
+     * @param reasonJson причина в виде JSON-компонента чата, например {"text":"..."}
+     */
+    public static byte[] disconnect(String reasonJson) {
+        byte[] json = reasonJson.getBytes(StandardCharsets.UTF_8);
+        int bodyLen = 1 + Codec.varIntSize(json.length) + json.length;
+        ByteBuffer out = ByteBuffer.allocate(Codec.varIntSize(bodyLen) + bodyLen);
+        Codec.writeVarInt(out, bodyLen);
+        out.put((byte) DISCONNECT);
+        Codec.writeVarInt(out, json.length);
+        out.put(json);
+        return out.array();
+    }
+}
@@ -0,0 +1,46 @@
+package dev.loadless.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Пакет login start (0x00): имя игрока и (в зависимости от версии) UUID.
+ * UUID хранится двумя long, без строкового представления.
+ */
+public final class LoginStart {
+    public String name;
+    public boolean hasUuid;
+    public long uuidMost;
+    public long uuidLeast;
+
+    /**
+     * @return false, если это не login start (пакет пропускается целиком)
+     */
+    public boolean read(ByteBuffer buf, int len) throws ProtocolException {
+        int end = buf.position() + len;
+        try {
+            if (len == 0 || Codec.readVarInt(buf) != 0x00) return false;
+            name = Codec.readString(buf, 16);
+            hasUuid = false;
+            int rest = end - buf.position();
+            // 1.20.2+: сразу UUID; 1.19.x: boolean "есть UUID" + UUID
+            if (rest == 17 && buf.get(buf.position()) == 1) {
+                buf.get();
+                rest--;
+            }
+            if (rest >= 16) {
+                uuidMost = Codec.readUuidMost(buf);
+                uuidLeast = Codec.readUuidLeast(buf);
+                hasUuid = true;
+            }
+            if (buf.position() > end) throw new ProtocolException("Login start выходит за пределы пакета");
+            return true;
+        } finally {
+            buf.position(end);
+        }
+    }
+
+    /** UUID в hex-виде или "-", если клиент его не прислал. */
+    public String uuidHex() {
+        return hasUuid ? Codec.uuidToHex(uuidMost, uuidLeast) : "-";
+    }
+}
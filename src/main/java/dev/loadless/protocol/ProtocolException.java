@@ -0,0 +1,14 @@
+package dev.loadless.protocol;
+
+import java.io.IOException;
+
+/**
+ * Нарушение протокола Minecraft: слишком длинный VarInt, недопустимая длина пакета и т.п.
+ */
+public class ProtocolException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ProtocolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,59 @@
+package dev.loadless.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Пакеты состояния status: status request (0x00), ping (0x01) и ответы на них.
+ */
+public final class StatusPackets {
+    public static final int STATUS_REQUEST = 0x00;
+    public static final int PING = 0x01;
+    // VarInt длина (9) + id + long
+    public static final int PONG_FRAME_LENGTH = 10;
+
+    private StatusPackets() {}
+
+    /** Идентификатор пакета; позиция после вызова — за концом payload. */
+    public static int packetId(ByteBuffer buf, int len) throws ProtocolException {
+        int end = buf.position() + len;
+        try {
+            return len > 0 ? Codec.readVarInt(buf) : -1;
+        } finally {
+            buf.position(end);
+        }
+    }
+
+    /**
+     * Разбирает ping-пакет; возвращает полезную нагрузку (long) или бросает исключение.
+     */
+    public static long readPing(ByteBuffer buf, int len) throws ProtocolException {
+        int end = buf.position() + len;
+        try {
+            if (len != 9 || Codec.readVarInt(buf) != PING) throw new ProtocolException("Ожидался ping (0x01)");
+            return buf.getLong();
+        } finally {
+            buf.position(end);
+        }
+    }
+
+    /** Полный кадр pong для ответа на ping. */
+    public static byte[] pong(long payload) {
+        ByteBuffer out = ByteBuffer.allocate(PONG_FRAME_LENGTH);
+        writePong(out, payload);
+        return out.array();
+    }
+
+    public static void writePong(ByteBuffer buf, long payload) {
+        Codec.writeVarInt(buf, 9);
+        buf.put((byte) PING);
+        buf.putLong(payload);
+    }
+
+    /** Кадры handshake (next state = status) + status request для опроса сервера. */
+    public static void writeStatusQuery(ByteBuffer buf, int protocolVersion, String host, int port) {
+        Codec.writeVarInt(buf, Handshake.payloadLength(protocolVersion, host, Handshake.STATE_STATUS));
+        Handshake.write(buf, protocolVersion, host, port, Handshake.STATE_STATUS);
+        buf.put((byte) 1);
+        buf.put((byte) STATUS_REQUEST);
+    }
+}
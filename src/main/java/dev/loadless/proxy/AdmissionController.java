@@ -0,0 +1,231 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigSnapshot;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Допуск подключений до того, как на них тратится поток или selector: глобальные и
+ * per-IP token bucket'ы для подключений, ping и логинов и предел одновременных
+ * подключений с одного IP. Записи по IP лежат в наборе полос (stripes) и удаляются,
+ * когда IP простаивает; счётчики и корзины обновляются через CAS без блокировок.
+ * Лимиты можно сменить на ходу ({@link #reconfigure}): корзины и счётчики IP сохраняются.
+ */
+public class AdmissionController {
+    private static final int STRIPES = 16;
+    // Не чаще этого интервала одна из полос проверяется на простаивающие IP
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private volatile Limits limits;
+    private final AtomicLong globalConnectionBucket = RateLimit.newBucket();
+    private final AtomicLong globalPingBucket = RateLimit.newBucket();
+    private final AtomicLong globalLoginBucket = RateLimit.newBucket();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentHashMap<InetAddress, IpEntry>[] stripes = new ConcurrentHashMap[STRIPES];
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+    private final AtomicInteger sweepStripe = new AtomicInteger();
+
+    private final LongAdder rejectedGlobalConnections = new LongAdder();
+    private final LongAdder rejectedIpConnections = new LongAdder();
+    private final LongAdder rejectedIpConcurrent = new LongAdder();
+    private final LongAdder rejectedPings = new LongAdder();
+    private final LongAdder rejectedLogins = new LongAdder();
+
+    /**
+     * @param maxPerIp одновременных подключений с одного IP (0 — без ограничения)
+     * остальные параметры — в секунду, 0 — без ограничения
+     */
+    public AdmissionController(int maxPerIp, int ipConnections, int ipPings, int ipLogins,
+                               int globalConnections, int globalPings, int globalLogins) {
+        this.limits = new Limits(maxPerIp, ipConnections, ipPings, ipLogins, globalConnections, globalPings, globalLogins);
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ConcurrentHashMap<>();
+    }
+
+    public static AdmissionController fromConfig(ConfigSnapshot config) {
+        return new AdmissionController(config.limitMaxPerIp,
+                config.limitIpConnections, config.limitIpPings, config.limitIpLogins,
+                config.limitGlobalConnections, config.limitGlobalPings, config.limitGlobalLogins);
+    }
+
+    /** Применить новые лимиты; уже принятые подключения и состояние корзин не сбрасываются. */
+    public void reconfigure(ConfigSnapshot config) {
+        limits = new Limits(config.limitMaxPerIp,
+                config.limitIpConnections, config.limitIpPings, config.limitIpLogins,
+                config.limitGlobalConnections, config.limitGlobalPings, config.limitGlobalLogins);
+    }
+
+    /**
+     * Проверка при accept: глобальная и per-IP частота подключений и предел одновременных
+     * подключений с IP. При успехе возвращается запись IP, которую нужно отдать в
+     * {@link #release(IpEntry)} при закрытии соединения; null — соединение отклонено.
+     */
+    IpEntry tryAccept(InetAddress address) {
+        long now = System.nanoTime();
+        Limits l = limits;
+        maybeSweep(now, l.idleNanos);
+        RateLimit globalConnections = l.globalConnections;
+        if (globalConnections != null && !globalConnections.tryAcquire(globalConnectionBucket, now)) {
+            rejectedGlobalConnections.increment();
+            return null;
+        }
+        ConcurrentHashMap<InetAddress, IpEntry> stripe = stripeFor(address);
+        while (true) {
+            IpEntry entry = stripe.computeIfAbsent(address, a -> new IpEntry());
+            int current = entry.concurrent.get();
+            if (current < 0) {
+                // Запись уже удаляется очисткой — берём новую
+                stripe.remove(address, entry);
+                continue;
+            }
+            if (l.maxPerIp > 0 && current >= l.maxPerIp) {
+                rejectedIpConcurrent.increment();
+                return null;
+            }
+            if (!entry.concurrent.compareAndSet(current, current + 1)) continue;
+            entry.lastSeen = now;
+            if (l.ipConnections != null && !l.ipConnections.tryAcquire(entry.connectionBucket, now)) {
+                entry.concurrent.decrementAndGet();
+                rejectedIpConnections.increment();
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    void release(IpEntry entry) {
+        entry.lastSeen = System.nanoTime();
+        entry.concurrent.decrementAndGet();
+    }
+
+    /** Handshake со state = status: можно ли отвечать на ping. */
+    boolean allowPing(IpEntry entry) {
+        long now = System.nanoTime();
+        Limits l = limits;
+        if (l.ipPings != null && !l.ipPings.tryAcquire(entry.pingBucket, now)
+                || l.globalPings != null && !l.globalPings.tryAcquire(globalPingBucket, now)) {
+            rejectedPings.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /** Handshake со state = login: можно ли пускать игрока дальше. */
+    boolean allowLogin(IpEntry entry) {
+        long now = System.nanoTime();
+        Limits l = limits;
+        if (l.ipLogins != null && !l.ipLogins.tryAcquire(entry.loginBucket, now)
+                || l.globalLogins != null && !l.globalLogins.tryAcquire(globalLoginBucket, now)) {
+            rejectedLogins.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /** Закрыть отклонённое соединение сразу, без TIME_WAIT на стороне прокси (RST). */
+    static void drop(SocketChannel channel) {
+        try {
+            channel.socket().setSoLinger(true, 0);
+        } catch (IOException ignored) {}
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    private ConcurrentHashMap<InetAddress, IpEntry> stripeFor(InetAddress address) {
+        int h = address.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    // Очистка одной полосы за раз; выполняет тот поток accept, который первым заметил срок
+    private void maybeSweep(long now, long idleNanos) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) return;
+        ConcurrentHashMap<InetAddress, IpEntry> stripe = stripes[Math.floorMod(sweepStripe.getAndIncrement(), STRIPES)];
+        for (var e : stripe.entrySet()) {
+            IpEntry entry = e.getValue();
+            // 0 -> -1: запись помечается удалённой, параллельный tryAccept создаст новую
+            if (now - entry.lastSeen > idleNanos && entry.concurrent.compareAndSet(0, -1)) {
+                stripe.remove(e.getKey(), entry);
+            }
+        }
+    }
+
+    public long getRejectedGlobalConnections() {
+        return rejectedGlobalConnections.sum();
+    }
+
+    public long getRejectedIpConnections() {
+        return rejectedIpConnections.sum();
+    }
+
+    public long getRejectedIpConcurrent() {
+        return rejectedIpConcurrent.sum();
+    }
+
+    public long getRejectedPings() {
+        return rejectedPings.sum();
+    }
+
+    public long getRejectedLogins() {
+        return rejectedLogins.sum();
+    }
+
+    public long getRejectedTotal() {
+        return getRejectedGlobalConnections() + getRejectedIpConnections() + getRejectedIpConcurrent()
+                + getRejectedPings() + getRejectedLogins();
+    }
+
+    /** Число IP, по которым сейчас хранится состояние. */
+    public int getTrackedAddresses() {
+        int total = 0;
+        for (ConcurrentHashMap<InetAddress, IpEntry> stripe : stripes) total += stripe.size();
+        return total;
+    }
+
+    // Набор лимитов; заменяется целиком, чтобы проверка видела согласованные значения
+    private static final class Limits {
+        final int maxPerIp;
+        final RateLimit ipConnections;
+        final RateLimit ipPings;
+        final RateLimit ipLogins;
+        final RateLimit globalConnections;
+        final RateLimit globalPings;
+        final RateLimit globalLogins;
+        final long idleNanos;
+
+        Limits(int maxPerIp, int ipConnections, int ipPings, int ipLogins,
+               int globalConnections, int globalPings, int globalLogins) {
+            this.maxPerIp = maxPerIp;
+            this.ipConnections = RateLimit.perSecond(ipConnections);
+            this.ipPings = RateLimit.perSecond(ipPings);
+            this.ipLogins = RateLimit.perSecond(ipLogins);
+            this.globalConnections = RateLimit.perSecond(globalConnections);
+            this.globalPings = RateLimit.perSecond(globalPings);
+            this.globalLogins = RateLimit.perSecond(globalLogins);
+            // Запись можно удалить, только когда её корзины гарантированно снова полны
+            long idle = MIN_IDLE_NANOS;
+            for (RateLimit limit : new RateLimit[]{this.ipConnections, this.ipPings, this.ipLogins}) {
+                if (limit != null) idle = Math.max(idle, limit.refillNanos());
+            }
+            this.idleNanos = idle;
+        }
+    }
+
+    // Состояние одного IP: одновременные подключения (-1 — запись удалена) и корзины
+    static final class IpEntry {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicLong connectionBucket = RateLimit.newBucket();
+        final AtomicLong pingBucket = RateLimit.newBucket();
+        final AtomicLong loginBucket = RateLimit.newBucket();
+        volatile long lastSeen = System.nanoTime();
+    }
+}
@@ -0,0 +1,117 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigManager.BackendConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Один реальный сервер из пула: адрес, вес, лимит игроков, число активных сессий,
+ * фоновая проверка здоровья и circuit breaker. Сессия занимает слот от выбора backend
+ * до закрытия соединения.
+ */
+public final class Backend {
+    public final String name;
+    public final String host;
+    public final int port;
+    public final int weight;
+    // 0 — без ограничения
+    public final int maxPlayers;
+    private final AtomicInteger active = new AtomicInteger();
+    private final BackendStatusPoller poller;
+    private final CircuitBreaker breaker;
+    // Сглаженная задержка status-запроса, мс (пишет только поток проверки здоровья)
+    private volatile long latencyMs = -1;
+
+    Backend(BackendConfig config, BackendStatusPoller poller, CircuitBreaker breaker) {
+        this.name = config.name;
+        this.host = config.host;
+        this.port = config.port;
+        this.weight = config.weight;
+        this.maxPlayers = config.maxPlayers;
+        this.poller = poller;
+        this.breaker = breaker;
+    }
+
+    /** Занять слот; false, если лимит игроков уже достигнут. */
+    boolean tryAcquire() {
+        if (maxPlayers <= 0) {
+            active.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = active.get();
+            if (current >= maxPlayers) return false;
+        } while (!active.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    void release() {
+        active.decrementAndGet();
+    }
+
+    boolean hasCapacity() {
+        return maxPlayers <= 0 || active.get() < maxPlayers;
+    }
+
+    /** Цепь замкнута и есть свободный слот — backend можно предлагать стратегии. */
+    boolean isAvailable() {
+        return breaker.allowsTraffic() && hasCapacity();
+    }
+
+    public boolean isHealthy() {
+        return breaker.allowsTraffic();
+    }
+
+    public String getBreakerState() {
+        return breaker.getState().name();
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    // Результат очередной проверки здоровья
+    void onProbe(BackendStatus status) {
+        if (status.error == null) {
+            long previous = latencyMs;
+            latencyMs = previous < 0 ? status.latencyMs : (previous * 7 + status.latencyMs) / 8;
+            breaker.onSuccess();
+        } else {
+            breaker.onFailure(status.error);
+        }
+    }
+
+    // Результат подключения игрока к backend
+    void onConnectSuccess() {
+        breaker.onSuccess();
+    }
+
+    void onConnectFailure(String reason) {
+        breaker.onFailure(reason);
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public BackendStatus getStatus() {
+        return poller.getStatus();
+    }
+
+    // Новые параметры проверки здоровья; счётчик сессий и состояние цепи сохраняются
+    void reconfigure(long pollIntervalMs, int failureThreshold, long openMs) {
+        poller.setInterval(pollIntervalMs);
+        breaker.configure(failureThreshold, openMs);
+    }
+
+    BackendStatusPoller getPoller() {
+        return poller;
+    }
+
+    @Override
+    public String toString() {
+        String address = host + ":" + port;
+        return name.equals(address) ? address : name + " (" + address + ")";
+    }
+}
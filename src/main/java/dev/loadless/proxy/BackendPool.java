@@ -0,0 +1,201 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigManager.BackendConfig;
+import dev.loadless.core.Logger;
+import dev.loadless.metrics.Histogram;
+import dev.loadless.protocol.LoginStart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * Пул реальных серверов за одним портом Loadless. Выбор backend делегируется
+ * {@link BalancingStrategy}, лимиты игроков соблюдаются атомарно при занятии слота.
+ * Статус для ping-ответа — сумма онлайна backend с замкнутой цепью; если таких нет,
+ * ping показывает offline, не обращаясь к серверам.
+ * Состав пула меняется на ходу ({@link #reconfigure}): неизменённые backend сохраняют
+ * счётчики и состояние цепи, у удалённых доживают уже открытые сессии.
+ */
+public class BackendPool {
+    private final IntSupplier protocolVersion;
+    private final Logger logger;
+    private final Histogram pollLatency;
+    private volatile Backend[] backends;
+    private volatile BalancingStrategy strategy;
+    private volatile String strategyName;
+    private long pollIntervalMs;
+    private int failureThreshold;
+    private long openMs;
+    private boolean started;
+    private volatile BackendStatus status = BackendStatus.UNKNOWN;
+
+    /**
+     * @param failureThreshold ошибок подряд до размыкания цепи backend
+     * @param openMs минимальное время, на которое backend исключается из пула
+     * @param pollLatency длительности status-опросов всех backend
+     */
+    public BackendPool(List<BackendConfig> configs, String strategyName, IntSupplier protocolVersion, long pollIntervalMs,
+                       int failureThreshold, long openMs, Logger logger, Histogram pollLatency) {
+        this.protocolVersion = protocolVersion;
+        this.logger = logger;
+        this.pollLatency = pollLatency;
+        this.pollIntervalMs = pollIntervalMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        Backend[] created = new Backend[configs.size()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = createBackend(configs.get(i));
+        }
+        this.backends = created;
+        updateStatus();
+        this.strategyName = strategyName;
+        this.strategy = BalancingStrategy.create(strategyName, created);
+        if (created.length > 1) {
+            logger.log("[Proxy] Пул из " + created.length + " backend, стратегия " + strategyName);
+        }
+    }
+
+    private Backend createBackend(BackendConfig config) {
+        BackendStatusPoller poller = new BackendStatusPoller(config.host, config.port, protocolVersion, pollIntervalMs, logger, pollLatency);
+        CircuitBreaker breaker = new CircuitBreaker(config.name, failureThreshold, openMs, logger);
+        Backend backend = new Backend(config, poller, breaker);
+        poller.setOnUpdate(() -> {
+            backend.onProbe(poller.getStatus());
+            updateStatus();
+        });
+        breaker.setOnChange(this::updateStatus);
+        return backend;
+    }
+
+    public synchronized void start() {
+        started = true;
+        for (Backend b : backends) b.getPoller().start();
+    }
+
+    public synchronized void stop() {
+        started = false;
+        for (Backend b : backends) b.getPoller().stop();
+    }
+
+    /**
+     * Заменить состав пула и стратегию. Backend с теми же именем, адресом, весом и лимитом
+     * переносятся вместе со счётчиком сессий; новые параметры проверки здоровья применяются к ним на месте.
+     */
+    public synchronized void reconfigure(List<BackendConfig> configs, String strategyName, long pollIntervalMs,
+                                         int failureThreshold, long openMs) {
+        boolean healthChanged = pollIntervalMs != this.pollIntervalMs || failureThreshold != this.failureThreshold
+                || openMs != this.openMs;
+        Backend[] current = backends;
+        if (!healthChanged && strategyName.equals(this.strategyName) && sameBackends(current, configs)) return;
+        this.pollIntervalMs = pollIntervalMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        Backend[] next = new Backend[configs.size()];
+        List<Backend> kept = new ArrayList<>();
+        for (int i = 0; i < next.length; i++) {
+            BackendConfig config = configs.get(i);
+            Backend existing = find(current, config);
+            if (existing != null) {
+                // Пересоздание обнулило бы счётчик: открытые сессии освобождали бы слоты старого объекта
+                if (healthChanged) existing.reconfigure(pollIntervalMs, failureThreshold, openMs);
+                next[i] = existing;
+                kept.add(existing);
+            } else {
+                next[i] = createBackend(config);
+                if (started) next[i].getPoller().start();
+            }
+        }
+        for (Backend b : current) {
+            if (!kept.contains(b)) b.getPoller().stop();
+        }
+        backends = next;
+        this.strategyName = strategyName;
+        strategy = BalancingStrategy.create(strategyName, next);
+        updateStatus();
+        logger.log("[Proxy] Пул backend обновлён: " + Arrays.toString(next) + ", стратегия " + strategyName);
+    }
+
+    private static boolean sameBackends(Backend[] current, List<BackendConfig> configs) {
+        if (current.length != configs.size()) return false;
+        for (int i = 0; i < current.length; i++) {
+            if (!matches(current[i], configs.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static Backend find(Backend[] current, BackendConfig config) {
+        for (Backend b : current) {
+            if (matches(b, config)) return b;
+        }
+        return null;
+    }
+
+    private static boolean matches(Backend b, BackendConfig config) {
+        return b.name.equals(config.name) && b.host.equals(config.host) && b.port == config.port
+                && b.weight == config.weight && b.maxPlayers == config.maxPlayers;
+    }
+
+    /**
+     * Выбрать backend и занять в нём слот; вызывающий обязан вызвать {@link Backend#release()}
+     * при закрытии соединения.
+     * @param login разобранный login start или null
+     * @return null, если у всех backend исчерпан лимит игроков
+     */
+    Backend acquire(LoginStart login) {
+        BalancingStrategy strategy = this.strategy;
+        // Слот может занять параллельное подключение — тогда выбираем заново
+        for (int attempt = 0, attempts = backends.length; attempt <= attempts; attempt++) {
+            Backend b = strategy.select(login);
+            if (b == null) return null;
+            if (b.tryAcquire()) return b;
+        }
+        return null;
+    }
+
+    public Backend[] getBackends() {
+        return backends.clone();
+    }
+
+    /** Есть ли backend с замкнутой цепью (иначе отказ логина — «offline», а не «заполнено»). */
+    public boolean hasHealthy() {
+        for (Backend b : backends) {
+            if (b.isHealthy()) return true;
+        }
+        return false;
+    }
+
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /** Сводный снимок по всем backend; не блокирует. */
+    public BackendStatus getStatus() {
+        return status;
+    }
+
+    private synchronized void updateStatus() {
+        int online = 0, max = 0;
+        boolean anyPlayers = false, reachable = false;
+        long latency = -1, updatedAt = 0;
+        String error = null;
+        for (Backend b : backends) {
+            BackendStatus s = b.getStatus();
+            updatedAt = Math.max(updatedAt, s.updatedAt);
+            if (!b.isHealthy()) {
+                if (error == null) error = b.name + ": " + (s.error != null ? s.error : "circuit открыт");
+                continue;
+            }
+            reachable = true;
+            latency = Math.max(latency, s.latencyMs);
+            if (s.hasPlayers()) {
+                anyPlayers = true;
+                online += s.online;
+                max += s.max;
+            }
+        }
+        status = new BackendStatus(anyPlayers ? online : -1, anyPlayers ? max : -1, reachable,
+                reachable ? null : error, latency, updatedAt);
+    }
+}
@@ -0,0 +1,31 @@
+package dev.loadless.proxy;
+
+/**
+ * Неизменяемый снимок состояния реального сервера, полученный фоновым опросом.
+ */
+public final class BackendStatus {
+    /** Снимок до первого опроса: онлайн неизвестен, сервер считается доступным. */
+    public static final BackendStatus UNKNOWN = new BackendStatus(-1, -1, true, null, -1, 0);
+
+    // -1, если значение получить не удалось
+    public final int online;
+    public final int max;
+    // false — до сервера не удалось даже подключиться (например, Connection refused)
+    public final boolean reachable;
+    public final String error;
+    public final long latencyMs;
+    public final long updatedAt;
+
+    public BackendStatus(int online, int max, boolean reachable, String error, long latencyMs, long updatedAt) {
+        this.online = online;
+        this.max = max;
+        this.reachable = reachable;
+        this.error = error;
+        this.latencyMs = latencyMs;
+        this.updatedAt = updatedAt;
+    }
+
+    public boolean hasPlayers() {
+        return online >= 0 && max >= 0;
+    }
+}
@@ -0,0 +1,160 @@
+package dev.loadless.proxy;
+
+import dev.loadless.core.Logger;
+import dev.loadless.metrics.Histogram;
+import dev.loadless.protocol.Codec;
+import dev.loadless.protocol.FrameBuffer;
+import dev.loadless.protocol.StatusPackets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+/**
+ * Фоновый опрос реального сервера (TCP-подключение + handshake + status request) с заданным
+ * интервалом; заодно служит активной проверкой здоровья backend и измеряет задержку.
+ * Ping-запросы клиентов отвечают из последнего снимка и не открывают соединений к серверу.
+ * Одновременные запросы обновления объединяются в один (single-flight).
+ */
+public class BackendStatusPoller {
+    private static final int TIMEOUT_MS = 2000;
+    // Ответ status с favicon и списком игроков может быть крупным
+    private static final int MAX_RESPONSE_FRAME = 256 * 1024;
+
+    private final String host;
+    private final int port;
+    private final IntSupplier protocolVersion;
+    private long intervalMs;
+    // Периодический опрос; null — опрос не запущен
+    private ScheduledFuture<?> schedule;
+    private final Logger logger;
+    private final Histogram latency;
+    private final AtomicReference<BackendStatus> status = new AtomicReference<>(BackendStatus.UNKNOWN);
+    private final AtomicReference<CompletableFuture<BackendStatus>> inFlight = new AtomicReference<>();
+    private volatile Runnable onUpdate;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Loadless-Status-Poller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BackendStatusPoller(String host, int port, IntSupplier protocolVersion, long intervalMs, Logger logger, Histogram latency) {
+        this.host = host;
+        this.port = port;
+        this.protocolVersion = protocolVersion;
+        this.intervalMs = Math.max(250, intervalMs);
+        this.logger = logger;
+        this.latency = latency;
+    }
+
+    public synchronized void start() {
+        schedule = scheduler.scheduleWithFixedDelay(this::refresh, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Сменить период опроса; у запущенного опроса следующий запрос — через новый период. */
+    public synchronized void setInterval(long intervalMs) {
+        long next = Math.max(250, intervalMs);
+        if (next == this.intervalMs) return;
+        this.intervalMs = next;
+        if (schedule == null || scheduler.isShutdown()) return;
+        schedule.cancel(false);
+        schedule = scheduler.scheduleWithFixedDelay(this::refresh, next, next, TimeUnit.MILLISECONDS);
+    }
+
+    /** Вызывается в потоке опроса после каждого обновления снимка. */
+    public void setOnUpdate(Runnable onUpdate) {
+        this.onUpdate = onUpdate;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /** Последний снимок; не блокирует. */
+    public BackendStatus getStatus() {
+        return status.get();
+    }
+
+    /**
+     * Обновить снимок. Если опрос уже идёт, возвращается его результат,
+     * новое соединение к серверу не открывается.
+     */
+    public CompletableFuture<BackendStatus> refresh() {
+        CompletableFuture<BackendStatus> mine = new CompletableFuture<>();
+        CompletableFuture<BackendStatus> current = inFlight.compareAndExchange(null, mine);
+        if (current != null) return current;
+        try {
+            long started = System.nanoTime();
+            BackendStatus next = poll();
+            if (latency != null) latency.observeNanos(System.nanoTime() - started);
+            BackendStatus previous = status.getAndSet(next);
+            if (previous.reachable && !next.reachable) {
+                logger.log("[Proxy] Реальный сервер " + host + ":" + port + " недоступен: " + next.error);
+            } else if (!previous.reachable && next.reachable) {
+                logger.log("[Proxy] Реальный сервер " + host + ":" + port + " снова доступен");
+            }
+            Runnable listener = onUpdate;
+            if (listener != null) listener.run();
+            mine.complete(next);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.set(null);
+        }
+        return mine;
+    }
+
+    private BackendStatus poll() {
+        long started = System.nanoTime();
+        boolean connected = false;
+        try (Socket server = new Socket()) {
+            server.connect(new InetSocketAddress(host, port), TIMEOUT_MS);
+            connected = true;
+            server.setSoTimeout(TIMEOUT_MS);
+            OutputStream out = server.getOutputStream();
+            InputStream in = server.getInputStream();
+            // Handshake + Status request одной записью
+            ByteBuffer request = ByteBuffer.allocate(300 + host.length() * 4);
+            StatusPackets.writeStatusQuery(request, protocolVersion.getAsInt(), host, port);
+            out.write(request.array(), 0, request.position());
+            out.flush();
+            // Read response
+            FrameBuffer frames = new FrameBuffer(4096, MAX_RESPONSE_FRAME);
+            ByteBuffer buf = frames.buffer();
+            int len = frames.readFrame(in);
+            int end = buf.position() + len;
+            int packetId = Codec.readVarInt(buf);
+            if (packetId != 0x00) throw new IOException("Неожиданный пакет 0x" + Integer.toHexString(packetId));
+            String json = Codec.readString(buf, MAX_RESPONSE_FRAME);
+            buf.position(end);
+            int online = extractJsonInt(json, "\"online\":");
+            int max = extractJsonInt(json, "\"max\":");
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            return new BackendStatus(online, max, true, null, latencyMs, System.currentTimeMillis());
+        } catch (Exception e) {
+            return new BackendStatus(-1, -1, connected, String.valueOf(e.getMessage()), -1, System.currentTimeMillis());
+        }
+    }
+
+    private static int extractJsonInt(String json, String key) {
+        int idx = json.indexOf(key);
+        if (idx < 0) return -1;
+        idx += key.length();
+        int end = idx;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) end++;
+        if (end > idx) {
+            try { return Integer.parseInt(json.substring(idx, end)); } catch (Exception ignored) {}
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,30 @@
+package dev.loadless.proxy;
+
+import dev.loadless.protocol.LoginStart;
+
+/**
+ * Стратегия выбора backend для нового игрока. Реализация должна пропускать backend
+ * без свободных слотов или с разомкнутой цепью ({@link Backend#isAvailable()});
+ * слот занимает {@link BackendPool}.
+ */
+public interface BalancingStrategy {
+    /**
+     * @param login разобранный login start или null, если его не удалось разобрать
+     * @return подходящий backend или null, если свободных нет
+     */
+    Backend select(LoginStart login);
+
+    /** Стратегия по имени из конфига; неизвестное имя — round-robin. */
+    static BalancingStrategy create(String name, Backend[] backends) {
+        switch (name) {
+            case "least-connections":
+                return new LeastConnectionsStrategy(backends);
+            case "hash-uuid":
+                return new ConsistentHashStrategy(backends, true);
+            case "hash-name":
+                return new ConsistentHashStrategy(backends, false);
+            default:
+                return new RoundRobinStrategy(backends);
+        }
+    }
+}
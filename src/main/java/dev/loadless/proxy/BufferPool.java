@@ -0,0 +1,68 @@
+package dev.loadless.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул direct-буферов двух размеров (обычный и увеличенный) для пересылки байт.
+ * Буферы чужого размера при возврате просто отбрасываются.
+ */
+public class BufferPool {
+    private static final int MAX_POOLED_PER_SIZE = 512;
+
+    private final int smallSize;
+    private final int largeSize;
+    private final ConcurrentLinkedQueue<ByteBuffer> small = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> large = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger smallPooled = new AtomicInteger();
+    private final AtomicInteger largePooled = new AtomicInteger();
+
+    public BufferPool(int smallSize, int largeSize) {
+        this.smallSize = Math.max(1024, smallSize);
+        this.largeSize = Math.max(this.smallSize, largeSize);
+    }
+
+    public ByteBuffer acquireSmall() {
+        return acquire(small, smallPooled, smallSize);
+    }
+
+    public ByteBuffer acquireLarge() {
+        return acquire(large, largePooled, largeSize);
+    }
+
+    public int getSmallSize() {
+        return smallSize;
+    }
+
+    public int getLargeSize() {
+        return largeSize;
+    }
+
+    public void release(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect()) return;
+        buf.clear();
+        if (buf.capacity() == smallSize) {
+            offer(small, smallPooled, buf);
+        } else if (buf.capacity() == largeSize) {
+            offer(large, largePooled, buf);
+        }
+    }
+
+    private static ByteBuffer acquire(ConcurrentLinkedQueue<ByteBuffer> queue, AtomicInteger pooled, int size) {
+        ByteBuffer buf = queue.poll();
+        if (buf != null) {
+            pooled.decrementAndGet();
+            return buf;
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    private static void offer(ConcurrentLinkedQueue<ByteBuffer> queue, AtomicInteger pooled, ByteBuffer buf) {
+        if (pooled.incrementAndGet() <= MAX_POOLED_PER_SIZE) {
+            queue.offer(buf);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
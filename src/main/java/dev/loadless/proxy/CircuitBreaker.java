@@ -0,0 +1,83 @@
+package dev.loadless.proxy;
+
+import dev.loadless.core.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Circuit breaker одного backend. После failureThreshold ошибок подряд (проверки здоровья
+ * или неудачные подключения игроков) цепь размыкается: логины сразу получают отказ,
+ * ping показывает offline. Через openMs цепь становится полуоткрытой и замыкается
+ * первой успешной проверкой здоровья; новая ошибка снова размыкает её.
+ */
+final class CircuitBreaker {
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private volatile int failureThreshold;
+    private volatile long openMs;
+    private final Logger logger;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile Runnable onChange;
+
+    CircuitBreaker(String name, int failureThreshold, long openMs, Logger logger) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = Math.max(0, openMs);
+        this.logger = logger;
+    }
+
+    /** Новые параметры действуют со следующей ошибки; счётчик и состояние цепи сохраняются. */
+    void configure(int failureThreshold, long openMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = Math.max(0, openMs);
+    }
+
+    void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /** Можно ли направлять игроков на backend; не блокирует. */
+    boolean allowsTraffic() {
+        return state == State.CLOSED;
+    }
+
+    State getState() {
+        State current = state;
+        if (current == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) return State.HALF_OPEN;
+        return current;
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state == State.CLOSED) return;
+        synchronized (this) {
+            // До истечения openMs цепь остаётся разомкнутой, даже если backend уже отвечает
+            if (state == State.CLOSED || getState() != State.HALF_OPEN) return;
+            state = State.CLOSED;
+        }
+        logger.log("[Proxy] Backend " + name + " снова принимает игроков (circuit закрыт)");
+        fireChange();
+    }
+
+    void onFailure(String reason) {
+        int failures = consecutiveFailures.incrementAndGet();
+        synchronized (this) {
+            State current = getState();
+            if (current == State.OPEN) return;
+            if (current == State.CLOSED && failures < failureThreshold) return;
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            if (current == State.HALF_OPEN) return;
+        }
+        logger.log("[Proxy] Backend " + name + " отключён из пула на " + openMs + " мс (circuit открыт, ошибок подряд: " + failures + "): " + reason);
+        fireChange();
+    }
+
+    private void fireChange() {
+        Runnable listener = onChange;
+        if (listener != null) listener.run();
+    }
+}
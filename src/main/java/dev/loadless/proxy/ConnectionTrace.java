@@ -0,0 +1,156 @@
+package dev.loadless.proxy;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Отметки времени (System.nanoTime) по фазам одного подключения к основному порту.
+ * Массив отметок создаётся вместе с подключением; отметка ставится один раз, повторная
+ * игнорируется. Логин завершается первым байтом от backend, ping — закрытием соединения;
+ * завершённая запись попадает в {@link ConnectionTracer} и больше не меняется.
+ */
+public final class ConnectionTrace {
+    public enum Phase {
+        // Handshake разобран
+        HANDSHAKE("handshake"),
+        // Ответ status отправлен
+        STATUS("status"),
+        // Pong отправлен
+        PONG("pong"),
+        // Lua-обработчики onPing выполнены
+        MIDDLEWARE("lua"),
+        // Login start разобран
+        LOGIN("login"),
+        // Backend выбран пулом
+        BACKEND("backend"),
+        // TCP-подключение к backend установлено
+        CONNECTED("connect"),
+        // Первый байт от backend
+        FIRST_BYTE("first-byte");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    public static final String KIND_PING = "ping";
+    public static final String KIND_LOGIN = "login";
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final ConnectionTracer tracer;
+    private final long acceptedNanos;
+    private final long acceptedMillis;
+    private final long[] marks = new long[PHASES.length];
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final Object remote;
+    private volatile String kind;
+    private volatile String player;
+    private volatile String backend;
+    private long endNanos;
+    private String outcome;
+
+    ConnectionTrace(ConnectionTracer tracer, Object remote, long acceptedNanos) {
+        this.tracer = tracer;
+        this.remote = remote;
+        this.acceptedNanos = acceptedNanos;
+        this.acceptedMillis = System.currentTimeMillis();
+    }
+
+    void mark(Phase phase) {
+        if (marks[phase.ordinal()] == 0) marks[phase.ordinal()] = System.nanoTime();
+    }
+
+    void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    void setPlayer(String player) {
+        this.player = player;
+    }
+
+    void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    /** Первый байт от backend: логин состоялся, запись завершается. */
+    void onFirstByte() {
+        if (marks[Phase.FIRST_BYTE.ordinal()] != 0) return;
+        mark(Phase.FIRST_BYTE);
+        finish("ok");
+    }
+
+    /** Соединение закрыто: ping с отправленным pong считается успешным, остальное — оборванным. */
+    void onClose() {
+        boolean ponged = KIND_PING.equals(kind) && marks[Phase.PONG.ordinal()] != 0;
+        finish(ponged ? "ok" : "closed");
+    }
+
+    /** Завершить запись (повторные вызовы игнорируются). */
+    void finish(String outcome) {
+        if (!finished.compareAndSet(false, true)) return;
+        this.endNanos = System.nanoTime();
+        this.outcome = outcome;
+        tracer.record(this);
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public long getAcceptedMillis() {
+        return acceptedMillis;
+    }
+
+    public long getTotalNanos() {
+        return endNanos - acceptedNanos;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    /** Одна строка: кто, куда, итог и время каждой фазы от предыдущей отметки. */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        if (player != null) sb.append(player).append(' ');
+        sb.append(remote);
+        if (backend != null) sb.append(" -> ").append(backend);
+        sb.append(": ").append(kind).append(' ').append(outcome)
+                .append(", всего ").append(millis(getTotalNanos())).append(" мс (");
+        // Фазы в порядке времени: обработчики onPing отмечаются до ответа status
+        Phase[] reached = new Phase[PHASES.length];
+        int count = 0;
+        for (Phase phase : PHASES) {
+            if (marks[phase.ordinal()] == 0) continue;
+            int i = count++;
+            while (i > 0 && marks[reached[i - 1].ordinal()] > marks[phase.ordinal()]) {
+                reached[i] = reached[i - 1];
+                i--;
+            }
+            reached[i] = phase;
+        }
+        long previous = acceptedNanos;
+        boolean first = true;
+        for (int i = 0; i < count; i++) {
+            long at = marks[reached[i].ordinal()];
+            if (!first) sb.append(", ");
+            sb.append(reached[i].label).append(' ').append(millis(at - previous));
+            previous = at;
+            first = false;
+        }
+        if (endNanos - previous > 0 && !"ok".equals(outcome)) {
+            if (!first) sb.append(", ");
+            sb.append("до закрытия ").append(millis(endNanos - previous));
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String millis(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return micros >= 10_000 ? String.valueOf(micros / 1000) : String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,99 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigSnapshot;
+import dev.loadless.core.Logger;
+import dev.loadless.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Последние завершённые {@link ConnectionTrace}: отдельные кольца для логинов и ping,
+ * чтобы поток ping не вытеснял историю входов. Запись в кольцо — один инкремент и одна
+ * volatile-запись; медленные подключения (дольше {@code <core><trace><slowThreshold>})
+ * логируются одной строкой с разбивкой по фазам.
+ */
+public final class ConnectionTracer {
+    private final Logger logger;
+    private final Histogram joinTime;
+    private final Ring logins;
+    private final Ring pings;
+    private volatile long slowNanos;
+
+    public ConnectionTracer(int history, long slowThresholdMs, Logger logger, Histogram joinTime) {
+        this.logger = logger;
+        this.joinTime = joinTime;
+        this.logins = new Ring(Math.max(1, history));
+        this.pings = new Ring(Math.max(1, history));
+        this.slowNanos = toNanos(slowThresholdMs);
+    }
+
+    /** Новый порог медленного подключения; размер истории меняется только при перезапуске. */
+    public void reconfigure(ConfigSnapshot config) {
+        slowNanos = toNanos(config.traceSlowThreshold);
+    }
+
+    ConnectionTrace start(Object remote, long acceptedNanos) {
+        return new ConnectionTrace(this, remote, acceptedNanos);
+    }
+
+    // Вызывается из ConnectionTrace.finish один раз на запись
+    void record(ConnectionTrace trace) {
+        String kind = trace.getKind();
+        // Закрытые до handshake подключения не относятся ни к входам, ни к ping
+        if (kind == null) return;
+        boolean login = ConnectionTrace.KIND_LOGIN.equals(kind);
+        (login ? logins : pings).add(trace);
+        if (login && "ok".equals(trace.getOutcome())) joinTime.observeNanos(trace.getTotalNanos());
+        long threshold = slowNanos;
+        if (threshold > 0 && trace.getTotalNanos() >= threshold) {
+            logger.warn("[Proxy] Медленное подключение: " + trace.describe());
+        }
+    }
+
+    /** До limit последних записей, новые первыми. */
+    public List<ConnectionTrace> recent(boolean login, int limit) {
+        List<ConnectionTrace> result = (login ? logins : pings).snapshot();
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /** До limit самых долгих записей из истории. */
+    public List<ConnectionTrace> slowest(boolean login, int limit) {
+        List<ConnectionTrace> result = (login ? logins : pings).snapshot();
+        result.sort(Comparator.comparingLong(ConnectionTrace::getTotalNanos).reversed());
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    private static long toNanos(long ms) {
+        return ms > 0 ? TimeUnit.MILLISECONDS.toNanos(ms) : 0;
+    }
+
+    private static final class Ring {
+        private final AtomicReferenceArray<ConnectionTrace> slots;
+        private final AtomicLong next = new AtomicLong();
+
+        Ring(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        void add(ConnectionTrace trace) {
+            slots.set((int) (next.getAndIncrement() % slots.length()), trace);
+        }
+
+        // Новые первыми; при одновременной записи возможен пропуск одной-двух позиций
+        List<ConnectionTrace> snapshot() {
+            int capacity = slots.length();
+            long end = next.get();
+            List<ConnectionTrace> result = new ArrayList<>(capacity);
+            for (long i = end - 1; i >= 0 && i >= end - capacity; i--) {
+                ConnectionTrace trace = slots.get((int) (i % capacity));
+                if (trace != null) result.add(trace);
+            }
+            return result;
+        }
+    }
+}
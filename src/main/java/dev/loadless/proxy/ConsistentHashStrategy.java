@@ -0,0 +1,83 @@
+package dev.loadless.proxy;
+
+import dev.loadless.protocol.LoginStart;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hashing по UUID (или нику) игрока: один и тот же игрок попадает на тот же
+ * backend, а при изменении пула переезжает лишь малая часть игроков. Каждый backend
+ * занимает на кольце число точек, пропорциональное весу; если выбранный backend заполнен или отключён,
+ * берётся следующий по кольцу. Без ника (login start не разобран) — round-robin.
+ */
+final class ConsistentHashStrategy implements BalancingStrategy {
+    private static final int POINTS_PER_WEIGHT = 160;
+
+    private final boolean byUuid;
+    private final long[] ring;
+    private final Backend[] owners;
+    private final RoundRobinStrategy fallback;
+
+    ConsistentHashStrategy(Backend[] backends, boolean byUuid) {
+        this.byUuid = byUuid;
+        this.fallback = new RoundRobinStrategy(backends);
+        int total = 0;
+        for (Backend b : backends) total += b.weight * POINTS_PER_WEIGHT;
+        long[] points = new long[total];
+        Backend[] pointOwners = new Backend[total];
+        int idx = 0;
+        for (Backend b : backends) {
+            long seed = hashString(b.name);
+            for (int i = 0; i < b.weight * POINTS_PER_WEIGHT; i++) {
+                points[idx] = mix(seed + i * 0x9E3779B97F4A7C15L);
+                pointOwners[idx] = b;
+                idx++;
+            }
+        }
+        // Сортируем точки вместе с владельцами
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(points[a], points[b]));
+        ring = new long[total];
+        owners = new Backend[total];
+        for (int i = 0; i < total; i++) {
+            ring[i] = points[order[i]];
+            owners[i] = pointOwners[order[i]];
+        }
+    }
+
+    @Override
+    public Backend select(LoginStart login) {
+        if (login == null || login.name == null) return fallback.select(null);
+        long key;
+        if (byUuid && login.hasUuid) {
+            key = mix(login.uuidMost ^ mix(login.uuidLeast));
+        } else {
+            key = hashString(login.name.toLowerCase(java.util.Locale.ROOT));
+        }
+        int start = Arrays.binarySearch(ring, key);
+        if (start < 0) start = -start - 1;
+        for (int i = 0; i < ring.length; i++) {
+            Backend b = owners[(start + i) % ring.length];
+            if (b.isAvailable()) return b;
+        }
+        return null;
+    }
+
+    // FNV-1a по символам + перемешивание
+    private static long hashString(String s) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    // Финализатор SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,19 @@
+package dev.loadless.proxy;
+
+/**
+ * Загруженная и проверенная иконка сервера: data URL и готовый JSON-литерал для status response.
+ */
+public final class Favicon {
+    public final String name;
+    public final String dataUrl;
+    // Строка в кавычках, уже экранированная для JSON
+    final String jsonLiteral;
+
+    Favicon(String name, String dataUrl) {
+        this.name = name;
+        this.dataUrl = dataUrl;
+        StringBuilder sb = new StringBuilder(dataUrl.length() + 2);
+        StatusResponseCache.appendJsonString(sb, dataUrl);
+        this.jsonLiteral = sb.toString();
+    }
+}
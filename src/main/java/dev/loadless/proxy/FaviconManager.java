@@ -0,0 +1,202 @@
+package dev.loadless.proxy;
+
+import dev.loadless.core.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Иконки сервера: server-icon.png в рабочей директории (иконка по умолчанию) и
+ * именованные иконки icons/&lt;имя&gt;.png. Файлы отслеживаются через WatchService и
+ * перечитываются в фоне; на ping-запрос отдаётся уже закодированный результат.
+ * Проверка 64x64 делается по заголовку IHDR, без декодирования изображения.
+ */
+public class FaviconManager {
+    public static final String DEFAULT_ICON = "server-icon.png";
+    private static final String ICONS_DIR = "icons";
+    private static final String DATA_URL_PREFIX = "data:image/png;base64,";
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // Иконки, заданные модулями напрямую как data URL, кэшируются, чтобы не пересобирать JSON
+    private static final int MAX_INLINE_ICONS = 32;
+
+    private final Path baseDir;
+    private final Logger logger;
+    private volatile Favicon defaultIcon;
+    private final Map<String, Favicon> namedIcons = new ConcurrentHashMap<>();
+    private final Map<String, Favicon> inlineIcons = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    public FaviconManager(Path baseDir, Logger logger) {
+        this.baseDir = baseDir;
+        this.logger = logger;
+    }
+
+    public void start() {
+        reloadDefault();
+        try {
+            WatchService service = baseDir.getFileSystem().newWatchService();
+            baseDir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = service;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.log("[Favicon] Отслеживание изменений иконок недоступно: " + e.getMessage());
+        }
+        loadIconsDir();
+        if (watchService != null) {
+            Thread t = new Thread(this::watchLoop, "Loadless-Favicon-Watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    // Папка icons: при запуске и когда её создают уже после запуска. Сначала регистрация
+    // в WatchService, затем чтение — иконка, добавленная между ними, не теряется
+    private void loadIconsDir() {
+        Path iconsDir = baseDir.resolve(ICONS_DIR);
+        if (!Files.isDirectory(iconsDir)) return;
+        if (watchService != null) {
+            try {
+                iconsDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException | ClosedWatchServiceException e) {
+                logger.log("[Favicon] Не удалось отслеживать папку icons: " + e.getMessage());
+            }
+        }
+        try (var files = Files.list(iconsDir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".png")).forEach(this::reloadNamed);
+        } catch (IOException e) {
+            logger.log("[Favicon] Не удалось прочитать папку icons: " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        try {
+            if (watchService != null) watchService.close();
+        } catch (IOException ignored) {}
+    }
+
+    /** Иконка по умолчанию (server-icon.png) или null. */
+    public Favicon getDefault() {
+        return defaultIcon;
+    }
+
+    /** Именованная иконка из папки icons (имя без .png) или иконка по умолчанию. */
+    public Favicon get(String name) {
+        if (name == null || name.isEmpty() || DEFAULT_ICON.equals(name)) return defaultIcon;
+        Favicon icon = namedIcons.get(name);
+        return icon != null ? icon : defaultIcon;
+    }
+
+    /**
+     * Иконка, заданная модулем: либо имя иконки из папки icons, либо готовый data URL.
+     * Декодирования не происходит, data URL лишь оборачивается (с кэшированием).
+     */
+    public Favicon resolve(String nameOrDataUrl) {
+        if (nameOrDataUrl == null || nameOrDataUrl.isEmpty()) return defaultIcon;
+        if (!nameOrDataUrl.startsWith(DATA_URL_PREFIX)) return get(nameOrDataUrl);
+        Favicon icon = inlineIcons.get(nameOrDataUrl);
+        if (icon == null) {
+            if (inlineIcons.size() >= MAX_INLINE_ICONS) inlineIcons.clear();
+            icon = new Favicon("inline", nameOrDataUrl);
+            inlineIcons.put(nameOrDataUrl, icon);
+        }
+        return icon;
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    Path changed = dir.resolve((Path) event.context());
+                    String fileName = changed.getFileName().toString();
+                    if (dir.equals(baseDir) && DEFAULT_ICON.equals(fileName)) {
+                        reloadDefault();
+                    } else if (dir.equals(baseDir) && ICONS_DIR.equals(fileName)) {
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                            loadIconsDir();
+                        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && !namedIcons.isEmpty()) {
+                            namedIcons.clear();
+                            logger.log("[Favicon] Папка icons удалена");
+                        }
+                    } else if (!dir.equals(baseDir) && fileName.endsWith(".png")) {
+                        reloadNamed(changed);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // остановка
+        }
+    }
+
+    private void reloadDefault() {
+        Path iconPath = baseDir.resolve(DEFAULT_ICON);
+        if (!Files.exists(iconPath)) {
+            if (defaultIcon != null) logger.log("[Favicon] server-icon.png удалён");
+            defaultIcon = null;
+            return;
+        }
+        Favicon icon = load(DEFAULT_ICON, iconPath);
+        if (icon != null) {
+            defaultIcon = icon;
+            logger.log("[Favicon] Favicon успешно найден и закэширован.");
+        }
+    }
+
+    private void reloadNamed(Path path) {
+        String fileName = path.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - ".png".length());
+        if (!Files.exists(path)) {
+            namedIcons.remove(name);
+            return;
+        }
+        Favicon icon = load(name, path);
+        if (icon != null) {
+            namedIcons.put(name, icon);
+            logger.log("[Favicon] Загружена иконка: " + name);
+        }
+    }
+
+    private Favicon load(String name, Path path) {
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            String problem = validatePng(bytes);
+            if (problem != null) {
+                logger.log("[Favicon] " + path.getFileName() + ": " + problem);
+                return null;
+            }
+            return new Favicon(name, DATA_URL_PREFIX + Base64.getEncoder().encodeToString(bytes));
+        } catch (IOException e) {
+            logger.log("[Favicon] Ошибка чтения " + path.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Проверка PNG-сигнатуры и размеров из IHDR; null — файл подходит
+    static String validatePng(byte[] bytes) {
+        if (bytes.length < 24) return "файл слишком короткий для PNG";
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (bytes[i] != PNG_SIGNATURE[i]) return "не читается как PNG!";
+        }
+        // Первый чанк: длина (4) | тип "IHDR" (4) | ширина (4) | высота (4) ...
+        if (bytes[12] != 'I' || bytes[13] != 'H' || bytes[14] != 'D' || bytes[15] != 'R') return "нет заголовка IHDR";
+        int width = readInt(bytes, 16);
+        int height = readInt(bytes, 20);
+        if (width != 64 || height != 64) return "должен быть PNG 64x64! Сейчас: " + width + "x" + height;
+        return null;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,30 @@
+package dev.loadless.proxy;
+
+import dev.loadless.protocol.LoginStart;
+
+/**
+ * Backend с наименьшим числом активных сессий относительно веса.
+ */
+final class LeastConnectionsStrategy implements BalancingStrategy {
+    private final Backend[] backends;
+
+    LeastConnectionsStrategy(Backend[] backends) {
+        this.backends = backends;
+    }
+
+    @Override
+    public Backend select(LoginStart login) {
+        Backend best = null;
+        long bestActive = 0;
+        for (Backend b : backends) {
+            if (!b.isAvailable()) continue;
+            long active = b.getActive();
+            // active / weight < bestActive / best.weight без деления
+            if (best == null || active * best.weight < bestActive * b.weight) {
+                best = b;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+}
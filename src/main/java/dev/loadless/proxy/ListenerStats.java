@@ -0,0 +1,72 @@
+package dev.loadless.proxy;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики одного слушающего порта: основного Minecraft-порта или TCP-переадресации
+ * из {@code <extraProxies>}.
+ */
+public final class ListenerStats {
+    public static final String KIND_MINECRAFT = "minecraft";
+    public static final String KIND_FORWARD = "forward";
+
+    public final String name;
+    public final String kind;
+    public final InetSocketAddress address;
+    // Адрес назначения переадресации; для Minecraft-порта — null (backend выбирает пул)
+    public final String target;
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder bytesFromClients = new LongAdder();
+    final LongAdder bytesToClients = new LongAdder();
+    final AtomicInteger active = new AtomicInteger();
+    // Все принятые ядром подключения, включая отклонённые допуском, за последние 10 с
+    final RateMeter acceptRate = new RateMeter(10);
+
+    ListenerStats(String name, String kind, InetSocketAddress address, String target) {
+        this.name = name;
+        this.kind = kind;
+        this.address = address;
+        this.target = target;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /** Подключений в секунду, принятых из очереди ядра (среднее за 10 с). */
+    public double getAcceptRate() {
+        return acceptRate.rate();
+    }
+
+    /** Наибольшее число принятых за одну секунду из последних 10. */
+    public long getPeakAcceptRate() {
+        return acceptRate.peak();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getBytesFromClients() {
+        return bytesFromClients.sum();
+    }
+
+    public long getBytesToClients() {
+        return bytesToClients.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + kind + "] " + address + (target != null ? " -> " + target : "")
+                + ": активных " + getActive() + ", принято " + getAccepted() + ", отклонено " + getRejected()
+                + String.format(", accept %.1f/с (пик %d/с)", getAcceptRate(), getPeakAcceptRate())
+                + ", от клиентов " + getBytesFromClients() + " Б, клиентам " + getBytesToClients() + " Б";
+    }
+}
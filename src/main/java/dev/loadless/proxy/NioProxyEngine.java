@@ -0,0 +1,751 @@
+package dev.loadless.proxy;
+
+import dev.loadless.core.Logger;
+import dev.loadless.core.TimerWheel;
+import dev.loadless.protocol.FrameBuffer;
+import dev.loadless.protocol.Handshake;
+import dev.loadless.protocol.LoginStart;
+import dev.loadless.protocol.ProtocolException;
+import dev.loadless.protocol.StatusPackets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Неблокирующий движок прокси: небольшой фиксированный набор потоков с Selector
+ * (примерно по одному на ядро) обслуживает handshake/status/login и двунаправленную
+ * пересылку байт, поэтому число потоков не растёт вместе с числом игроков.
+ * На тех же потоках работают TCP-переадресации из {@code <extraProxies>}: их порты
+ * принимаются первым selector, соединения сразу переходят к пересылке.
+ */
+public class NioProxyEngine {
+    // Сколько после FIN в одном направлении ждать, пока закроется второе
+    private static final long HALF_CLOSE_TIMEOUT_MS = 5000;
+
+    private final ProxyServer proxy;
+    private final ListenerStats mainStats;
+    private final Logger logger;
+    private final EventLoop[] loops;
+    // Пул для Lua-middleware (ответы status с onPing), которое нельзя выполнять в selector-потоках
+    private final ExecutorService middlewareExecutor;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private Acceptor[] mainAcceptors;
+    private volatile boolean running = false;
+
+    public NioProxyEngine(ProxyServer proxy, ListenerStats mainStats, int ioThreads, Logger logger) {
+        this.proxy = proxy;
+        this.mainStats = mainStats;
+        this.logger = logger;
+        int threads = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+        this.loops = new EventLoop[threads];
+        AtomicInteger middlewareThreads = new AtomicInteger();
+        int poolSize = Math.max(2, threads / 2);
+        // Очередь ограничена: при ping-флуде лишние запросы получают ответ без middleware
+        this.middlewareExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+                    Thread t = new Thread(r, "Loadless-NIO-Middleware-" + middlewareThreads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public void start() throws IOException {
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        // С SO_REUSEPORT у основного порта несколько сокетов, они раскладываются по разным selector
+        ServerSocketChannel[] channels = ProxyServer.openServerChannels(mainStats.address, proxy.getAcceptors(),
+                proxy.getAcceptBacklog(), logger);
+        mainAcceptors = new Acceptor[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            mainAcceptors[i] = registerAcceptor(loops[i % loops.length], channels[i], mainStats, null);
+        }
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        logger.log("[NIO] Движок запущен: " + loops.length + " selector-потоков, " + channels.length
+                + " сокетов accept на " + mainStats.address);
+    }
+
+    /**
+     * Открыть TCP-переадресацию на этих же selector-потоках.
+     * @return закрытие возвращённого объекта освобождает порт; открытые соединения не трогаются
+     */
+    public Closeable addForward(ListenerStats stats, String targetHost, int targetPort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        Acceptor acceptor;
+        try {
+            channel.bind(stats.address, proxy.getAcceptBacklog());
+            acceptor = registerAcceptor(loops[0], channel, stats, new InetSocketAddress(targetHost, targetPort));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return () -> closeAcceptor(acceptor);
+    }
+
+    // Порт освобождается, только когда selector снимет канал с регистрации, поэтому закрытие
+    // выполняется в потоке selector с немедленным selectNow — после возврата порт можно занять снова
+    private void closeAcceptor(Acceptor acceptor) throws IOException {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        acceptor.loop.execute(() -> {
+            try {
+                acceptor.channel.close();
+                acceptor.loop.selector.selectNow();
+                closed.complete(null);
+            } catch (IOException e) {
+                closed.completeExceptionally(e);
+            }
+        });
+        try {
+            closed.get(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            acceptor.channel.close();
+        }
+    }
+
+    // Закрытый серверный канал selector снимает с регистрации сам
+    private Acceptor registerAcceptor(EventLoop loop, ServerSocketChannel channel, ListenerStats stats, InetSocketAddress target) throws IOException {
+        channel.configureBlocking(false);
+        Acceptor acceptor = new Acceptor(channel, stats, target, loop);
+        loop.execute(() -> {
+            try {
+                channel.register(loop.selector, SelectionKey.OP_ACCEPT, acceptor);
+            } catch (ClosedChannelException e) {
+                logger.error("[NIO] Не удалось зарегистрировать серверный канал " + stats.address + ": " + e.getMessage());
+            }
+        });
+        return acceptor;
+    }
+
+    /** Закрыть сокеты основного порта; открытые соединения продолжают обслуживаться. */
+    public void stopAccepting() {
+        if (mainAcceptors == null) return;
+        for (Acceptor acceptor : mainAcceptors) {
+            try {
+                closeAcceptor(acceptor);
+            } catch (IOException e) {
+                logger.error("[NIO] Ошибка закрытия серверного канала: " + e.getMessage());
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (mainAcceptors != null) {
+            for (Acceptor acceptor : mainAcceptors) {
+                try {
+                    acceptor.channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+        middlewareExecutor.shutdownNow();
+    }
+
+    private void accept(Acceptor acceptor) {
+        SocketChannel ch;
+        try {
+            while ((ch = acceptor.channel.accept()) != null) {
+                long acceptedAt = System.nanoTime();
+                acceptor.stats.acceptRate.mark();
+                AdmissionController.IpEntry slot = null;
+                if (acceptor.target == null) {
+                    // Допуск до регистрации в selector: отклонённое соединение сразу сбрасывается
+                    slot = proxy.getAdmission().tryAccept(ch.socket().getInetAddress());
+                    if (slot == null) {
+                        acceptor.stats.rejected.increment();
+                        AdmissionController.drop(ch);
+                        continue;
+                    }
+                }
+                try {
+                    ch.configureBlocking(false);
+                    proxy.getRelaySettings().apply(ch.socket());
+                } catch (IOException e) {
+                    // Сокет не настроить (например, клиент уже сбросил соединение): слот IP возвращается сразу
+                    logger.debug("[NIO] Не удалось настроить подключение: " + e.getMessage());
+                    acceptor.stats.rejected.increment();
+                    if (slot != null) proxy.getAdmission().release(slot);
+                    AdmissionController.drop(ch);
+                    continue;
+                }
+                acceptor.stats.accepted.increment();
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                SocketChannel accepted = ch;
+                AdmissionController.IpEntry acceptedSlot = slot;
+                logger.debug("[Proxy] Новое подключение (" + acceptor.stats.name + "): " + ch.socket().getRemoteSocketAddress());
+                loop.execute(() -> loop.register(new Connection(loop, accepted, acceptedSlot, acceptor, acceptedAt)));
+            }
+        } catch (IOException e) {
+            if (running && acceptor.channel.isOpen()) logger.error("[NIO] Ошибка accept: " + e.getMessage());
+        }
+    }
+
+    // Серверный канал и то, что делать с принятыми на нём соединениями
+    private static final class Acceptor {
+        final ServerSocketChannel channel;
+        final ListenerStats stats;
+        // null — основной Minecraft-порт; иначе адрес переадресации
+        final InetSocketAddress target;
+        // Selector-поток, в котором зарегистрирован канал (в нём же он и закрывается)
+        final EventLoop loop;
+
+        Acceptor(ServerSocketChannel channel, ListenerStats stats, InetSocketAddress target, EventLoop loop) {
+            this.loop = loop;
+            this.channel = channel;
+            this.stats = stats;
+            this.target = target;
+        }
+    }
+
+    // Один selector-поток со своей очередью задач
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "Loadless-NIO-" + index);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(Connection conn) {
+            try {
+                conn.clientKey = conn.client.register(selector, SelectionKey.OP_READ, conn);
+                if (conn.acceptor.target != null) conn.connectBackend(conn.acceptor.target);
+            } catch (IOException e) {
+                logger.debug("[NIO] Соединение закрыто (" + conn.remote + "): " + e.getMessage());
+                conn.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        // Сбой одной задачи не должен останавливать selector-поток и все его соединения
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            logger.error("[NIO] Ошибка задачи event loop: " + e);
+                        }
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+                        if (key.attachment() instanceof Acceptor) {
+                            try {
+                                if (key.isAcceptable()) accept((Acceptor) key.attachment());
+                            } catch (RuntimeException e) {
+                                logger.error("[NIO] Ошибка accept: " + e);
+                            }
+                            continue;
+                        }
+                        Connection conn = (Connection) key.attachment();
+                        try {
+                            conn.handle(key);
+                        } catch (IOException | RuntimeException e) {
+                            logger.debug("[NIO] Соединение закрыто (" + conn.remote + "): " + e.getMessage());
+                            conn.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.error("[NIO] Ошибка selector: " + e.getMessage());
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // DISCONNECTING — клиенту дописывается отказ (login disconnect), затем соединение закрывается
+    private enum State { HANDSHAKE, STATUS, MIDDLEWARE, PING, LOGIN, DISCONNECTING, CONNECTING, RELAY, CLOSED }
+
+    // Состояние одного клиентского подключения (и, после логина, его backend-ноги)
+    private final class Connection {
+        final EventLoop loop;
+        final SocketChannel client;
+        final Object remote;
+        // Запись IP в AdmissionController (null у переадресаций); освобождается при закрытии
+        final AdmissionController.IpEntry slot;
+        final Acceptor acceptor;
+        // Фазы подключения к основному порту (null у переадресаций)
+        final ConnectionTrace trace;
+        SelectionKey clientKey;
+        SocketChannel backend;
+        SelectionKey backendKey;
+        // Выбранный сервер пула; слот освобождается при закрытии
+        Backend target;
+        State state = State.HANDSHAKE;
+        // Все байты от клиента до логина (пересылаются на backend без перекодирования)
+        FrameBuffer frames = new FrameBuffer(ProxyServer.PRELOGIN_BUFFER_SIZE, ProxyServer.MAX_PRELOGIN_FRAME);
+        final Handshake handshake = new Handshake();
+        // Ответы клиенту до логина (status/pong), хранится в режиме чтения
+        ByteBuffer toClient;
+        // Буферы пересылки после логина (direct, из пула); в clientToServer сначала лежит handshake + login start
+        RelayBuffer clientToServer;
+        RelayBuffer serverToClient;
+        boolean closeAfterWrite = false;
+        // Источник прислал EOF: больше не читается, остаток его буфера ещё дописывается получателю
+        boolean clientEof;
+        boolean backendEof;
+        // Направление завершено: всё дописано, получателю отправлен FIN
+        boolean clientToServerDone;
+        boolean serverToClientDone;
+        // Сессия игрока (после разобранного login start)
+        Session session;
+        // Срок текущей фазы в общем TimerWheel; срабатывание передаётся в event loop,
+        // устаревшие срабатывания (фаза уже сменилась) отсекаются по timeoutSeq
+        TimerWheel.Timeout timeout;
+        int timeoutSeq;
+
+        Connection(EventLoop loop, SocketChannel client, AdmissionController.IpEntry slot, Acceptor acceptor, long acceptedAt) {
+            this.loop = loop;
+            this.client = client;
+            this.slot = slot;
+            this.acceptor = acceptor;
+            this.remote = client.socket().getRemoteSocketAddress();
+            this.trace = acceptor.target == null ? proxy.getTracer().start(remote, acceptedAt) : null;
+            acceptor.stats.active.incrementAndGet();
+            if (acceptor.target != null) {
+                // Переадресация: без разбора протокола, сразу подключение к цели (после регистрации)
+                frames = null;
+                clientToServer = new RelayBuffer(proxy.getBufferPool());
+                state = State.CONNECTING;
+            } else {
+                arm(PreLoginPhases.Phase.HANDSHAKE);
+            }
+        }
+
+        private void arm(PreLoginPhases.Phase phase) {
+            disarm();
+            int seq = timeoutSeq;
+            timeout = proxy.getPhases().enter(phase, frames,
+                    () -> loop.execute(() -> onTimeout(seq, phase.violation ? "фаза " + phase : null)));
+        }
+
+        private void armConnect() {
+            disarm();
+            int seq = timeoutSeq;
+            timeout = proxy.getTimerWheel().schedule(
+                    () -> loop.execute(() -> onConnectTimeout(seq)), proxy.getBackendConnectTimeout());
+        }
+
+        private void disarm() {
+            if (timeout != null) timeout.cancel();
+            timeout = null;
+            timeoutSeq++;
+        }
+
+        private void onTimeout(int seq, String what) {
+            if (seq != timeoutSeq || state == State.CLOSED) return;
+            if (what != null) logger.debug("[Proxy] Истёк срок (" + what + "), соединение закрыто: " + remote);
+            close();
+        }
+
+        // Истёк срок подключения к backend — это его ошибка, в отличие от закрытия по другим причинам
+        private void onConnectTimeout(int seq) {
+            if (seq != timeoutSeq || state != State.CONNECTING) return;
+            logger.debug("[Proxy] Истёк срок (подключение к backend), соединение закрыто: " + remote);
+            failBackendConnect("не удалось подключиться за отведённое время");
+            close();
+        }
+
+        void handle(SelectionKey key) throws IOException {
+            if (key == backendKey) {
+                if (key.isConnectable()) finishBackendConnect();
+                if (key.isValid() && key.isWritable()) flushToBackend();
+                if (key.isValid() && key.isReadable()) relay(backend, client, serverToClient, backendKey, clientKey);
+                return;
+            }
+            if (key.isValid() && key.isWritable()) flushToClient();
+            if (key.isValid() && key.isReadable()) {
+                if (state == State.RELAY) {
+                    relay(client, backend, clientToServer, clientKey, backendKey);
+                } else {
+                    readPreLogin();
+                }
+            }
+        }
+
+        // --- Фаза до логина: разбор кадров "VarInt длина + данные" ---
+        private void readPreLogin() throws IOException {
+            int n = frames.fill(client);
+            if (n == -1) {
+                close();
+                return;
+            }
+            parseFrames();
+        }
+
+        // Разбор всех полных кадров из буфера, пока соединение в фазе до логина
+        private void parseFrames() throws IOException {
+            ByteBuffer buf = frames.buffer();
+            int len;
+            try {
+                while (isPreLogin() && (len = frames.nextFrame()) >= 0) {
+                    onFrame(buf, len);
+                }
+            } catch (ProtocolException e) {
+                proxy.getPhases().recordViolation(e);
+                throw e;
+            }
+        }
+
+        private boolean isPreLogin() {
+            return state == State.HANDSHAKE || state == State.STATUS || state == State.PING || state == State.LOGIN;
+        }
+
+        private void onFrame(ByteBuffer buf, int len) throws IOException {
+            switch (state) {
+                case HANDSHAKE: {
+                    handshake.read(buf, len);
+                    boolean status = handshake.nextState == Handshake.STATE_STATUS;
+                    trace.mark(ConnectionTrace.Phase.HANDSHAKE);
+                    trace.setKind(status ? ConnectionTrace.KIND_PING : ConnectionTrace.KIND_LOGIN);
+                    if (status ? !proxy.getAdmission().allowPing(slot) : !proxy.getAdmission().allowLogin(slot)) {
+                        close();
+                        break;
+                    }
+                    state = status ? State.STATUS : State.LOGIN;
+                    arm(status ? PreLoginPhases.Phase.STATUS : PreLoginPhases.Phase.LOGIN);
+                    break;
+                }
+                case STATUS: {
+                    if (StatusPackets.packetId(buf, len) == StatusPackets.STATUS_REQUEST) {
+                        logger.debug("[Proxy] Ping-запрос (MOTD) от " + remote);
+                        frames.discardParsed();
+                        if (!proxy.hasPingMiddleware()) {
+                            // Ответ строится из снимка опроса реального сервера и не блокирует selector
+                            respondStatus(proxy.buildStatusResponse(handshake.protocolVersion));
+                            break;
+                        }
+                        // onPing выполняется до ответа в пуле middleware; чтение клиента ждёт ответа
+                        state = State.MIDDLEWARE;
+                        clientKey.interestOps(clientKey.interestOps() & ~SelectionKey.OP_READ);
+                        try {
+                            middlewareExecutor.execute(() -> {
+                                byte[] response = proxy.buildPingResponse(handshake.protocolVersion);
+                                trace.mark(ConnectionTrace.Phase.MIDDLEWARE);
+                                loop.execute(() -> respondStatusAfterMiddleware(response));
+                            });
+                        } catch (RejectedExecutionException e) {
+                            // Пул переполнен (ping-флуд) — ответ без Lua
+                            respondStatus(proxy.buildStatusResponse(handshake.protocolVersion));
+                        }
+                    } else {
+                        close();
+                    }
+                    break;
+                }
+                case PING: {
+                    long payload = StatusPackets.readPing(buf, len);
+                    closeAfterWrite = true;
+                    // Отметка до отправки: после записи pong соединение сразу закрывается
+                    trace.mark(ConnectionTrace.Phase.PONG);
+                    queueToClient(StatusPackets.pong(payload));
+                    break;
+                }
+                case LOGIN: {
+                    onLoginStart(buf, len);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        private void respondStatus(byte[] response) {
+            if (state == State.CLOSED) return;
+            state = State.PING;
+            arm(PreLoginPhases.Phase.PING);
+            clientKey.interestOps(clientKey.interestOps() | SelectionKey.OP_READ);
+            queueToClient(response);
+            proxy.pings.inc();
+            trace.mark(ConnectionTrace.Phase.STATUS);
+        }
+
+        // Пока шёл onPing, чтение клиента было выключено: ping, пришедший вместе с запросом status,
+        // уже лежит в буфере, и новых байт для его разбора не будет
+        private void respondStatusAfterMiddleware(byte[] response) {
+            respondStatus(response);
+            if (state != State.PING) return;
+            try {
+                parseFrames();
+            } catch (IOException e) {
+                logger.debug("[NIO] Соединение закрыто (" + remote + "): " + e.getMessage());
+                close();
+            }
+        }
+
+        private void onLoginStart(ByteBuffer buf, int len) throws IOException {
+            LoginStart login = new LoginStart();
+            boolean parsed = login.read(buf, len);
+            trace.mark(ConnectionTrace.Phase.LOGIN);
+            if (parsed) trace.setPlayer(login.name);
+            target = proxy.acquireBackend(parsed ? login : null);
+            if (target == null) {
+                trace.finish("rejected");
+                state = State.DISCONNECTING;
+                closeAfterWrite = true;
+                clientKey.interestOps(clientKey.interestOps() & ~SelectionKey.OP_READ);
+                queueToClient(proxy.rejectLogin(remote));
+                return;
+            }
+            proxy.logins.inc();
+            trace.mark(ConnectionTrace.Phase.BACKEND);
+            trace.setBackend(target.name);
+            if (parsed) {
+                // kick/остановка приходят из других потоков — закрытие передаётся в event loop
+                session = proxy.registerUser(login, (InetSocketAddress) remote, target, () -> loop.execute(this::close));
+            }
+            // handshake + login start + всё, что клиент успел прислать, уходит на backend как есть
+            ByteBuffer received = frames.received();
+            acceptor.stats.bytesFromClients.add(received.remaining());
+            if (session != null) session.bytesFromClient.add(received.remaining());
+            clientToServer = new RelayBuffer(proxy.getBufferPool());
+            clientToServer.ensureCapacity(received.remaining());
+            clientToServer.buffer().put(received);
+            frames = null;
+            logger.debug("[Proxy] Проксируем к реальному серверу: " + target);
+            connectBackend(new InetSocketAddress(target.host, target.port));
+        }
+
+        // Неблокирующее подключение ко второй стороне; clientToServer уже готов к отправке
+        void connectBackend(InetSocketAddress address) throws IOException {
+            state = State.CONNECTING;
+            // Незавершённое в срок подключение к backend считается его ошибкой (см. onConnectTimeout)
+            armConnect();
+            backend = SocketChannel.open();
+            backend.configureBlocking(false);
+            proxy.getRelaySettings().apply(backend.socket());
+            backendKey = backend.register(loop.selector, SelectionKey.OP_CONNECT, this);
+            // Пока backend не подключён, клиента не читаем
+            clientKey.interestOps(0);
+            boolean connected;
+            try {
+                connected = backend.connect(address);
+            } catch (IOException e) {
+                failBackendConnect(String.valueOf(e.getMessage()));
+                throw e;
+            }
+            if (connected) finishBackendConnect();
+        }
+
+        private void finishBackendConnect() throws IOException {
+            try {
+                if (!backend.finishConnect()) return;
+            } catch (IOException e) {
+                failBackendConnect(String.valueOf(e.getMessage()));
+                throw e;
+            }
+            if (target != null) target.onConnectSuccess();
+            if (trace != null) trace.mark(ConnectionTrace.Phase.CONNECTED);
+            state = State.RELAY;
+            disarm();
+            toClient = null;
+            serverToClient = new RelayBuffer(proxy.getBufferPool());
+            backendKey.interestOps(SelectionKey.OP_READ);
+            clientKey.interestOps(SelectionKey.OP_READ);
+            flushToBackend();
+        }
+
+        // Ошибка подключения засчитывается backend один раз; слот освобождается сразу
+        private void failBackendConnect(String reason) {
+            if (target == null) return;
+            target.onConnectFailure(reason);
+            target.release();
+            target = null;
+        }
+
+        // --- Пересылка байт с учётом backpressure ---
+        private void relay(SocketChannel src, SocketChannel dst, RelayBuffer relayBuf, SelectionKey srcKey, SelectionKey dstKey) throws IOException {
+            ByteBuffer buf = relayBuf.buffer();
+            if (!buf.hasRemaining()) return;
+            // Читаем всё, что уже пришло (пока есть место), и отправляем одной записью
+            boolean eof = false;
+            int read = 0;
+            while (buf.hasRemaining()) {
+                int n = src.read(buf);
+                if (n == -1) {
+                    eof = true;
+                    break;
+                }
+                if (n == 0) break;
+                read += n;
+            }
+            (src == client ? acceptor.stats.bytesFromClients : acceptor.stats.bytesToClients).add(read);
+            if (session != null) (src == client ? session.bytesFromClient : session.bytesToClient).add(read);
+            if (trace != null && read > 0 && src == backend) trace.onFirstByte();
+            int batch = buf.position();
+            buf.flip();
+            dst.write(buf);
+            boolean pending = buf.hasRemaining();
+            if (pending) {
+                // Получатель не успевает — перестаём читать источник, ждём OP_WRITE
+                buf.compact();
+                srcKey.interestOps(srcKey.interestOps() & ~SelectionKey.OP_READ);
+                dstKey.interestOps(dstKey.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                buf.clear();
+                relayBuf.onDrained(batch);
+            }
+            if (eof) {
+                logger.debug("[Proxy] Поток завершён: " + (src == client ? "client->server" : "server->client"));
+                // Последние пакеты (например, disconnect от backend) дописываются медленному получателю до FIN
+                if (src == client) clientEof = true; else backendEof = true;
+                srcKey.interestOps(srcKey.interestOps() & ~SelectionKey.OP_READ);
+                if (!pending) finishDirection(dst);
+            }
+        }
+
+        // Всё, что источник прислал до EOF, дописано: получателю уходит FIN, а когда завершены
+        // оба направления — соединение закрывается
+        private void finishDirection(SocketChannel dst) throws IOException {
+            if (dst == backend ? clientToServerDone : serverToClientDone) return;
+            if (dst == backend) clientToServerDone = true; else serverToClientDone = true;
+            if (clientToServerDone && serverToClientDone) {
+                close();
+                return;
+            }
+            dst.shutdownOutput();
+            // Вторая сторона может так и не закрыть соединение — ждём её не дольше HALF_CLOSE_TIMEOUT_MS
+            disarm();
+            int seq = timeoutSeq;
+            timeout = proxy.getTimerWheel().schedule(
+                    () -> loop.execute(() -> onTimeout(seq, "закрытие второй стороны")), HALF_CLOSE_TIMEOUT_MS);
+        }
+
+        private void flushToBackend() throws IOException {
+            ByteBuffer buf = clientToServer.buffer();
+            int batch = buf.position();
+            buf.flip();
+            backend.write(buf);
+            boolean drained = !buf.hasRemaining();
+            buf.compact();
+            if (drained) {
+                clientToServer.onDrained(batch);
+                backendKey.interestOps(backendKey.interestOps() & ~SelectionKey.OP_WRITE);
+                if (state == State.RELAY) {
+                    if (clientEof) {
+                        finishDirection(backend);
+                    } else {
+                        clientKey.interestOps(clientKey.interestOps() | SelectionKey.OP_READ);
+                    }
+                }
+            } else {
+                backendKey.interestOps(backendKey.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void flushToClient() throws IOException {
+            if (state == State.RELAY) {
+                ByteBuffer buf = serverToClient.buffer();
+                int batch = buf.position();
+                buf.flip();
+                client.write(buf);
+                boolean drained = !buf.hasRemaining();
+                buf.compact();
+                if (drained) {
+                    serverToClient.onDrained(batch);
+                    clientKey.interestOps(clientKey.interestOps() & ~SelectionKey.OP_WRITE);
+                    if (backendEof) {
+                        finishDirection(client);
+                    } else {
+                        backendKey.interestOps(backendKey.interestOps() | SelectionKey.OP_READ);
+                    }
+                } else {
+                    clientKey.interestOps(clientKey.interestOps() | SelectionKey.OP_WRITE);
+                }
+                return;
+            }
+            if (toClient == null) return;
+            client.write(toClient);
+            if (toClient.hasRemaining()) {
+                clientKey.interestOps(clientKey.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            clientKey.interestOps(clientKey.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closeAfterWrite) close();
+        }
+
+        // До логина буфер toClient хранится в режиме чтения; недописанный остаток сохраняется
+        private void queueToClient(byte[] data) {
+            if (toClient != null && toClient.hasRemaining()) {
+                ByteBuffer merged = ByteBuffer.allocate(toClient.remaining() + data.length);
+                merged.put(toClient).put(data).flip();
+                toClient = merged;
+            } else {
+                toClient = ByteBuffer.wrap(data);
+            }
+            try {
+                flushToClient();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (state == State.CLOSED) return;
+            state = State.CLOSED;
+            disarm();
+            try {
+                client.close();
+            } catch (IOException ignored) {}
+            if (backend != null) {
+                try {
+                    backend.close();
+                } catch (IOException ignored) {}
+                logger.debug("[Proxy] Проксирование завершено для " + remote);
+            }
+            if (clientToServer != null) clientToServer.release();
+            if (serverToClient != null) serverToClient.release();
+            if (target != null) target.release();
+            if (slot != null) proxy.getAdmission().release(slot);
+            if (trace != null) trace.onClose();
+            acceptor.stats.active.decrementAndGet();
+            if (session != null) {
+                session.markClosed();
+                proxy.unregisterUser(session);
+            }
+        }
+    }
+}
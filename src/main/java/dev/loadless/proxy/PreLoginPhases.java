@@ -0,0 +1,114 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigSnapshot;
+import dev.loadless.core.TimerWheel;
+import dev.loadless.protocol.FrameBuffer;
+import dev.loadless.protocol.FrameTooLongException;
+import dev.loadless.protocol.ProtocolException;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сроки и пределы фаз соединения до логина. У каждой фазы — свой абсолютный срок
+ * (медленная «по байту» отправка его не продлевает) и свой предел длины кадра.
+ * Сроки отслеживает общий {@link TimerWheel}, а не таймауты сокетов, поэтому зависшее
+ * соединение не держит поток и закрывается вовремя. Ведёт счётчики нарушений протокола.
+ * Новые сроки и пределы ({@link #reconfigure}) действуют для фаз, начатых после замены.
+ */
+public class PreLoginPhases {
+    public enum Phase {
+        // От accept до полного handshake
+        HANDSHAKE(true),
+        // От handshake до status request
+        STATUS(true),
+        // Ожидание ping после ответа status: клиент может его и не прислать
+        PING(false),
+        // От handshake до полного login start
+        LOGIN(true);
+
+        // Истечение срока считается нарушением протокола
+        final boolean violation;
+
+        Phase(boolean violation) {
+            this.violation = violation;
+        }
+    }
+
+    private final TimerWheel timer;
+    // Индекс — Phase.ordinal(); массивы заменяются целиком и после публикации не меняются
+    private volatile long[] timeouts;
+    private volatile int[] maxFrames;
+    private final EnumMap<Phase, LongAdder> expired = new EnumMap<>(Phase.class);
+    private final LongAdder oversizedFrames = new LongAdder();
+    private final LongAdder malformedPackets = new LongAdder();
+
+    public PreLoginPhases(TimerWheel timer, ConfigSnapshot config) {
+        this.timer = timer;
+        for (Phase phase : Phase.values()) expired.put(phase, new LongAdder());
+        reconfigure(config);
+    }
+
+    public void reconfigure(ConfigSnapshot config) {
+        long[] newTimeouts = new long[Phase.values().length];
+        newTimeouts[Phase.HANDSHAKE.ordinal()] = config.handshakeTimeout;
+        newTimeouts[Phase.STATUS.ordinal()] = config.statusTimeout;
+        newTimeouts[Phase.PING.ordinal()] = config.pingTimeout;
+        newTimeouts[Phase.LOGIN.ordinal()] = config.loginTimeout;
+        int[] newMaxFrames = new int[Phase.values().length];
+        int status = clampFrame(config.maxStatusFrame);
+        newMaxFrames[Phase.HANDSHAKE.ordinal()] = clampFrame(config.maxHandshakeFrame);
+        newMaxFrames[Phase.STATUS.ordinal()] = status;
+        newMaxFrames[Phase.PING.ordinal()] = status;
+        newMaxFrames[Phase.LOGIN.ordinal()] = clampFrame(config.maxLoginFrame);
+        maxFrames = newMaxFrames;
+        timeouts = newTimeouts;
+    }
+
+    // Буфер до логина не вмещает кадры больше MAX_PRELOGIN_FRAME
+    private static int clampFrame(int value) {
+        return Math.max(16, Math.min(value, ProxyServer.MAX_PRELOGIN_FRAME));
+    }
+
+    /**
+     * Начать фазу: выставить предел кадра и запланировать onExpire на её срок.
+     * Возвращённый таймаут нужно отменить при переходе к следующей фазе.
+     */
+    TimerWheel.Timeout enter(Phase phase, FrameBuffer frames, Runnable onExpire) {
+        frames.decoder().setMaxFrameLength(maxFrames[phase.ordinal()]);
+        return timer.schedule(() -> {
+            if (phase.violation) expired.get(phase).increment();
+            onExpire.run();
+        }, timeouts[phase.ordinal()]);
+    }
+
+    /** Учесть ошибку разбора кадра или пакета. */
+    void recordViolation(ProtocolException e) {
+        if (e instanceof FrameTooLongException) {
+            oversizedFrames.increment();
+        } else {
+            malformedPackets.increment();
+        }
+    }
+
+    /** Соединений, закрытых по истечении срока фазы. */
+    public long getExpired(Phase phase) {
+        return expired.get(phase).sum();
+    }
+
+    public long getOversizedFrames() {
+        return oversizedFrames.sum();
+    }
+
+    public long getMalformedPackets() {
+        return malformedPackets.sum();
+    }
+
+    public long getViolationsTotal() {
+        long total = oversizedFrames.sum() + malformedPackets.sum();
+        for (Phase phase : Phase.values()) {
+            if (phase.violation) total += expired.get(phase).sum();
+        }
+        return total;
+    }
+}
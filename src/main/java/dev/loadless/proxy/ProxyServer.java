@@ -1,464 +1,902 @@
 package dev.loadless.proxy;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.io.InputStream;
 import java.io.OutputStream;
 import dev.loadless.core.Logger;
-import java.nio.file.Files;
+import dev.loadless.core.TaskExecutor;
+import dev.loadless.core.TimerWheel;
 import java.nio.file.Path;
-import java.util.Base64;
 import dev.loadless.config.ConfigManager;
+import dev.loadless.config.ConfigSnapshot;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.time.Instant;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import dev.loadless.metrics.Counter;
+import dev.loadless.metrics.Histogram;
+import dev.loadless.metrics.MetricsHttpServer;
+import dev.loadless.metrics.MetricsRegistry;
+import dev.loadless.modules.LuaBudgetException;
+import dev.loadless.modules.LuaModuleActor;
 import dev.loadless.modules.LuaModuleLoader;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import dev.loadless.protocol.FrameBuffer;
+import dev.loadless.protocol.Handshake;
+import dev.loadless.protocol.LoginPackets;
+import dev.loadless.protocol.LoginStart;
+import dev.loadless.protocol.ProtocolException;
+import dev.loadless.protocol.StatusPackets;
 
 public class ProxyServer {
     private final InetSocketAddress bindAddress;
     private final MotdManager motdManager;
     private final Logger logger;
-    private final String realHost;
-    private final int realPort;
     private final ConfigManager configManager;
     private volatile boolean running = false;
+    // Плавная остановка: приём закрыт, ping видят offline, новые логины отклоняются
+    private volatile boolean draining = false;
+    private NioProxyEngine nioEngine;
+    private final TaskExecutor executor;
+    private final RelaySettings relaySettings;
+    private final BufferPool bufferPool;
+    private final BackendPool backendPool;
+    private volatile int backendConnectTimeout;
+    // Число потоков (или selector-регистраций) accept основного порта и длина очереди ядра
+    private final int acceptors;
+    private final int acceptBacklog;
+    // Серверные сокеты блокирующего движка; закрываются в stop()
+    private volatile ServerSocketChannel[] serverChannels;
+    private final AdmissionController admission;
+    private final TimerWheel timerWheel;
+    private final PreLoginPhases phases;
+    private final StatusResponseCache statusCache = new StatusResponseCache();
+    // Ответы с motd/favicon от onPing: несколько последних вариантов (чередующиеся MOTD)
+    private final StatusResponseCache luaStatusCache = new StatusResponseCache(8);
+    private final FaviconManager faviconManager;
+    // Основной Minecraft-порт и TCP-переадресации (по имени слушателя) на общих пулах и движке
+    private final ListenerStats mainListener;
+    private final ConcurrentHashMap<String, Forward> forwards = new ConcurrentHashMap<>();
+    private final ConfigManager.ReloadListener reloadListener = this::onConfigReload;
+    // Метрики: счётчики горячего пути создаются заранее, остальное читается при сборе
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    final Counter pings = metrics.counter("loadless_pings_total", "Ответы status (ping MOTD)");
+    final Counter logins = metrics.counter("loadless_logins_total", "Логины, направленные на backend");
+    private final Counter loginsRejectedOffline = new Counter();
+    private final Counter loginsRejectedFull = new Counter();
+    private final Counter pingFallbacks = metrics.counter("loadless_ping_middleware_fallbacks_total",
+            "Ответы status без onPing: цепочка обработчиков не уложилась в pingBudget");
+    private final Histogram luaHandlerTime = metrics.histogram("loadless_lua_handler_seconds", "Время Lua-обработчиков событий");
+    private MetricsHttpServer metricsServer;
+    private final ConnectionTracer tracer;
+    // Начальный буфер фазы до логина и максимальный размер пакета в ней
+    static final int PRELOGIN_BUFFER_SIZE = 512;
+    static final int MAX_PRELOGIN_FRAME = 32 * 1024;
 
-    // Потокобезопасный список подключившихся пользователей
-    private final ConcurrentHashMap<String, ConnectedUser> connectedUsers = new ConcurrentHashMap<>();
+    // Сессии подключившихся игроков с индексами по нику, UUID и IP
+    private final SessionRegistry sessions = new SessionRegistry();
 
-    private LuaModuleLoader luaModuleLoader;
+    private volatile LuaModuleLoader luaModuleLoader;
     public void setLuaModuleLoader(LuaModuleLoader loader) {
         this.luaModuleLoader = loader;
     }
 
-    public ProxyServer(String host, int port, MotdManager motdManager, Logger logger, String realHost, int realPort, ConfigManager configManager) {
+    public ProxyServer(String host, int port, MotdManager motdManager, Logger logger, ConfigManager configManager) {
         this.bindAddress = new InetSocketAddress(host, port);
+        this.mainListener = new ListenerStats("minecraft", ListenerStats.KIND_MINECRAFT, bindAddress, null);
         this.motdManager = motdManager;
         this.logger = logger;
-        this.realHost = realHost;
-        this.realPort = realPort;
         this.configManager = configManager;
+        this.executor = TaskExecutor.create(configManager.getThreadMode(), configManager.getMaxPlatformThreads(), logger);
+        this.relaySettings = RelaySettings.fromConfig(configManager);
+        this.bufferPool = relaySettings.createBufferPool();
+        this.faviconManager = new FaviconManager(Path.of("").toAbsolutePath(), logger);
+        ConfigSnapshot config = configManager.getSnapshot();
+        this.backendPool = new BackendPool(config.backends, config.balancingStrategy,
+                configManager::getVersionProtocol, config.statusPollInterval,
+                config.healthFailureThreshold, config.healthOpenTime, logger,
+                metrics.histogram("loadless_backend_poll_seconds", "Длительность фонового status-опроса backend"));
+        this.backendConnectTimeout = config.backendConnectTimeout;
+        this.acceptors = config.acceptors;
+        this.acceptBacklog = config.acceptBacklog;
+        this.admission = AdmissionController.fromConfig(config);
+        // Тик 50 мс, 512 ячеек: колесо покрывает ~25 с, длинные сроки проходят несколько кругов
+        this.timerWheel = new TimerWheel(50, 512, logger);
+        this.phases = new PreLoginPhases(timerWheel, config);
+        this.tracer = new ConnectionTracer(config.traceHistory, config.traceSlowThreshold, logger,
+                metrics.histogram("loadless_join_seconds", "Вход игрока: от accept до первого байта от backend"));
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        metrics.counters("loadless_connections_accepted_total", "Принятые подключения по слушателям",
+                s -> getListeners().forEach(l -> s.add(MetricsRegistry.labels("listener", l.name), l.getAccepted())));
+        metrics.counters("loadless_connections_rejected_total", "Подключения, отклонённые при accept, по слушателям",
+                s -> getListeners().forEach(l -> s.add(MetricsRegistry.labels("listener", l.name), l.getRejected())));
+        metrics.gauges("loadless_connections_active", "Открытые подключения по слушателям",
+                s -> getListeners().forEach(l -> s.add(MetricsRegistry.labels("listener", l.name), l.getActive())));
+        metrics.counters("loadless_relay_bytes_total", "Переданные байты по слушателям и направлениям", s -> {
+            for (ListenerStats l : getListeners()) {
+                s.add(MetricsRegistry.labels("listener", l.name, "direction", "client_to_server"), l.getBytesFromClients());
+                s.add(MetricsRegistry.labels("listener", l.name, "direction", "server_to_client"), l.getBytesToClients());
+            }
+        });
+        metrics.gauge("loadless_sessions_active", "Игроки, подключённые через прокси", sessions::size);
+        metrics.counters("loadless_lua_rejected_total", "Вызовы Lua, отклонённые из-за переполненной очереди модуля", s -> {
+            LuaModuleLoader loader = luaModuleLoader;
+            if (loader == null) return;
+            for (LuaModuleActor module : loader.getModules()) {
+                s.add(MetricsRegistry.labels("module", module.getName()), module.getRejected());
+            }
+        });
+        metrics.counters("loadless_lua_budget_exceeded_total", "Вызовы Lua, прерванные по бюджету, по модулям и причинам", s -> {
+            LuaModuleLoader loader = luaModuleLoader;
+            if (loader == null) return;
+            for (LuaModuleActor module : loader.getModules()) {
+                for (LuaBudgetException.Reason reason : LuaBudgetException.Reason.values()) {
+                    s.add(MetricsRegistry.labels("module", module.getName(), "reason", reason.name().toLowerCase(Locale.ROOT)),
+                            module.getAborted(reason));
+                }
+            }
+        });
+        metrics.histograms("loadless_lua_call_seconds", "Время выполнения вызовов Lua в потоке модуля", s -> {
+            LuaModuleLoader loader = luaModuleLoader;
+            if (loader == null) return;
+            for (LuaModuleActor module : loader.getModules()) {
+                s.add(MetricsRegistry.labels("module", module.getName()), module.getLatency());
+            }
+        });
+        metrics.counters("loadless_admission_rejected_total", "Отказы допуска по причинам", s -> {
+            s.add(MetricsRegistry.labels("reason", "global_connections"), admission.getRejectedGlobalConnections());
+            s.add(MetricsRegistry.labels("reason", "ip_connections"), admission.getRejectedIpConnections());
+            s.add(MetricsRegistry.labels("reason", "ip_concurrent"), admission.getRejectedIpConcurrent());
+            s.add(MetricsRegistry.labels("reason", "pings"), admission.getRejectedPings());
+            s.add(MetricsRegistry.labels("reason", "logins"), admission.getRejectedLogins());
+        });
+        metrics.counters("loadless_logins_rejected_total", "Логины без подходящего backend", s -> {
+            s.add(MetricsRegistry.labels("reason", "offline"), loginsRejectedOffline.get());
+            s.add(MetricsRegistry.labels("reason", "full"), loginsRejectedFull.get());
+        });
+        metrics.counters("loadless_prelogin_expired_total", "Истёкшие сроки фаз до логина", s -> {
+            for (PreLoginPhases.Phase phase : PreLoginPhases.Phase.values()) {
+                s.add(MetricsRegistry.labels("phase", phase.name().toLowerCase(Locale.ROOT)), phases.getExpired(phase));
+            }
+        });
+        metrics.counters("loadless_prelogin_protocol_errors_total", "Нарушения протокола до логина", s -> {
+            s.add(MetricsRegistry.labels("kind", "oversized"), phases.getOversizedFrames());
+            s.add(MetricsRegistry.labels("kind", "malformed"), phases.getMalformedPackets());
+        });
+        metrics.gauges("loadless_backend_sessions", "Активные сессии по backend", s -> {
+            for (Backend b : backendPool.getBackends()) s.add(MetricsRegistry.labels("backend", b.name), b.getActive());
+        });
+        metrics.gauges("loadless_backend_healthy", "1 — backend принимает игроков (цепь замкнута)", s -> {
+            for (Backend b : backendPool.getBackends()) s.add(MetricsRegistry.labels("backend", b.name), b.isHealthy() ? 1 : 0);
+        });
+        metrics.counter("loadless_log_dropped_lines_total", "Строки лога, отброшенные при переполнении буфера", logger::getDroppedLines);
+    }
+
+    /** Фазы последних подключений (команда trace). */
+    public ConnectionTracer getTracer() {
+        return tracer;
+    }
+
+    /** Реестр метрик прокси (команда stats и HTTP-эндпоинт). */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public FaviconManager getFaviconManager() {
+        return faviconManager;
+    }
+
+    public BackendStatus getBackendStatus() {
+        return backendPool.getStatus();
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    public PreLoginPhases getPhases() {
+        return phases;
+    }
+
+    public TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    public BackendPool getBackendPool() {
+        return backendPool;
+    }
+
+    public TaskExecutor getExecutor() {
+        return executor;
     }
 
     public void start() {
         testRealServerConnection();
         running = true;
-        new Thread(this::runServer, "Loadless-Proxy-Main").start();
+        backendPool.start();
+        faviconManager.start();
+        if ("nio".equals(configManager.getEngine())) {
+            nioEngine = new NioProxyEngine(this, mainListener, configManager.getIoThreads(), logger);
+            try {
+                nioEngine.start();
+            } catch (IOException e) {
+                logger.error("[Proxy] Ошибка запуска NIO-движка: " + e.getMessage());
+                return;
+            }
+        } else {
+            ServerSocketChannel[] channels;
+            try {
+                channels = openServerChannels(bindAddress, acceptors, acceptBacklog, logger);
+            } catch (IOException e) {
+                logger.error("[Proxy] Ошибка сервера: " + e.getMessage());
+                return;
+            }
+            serverChannels = channels;
+            // Без SO_REUSEPORT все потоки принимают с одного сокета
+            for (int i = 0; i < acceptors; i++) {
+                ServerSocketChannel channel = channels[i % channels.length];
+                new Thread(() -> runServer(channel), "Loadless-Proxy-Accept-" + i).start();
+            }
+        }
         logger.log("[Proxy] Сервер запущен на " + bindAddress);
+        for (ConfigManager.ExtraProxyConfig extra : configManager.getExtraProxies()) {
+            startForward(extra);
+        }
+        startMetricsServer(configManager.getSnapshot());
+        configManager.addReloadListener(reloadListener);
     }
 
-    private void runServer() {
-        try (ServerSocket serverSocket = new ServerSocket()) {
-            serverSocket.bind(bindAddress);
-            while (running) {
-                Socket client = serverSocket.accept();
-                logger.log("[Proxy] Принято новое TCP-соединение: " + client.getRemoteSocketAddress());
-                logger.log("[Proxy] Новое подключение: " + client.getRemoteSocketAddress());
-                new Thread(() -> handleClient(client), "Loadless-Proxy-Client").start();
+    private synchronized void startMetricsServer(ConfigSnapshot config) {
+        if (!config.metricsEnabled) return;
+        try {
+            metricsServer = new MetricsHttpServer(metrics, config.metricsHost, config.metricsPort, logger);
+            metricsServer.start();
+        } catch (IOException e) {
+            metricsServer = null;
+            logger.error("[Metrics] Не удалось открыть " + config.metricsHost + ":" + config.metricsPort + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void stopMetricsServer() {
+        if (metricsServer != null) metricsServer.stop();
+        metricsServer = null;
+    }
+
+    private void startForward(ConfigManager.ExtraProxyConfig extra) {
+        try {
+            addForward(extra.listenPort, extra.targetHost, extra.targetPort);
+        } catch (IOException | RuntimeException e) {
+            logger.error("[Proxy] Не удалось запустить переадресацию порта " + extra.listenPort + ": " + e.getMessage());
+        }
+    }
+
+    // Новый снимок config.xml: MOTD, версия, онлайн и localize читаются из снимка при каждом ping,
+    // здесь применяются лимиты, сроки фаз, пул backend и переадресации
+    private void onConfigReload(ConfigSnapshot previous, ConfigSnapshot current) {
+        admission.reconfigure(current);
+        phases.reconfigure(current);
+        tracer.reconfigure(current);
+        backendConnectTimeout = current.backendConnectTimeout;
+        backendPool.reconfigure(current.backends, current.balancingStrategy, current.statusPollInterval,
+                current.healthFailureThreshold, current.healthOpenTime);
+        if (!previous.extraProxies.equals(current.extraProxies)) {
+            // Сначала освобождаем порты убранных или изменённых переадресаций
+            for (ConfigManager.ExtraProxyConfig extra : previous.extraProxies) {
+                if (!current.extraProxies.contains(extra)) removeListener("forward-" + extra.listenPort);
+            }
+            for (ConfigManager.ExtraProxyConfig extra : current.extraProxies) {
+                if (!previous.extraProxies.contains(extra)) startForward(extra);
             }
+        }
+        if (previous.metricsEnabled != current.metricsEnabled || !previous.metricsHost.equals(current.metricsHost)
+                || previous.metricsPort != current.metricsPort) {
+            stopMetricsServer();
+            startMetricsServer(current);
+        }
+        if (!previous.sameStartupSettings(current)) {
+            logger.log("[Config] Адрес, движок, потоки, пересылка и приём подключений применятся после перезапуска");
+        }
+    }
+
+    /**
+     * Запустить TCP-переадресацию listenPort -> targetHost:targetPort на общем движке
+     * (том же, что и основной порт), без разбора протокола и без лимитов допуска.
+     * @return счётчики нового слушателя с именем "forward-&lt;порт&gt;"
+     */
+    public synchronized ListenerStats addForward(int listenPort, String targetHost, int targetPort) throws IOException {
+        if (!running) throw new IllegalStateException("Прокси не запущен");
+        String name = "forward-" + listenPort;
+        if (forwards.containsKey(name)) throw new IllegalArgumentException("Слушатель " + name + " уже запущен");
+        ListenerStats stats = new ListenerStats(name, ListenerStats.KIND_FORWARD,
+                new InetSocketAddress(bindAddress.getAddress(), listenPort), targetHost + ":" + targetPort);
+        Closeable handle;
+        if (nioEngine != null) {
+            handle = nioEngine.addForward(stats, targetHost, targetPort);
+        } else {
+            TCPProxy forward = new TCPProxy(stats, targetHost, targetPort, backendConnectTimeout, acceptBacklog,
+                    logger, executor, relaySettings, bufferPool);
+            forward.start();
+            handle = forward::stop;
+        }
+        forwards.put(name, new Forward(stats, handle));
+        logger.log("[Proxy] Переадресация " + stats.address + " -> " + stats.target + " запущена (" + name + ")");
+        return stats;
+    }
+
+    /** Остановить переадресацию по имени; основной порт так не снимается. Открытые соединения доживают. */
+    public synchronized boolean removeListener(String name) {
+        Forward forward = forwards.remove(name);
+        if (forward == null) return false;
+        try {
+            forward.handle.close();
         } catch (IOException e) {
-            logger.error("[Proxy] Ошибка сервера: " + e.getMessage());
+            logger.error("[Proxy] Ошибка остановки слушателя " + name + ": " + e.getMessage());
         }
+        logger.log("[Proxy] Переадресация " + name + " остановлена");
+        return true;
+    }
+
+    /** Основной порт первым, затем переадресации по номеру порта. */
+    public List<ListenerStats> getListeners() {
+        List<ListenerStats> result = new ArrayList<>();
+        result.add(mainListener);
+        forwards.values().stream()
+                .map(f -> f.stats)
+                .sorted(Comparator.comparingInt(st -> st.address.getPort()))
+                .forEach(result::add);
+        return result;
     }
 
-    // Кэшированная строка favicon
-    private String cachedFaviconBase64 = null;
-    private long faviconLastLoaded = 0;
-    private static final long FAVICON_RELOAD_INTERVAL_MS = 60_000; // 1 минута
+    private static final class Forward {
+        final ListenerStats stats;
+        final Closeable handle;
 
-    private String getFaviconBase64() {
+        Forward(ListenerStats stats, Closeable handle) {
+            this.stats = stats;
+            this.handle = handle;
+        }
+    }
+
+    /**
+     * Серверные сокеты основного порта. При count > 1 и поддержке SO_REUSEPORT (Linux)
+     * открывается count сокетов на одном адресе, и ядро само распределяет между ними
+     * новые подключения; иначе возвращается один сокет.
+     */
+    static ServerSocketChannel[] openServerChannels(InetSocketAddress address, int count, int backlog, Logger logger) throws IOException {
+        List<ServerSocketChannel> channels = new ArrayList<>();
         try {
-            // Если уже кэшировано и не истекло время — возвращаем кэш
-            if (cachedFaviconBase64 != null && (System.currentTimeMillis() - faviconLastLoaded) < FAVICON_RELOAD_INTERVAL_MS) {
-                return cachedFaviconBase64;
+            ServerSocketChannel first = ServerSocketChannel.open();
+            channels.add(first);
+            boolean reusePort = count > 1 && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            if (count > 1 && !reusePort) {
+                logger.log("[Proxy] SO_REUSEPORT не поддерживается: " + count + " потоков accept делят один сокет");
             }
-            Path iconPath = Path.of("server-icon.png");
-            if (Files.exists(iconPath)) {
-                byte[] iconBytes = Files.readAllBytes(iconPath);
-                java.awt.image.BufferedImage img = javax.imageio.ImageIO.read(iconPath.toFile());
-                if (img == null) {
-                    logger.log("[Proxy] server-icon.png не читается как PNG!");
-                    return null;
+            if (reusePort) {
+                first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                for (int i = 1; i < count; i++) {
+                    ServerSocketChannel channel = ServerSocketChannel.open();
+                    channels.add(channel);
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
                 }
-                if (img.getWidth() != 64 || img.getHeight() != 64) {
-                    logger.log("[Proxy] server-icon.png должен быть PNG 64x64! Сейчас: " + img.getWidth() + "x" + img.getHeight());
-                    return null;
+            }
+            for (ServerSocketChannel channel : channels) {
+                channel.bind(address, backlog);
+            }
+        } catch (IOException e) {
+            for (ServerSocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+            throw e;
+        }
+        return channels.toArray(new ServerSocketChannel[0]);
+    }
+
+    private void runServer(ServerSocketChannel serverChannel) {
+        // Канальный сокет нужен, чтобы после логина пересылать байты через direct-буферы
+        try {
+            while (running) {
+                SocketChannel channel = serverChannel.accept();
+                long acceptedAt = System.nanoTime();
+                mainListener.acceptRate.mark();
+                Socket client = channel.socket();
+                // Допуск до логирования и запуска задачи: отклонённое соединение почти ничего не стоит
+                AdmissionController.IpEntry slot = admission.tryAccept(client.getInetAddress());
+                if (slot == null) {
+                    mainListener.rejected.increment();
+                    AdmissionController.drop(channel);
+                    continue;
+                }
+                mainListener.accepted.increment();
+                logger.debug("[Proxy] Новое подключение: " + client.getRemoteSocketAddress());
+                ConnectionTrace trace = tracer.start(client.getRemoteSocketAddress(), acceptedAt);
+                try {
+                    executor.execute("Loadless-Proxy-Client", () -> {
+                        mainListener.active.incrementAndGet();
+                        try {
+                            handleClient(client, slot, trace);
+                        } finally {
+                            mainListener.active.decrementAndGet();
+                            admission.release(slot);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.error("[Proxy] Нет свободных потоков, соединение отклонено: " + client.getRemoteSocketAddress());
+                    admission.release(slot);
+                    try {
+                        client.close();
+                    } catch (IOException ignored) {}
                 }
-                String base64 = Base64.getEncoder().encodeToString(iconBytes);
-                cachedFaviconBase64 = "data:image/png;base64," + base64;
-                faviconLastLoaded = System.currentTimeMillis();
-                logger.log("[Proxy] Favicon успешно найден и закэширован.");
-                return cachedFaviconBase64;
-            } else {
-                logger.log("[Proxy] server-icon.png не найден в рабочей директории!");
-                cachedFaviconBase64 = null;
             }
-        } catch (Exception e) {
-            logger.log("[Proxy] Ошибка чтения server-icon.png: " + e.getMessage());
+        } catch (IOException e) {
+            // После stop() accept завершается закрытием сокета — это не ошибка
+            if (running && !draining) logger.error("[Proxy] Ошибка сервера: " + e.getMessage());
         }
-        return null;
-    }
-
-    // Для хранения последней ошибки getRealServerPlayers
-    private String lastGetRealServerPlayersError = null;
-
-    private int[] getRealServerPlayers() {
-        // Возвращает [online, max] или null если не удалось
-        lastGetRealServerPlayersError = null;
-        try (Socket server = new Socket(realHost, realPort)) {
-            server.setSoTimeout(2000);
-            OutputStream out = server.getOutputStream();
-            InputStream in = server.getInputStream();
-            // Handshake + Status request
-            java.io.ByteArrayOutputStream handshake = new java.io.ByteArrayOutputStream();
-            handshake.write(0x00); // packet id
-            // Protocol version (use config value)
-            writeVarInt(handshake, configManager.getVersionProtocol());
-            byte[] hostBytes = realHost.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-            writeVarInt(handshake, hostBytes.length);
-            handshake.write(hostBytes);
-            handshake.write((realPort >> 8) & 0xFF);
-            handshake.write(realPort & 0xFF);
-            handshake.write(1); // next state: status
-            byte[] handshakeBytes = handshake.toByteArray();
-            writeVarInt(out, handshakeBytes.length);
-            out.write(handshakeBytes);
-            // Status request
-            out.write(0x01); out.write(0x00);
-            out.flush();
-            // Read response
-            readVarInt(in); // packet length
-            int packetId = readVarInt(in);
-            if (packetId != 0x00) return null;
-            int strLen = readVarInt(in);
-            byte[] strBytes = in.readNBytes(strLen);
-            String json = new String(strBytes, java.nio.charset.StandardCharsets.UTF_8);
-            int online = -1, max = -1;
-            // Новый парсер: ищем число до первой нецифры
-            online = extractJsonInt(json, "\"online\":");
-            max = extractJsonInt(json, "\"max\":");
-            if (online >= 0 && max >= 0) return new int[]{online, max};
-        } catch (Exception e) {
-            lastGetRealServerPlayersError = e.getMessage();
-            logger.log("[Proxy] Не удалось получить онлайн с реального сервера: " + e.getMessage());
+    }
+
+    int getAcceptors() {
+        return acceptors;
+    }
+
+    int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    // Готовый пакет status response из кэша (MOTD всегда кастомный, онлайн/max — из последнего опроса реального сервера)
+    byte[] buildStatusResponse(int clientProtocol) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        // ВСЕГДА используем motdManager.getMotd() (кастомный MOTD), никогда не парсим с реального сервера!
+        return statusResponse(statusCache, config, motdManager.getMotd(), faviconManager.get(config.iconName), clientProtocol);
+    }
+
+    private byte[] statusResponse(StatusResponseCache cache, ConfigSnapshot config, String motd, Favicon favicon, int clientProtocol) {
+        int playersOnline, playersMax;
+        BackendStatus status = backendPool.getStatus();
+        if (status.hasPlayers()) {
+            playersOnline = status.online;
+            playersMax = status.max;
+        } else {
+            playersOnline = config.playersOnline;
+            playersMax = config.playersMax;
+        }
+        String versionName;
+        int versionProtocol;
+        boolean echoProtocol;
+        if (!status.reachable || draining) {
+            versionName = config.offlineFlag;
+            versionProtocol = 999;
+            echoProtocol = false;
+        } else {
+            versionName = config.versionName;
+            versionProtocol = config.versionProtocol;
+            echoProtocol = config.versionEchoProtocol;
+        }
+        return cache.get(motd, versionName, versionProtocol, echoProtocol,
+                playersOnline, playersMax, favicon, clientProtocol);
+    }
+
+    // --- интеграция Lua-middleware для события onPing ---
+
+    /** Есть ли обработчики onPing: тогда ответ status нельзя строить в selector-потоке. */
+    boolean hasPingMiddleware() {
+        LuaModuleLoader loader = luaModuleLoader;
+        return loader != null && loader.getHandlers("onPing").length > 0;
+    }
+
+    /**
+     * Ответ status с учётом onPing: обработчики выполняются до ответа, вся цепочка — не дольше
+     * &lt;core&gt;&lt;lua&gt;&lt;pingBudget&gt;. Не уложились — уходит обычный ответ из кэша.
+     * Пакеты с изменёнными motd/favicon тоже кэшируются, по значениям этих полей.
+     */
+    byte[] buildPingResponse(int clientProtocol) {
+        LuaModuleLoader loader = luaModuleLoader;
+        LuaModuleLoader.MiddlewareHandler[] handlers = loader != null ? loader.getHandlers("onPing") : null;
+        if (handlers == null || handlers.length == 0) return buildStatusResponse(clientProtocol);
+        ConfigSnapshot config = configManager.getSnapshot();
+        String motd = motdManager.getMotd();
+        Favicon favicon = faviconManager.get(config.iconName);
+        // Одна таблица события на вызов: обработчики видят изменения предыдущих по priority
+        LuaString motdValue = pingMotd.get(motd);
+        LuaString faviconValue = pingFavicon.get(favicon != null ? favicon.dataUrl : "");
+        LuaTable event = new LuaTable(0, 2);
+        event.rawset(KEY_MOTD, motdValue);
+        event.rawset(KEY_FAVICON, faviconValue);
+        if (!runPingMiddleware(handlers, event, config.luaPingBudget)) {
+            pingFallbacks.inc();
+            return buildStatusResponse(clientProtocol);
+        }
+        // Нетронутое поле — тот же объект LuaString, перекодировать нечего
+        boolean changed = false;
+        LuaValue newMotd = event.rawget(KEY_MOTD);
+        if (newMotd != motdValue && newMotd.isstring()) {
+            motd = luaMotd.text(newMotd.checkstring());
+            changed = true;
+        }
+        LuaValue newFavicon = event.rawget(KEY_FAVICON);
+        if (newFavicon != faviconValue && newFavicon.isstring()) {
+            favicon = faviconManager.resolve(luaFavicon.text(newFavicon.checkstring()));
+            changed = true;
+        }
+        // Ответы с изменёнными полями — в отдельном кэше, чтобы не вытеснять обычный ответ
+        return statusResponse(changed ? luaStatusCache : statusCache, config, motd, favicon, clientProtocol);
+    }
+
+    // false — цепочка не уложилась в срок или обработчик прерван по бюджету: его правки недостоверны
+    private boolean runPingMiddleware(LuaModuleLoader.MiddlewareHandler[] handlers, LuaTable event, long budgetMillis) {
+        long deadline = budgetMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis) : 0;
+        for (LuaModuleLoader.MiddlewareHandler mw : handlers) {
+            // Обработчик, раз за разом превышавший бюджет, отключён до перезагрузки модулей
+            if (mw.isDisabled()) continue;
+            long timeout = 0;
+            if (deadline != 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return false;
+                timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(left));
+            }
+            long started = System.nanoTime();
+            try {
+                // Обработчик выполняется в потоке своего модуля; таблица передаётся по цепочке
+                mw.invoke(event, timeout);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (RejectedExecutionException ex) {
+                // Очередь модуля переполнена — обработчик пропускается (учтён в loadless_lua_rejected_total)
+            } catch (LuaBudgetException ex) {
+                // Учтён в loadless_lua_budget_exceeded_total
+                return false;
+            } catch (RuntimeException ex) {
+                logger.error("[LuaMiddleware] Ошибка в " + mw.handler + ": " + ex.getMessage());
+            } finally {
+                luaHandlerTime.observeNanos(System.nanoTime() - started);
+            }
         }
-        return null;
+        return true;
     }
 
-    private int extractJsonInt(String json, String key) {
-        int idx = json.indexOf(key);
-        if (idx < 0) return -1;
-        idx += key.length();
-        int end = idx;
-        while (end < json.length() && Character.isDigit(json.charAt(end))) end++;
-        if (end > idx) {
-            try { return Integer.parseInt(json.substring(idx, end)); } catch (Exception ignored) {}
+    private static final LuaString KEY_MOTD = LuaString.valueOf("motd");
+    private static final LuaString KEY_FAVICON = LuaString.valueOf("favicon");
+    // MOTD и data URL иконки (десятки КБ) меняются редко — между String и LuaString перекодируются только при смене
+    private final LuaStringMemo pingMotd = new LuaStringMemo();
+    private final LuaStringMemo pingFavicon = new LuaStringMemo();
+    private final LuaStringMemo luaMotd = new LuaStringMemo();
+    private final LuaStringMemo luaFavicon = new LuaStringMemo();
+
+    private static final class LuaStringMemo {
+        private static final class Entry {
+            final String text;
+            final LuaString value;
+
+            Entry(String text, LuaString value) {
+                this.text = text;
+                this.value = value;
+            }
         }
-        return -1;
-    }
-
-    // Класс для хранения информации о подключённом пользователе
-    public static class ConnectedUser {
-        public final String name;
-        public final String uuid;
-        public final Socket socket;
-        public final Instant connectedAt;
-        public ConnectedUser(String name, String uuid, Socket socket) {
-            this.name = name;
-            this.uuid = uuid;
-            this.socket = socket;
-            this.connectedAt = Instant.now();
+
+        private volatile Entry last;
+
+        LuaString get(String text) {
+            Entry entry = last;
+            if (entry == null || !entry.text.equals(text)) {
+                entry = new Entry(text, LuaString.valueOf(text));
+                last = entry;
+            }
+            return entry.value;
+        }
+
+        String text(LuaString value) {
+            Entry entry = last;
+            if (entry == null || (entry.value != value && !entry.value.equals(value))) {
+                entry = new Entry(value.tojstring(), value);
+                last = entry;
+            }
+            return entry.text;
+        }
+    }
+
+    /**
+     * Регистрация сессии игрока (общая для всех движков).
+     * @param teardown закрытие соединения движком; вызывается один раз из {@link Session#close()}
+     */
+    Session registerUser(LoginStart login, InetSocketAddress remote, Backend backend, Runnable teardown) {
+        Session session = new Session(login, remote, backend.name, teardown);
+        sessions.register(session);
+        logger.log("[Proxy] Игрок подключился: " + session.name + " (UUID: " + session.getUuid() + ") -> " + backend.name);
+        return session;
+    }
+
+    // Во время остановки новые логины не получают backend и отклоняются сообщением о перезапуске
+    Backend acquireBackend(LoginStart login) {
+        return draining ? null : backendPool.acquire(login);
+    }
+
+    // Кадр login disconnect, когда подходящего backend нет: прокси останавливается, все отключены (offline) или заполнены
+    byte[] rejectLogin(Object remote) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        String reason;
+        if (draining) {
+            logger.log("[Proxy] Прокси останавливается, отказ в подключении: " + remote);
+            reason = config.restartingMessage;
+        } else {
+            boolean offline = !backendPool.hasHealthy();
+            (offline ? loginsRejectedOffline : loginsRejectedFull).inc();
+            logger.log("[Proxy] " + (offline ? "Все backend недоступны" : "Нет свободных backend") + ", отказ в подключении: " + remote);
+            reason = offline ? config.offlineFlag : config.fullMessage;
         }
+        StringBuilder json = new StringBuilder("{\"text\":");
+        StatusResponseCache.appendJsonString(json, reason);
+        return LoginPackets.disconnect(json.append('}').toString());
+    }
+
+    int getBackendConnectTimeout() {
+        return backendConnectTimeout;
+    }
+
+    void unregisterUser(Session session) {
+        sessions.unregister(session);
+        logger.log("[Proxy] Игрок отключился: " + session.name + (session.hasUuid ? " (UUID: " + session.getUuid() + ")" : ""));
     }
 
-    private void handleClient(Socket client) {
-        logger.log("[Proxy] Попытка запроса от " + client.getRemoteSocketAddress());
-        String userName = null;
-        String userUuid = null;
+    RelaySettings getRelaySettings() {
+        return relaySettings;
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private void handleClient(Socket client, AdmissionController.IpEntry slot, ConnectionTrace trace) {
+        logger.debug("[Proxy] Попытка запроса от " + client.getRemoteSocketAddress());
+        Session session = null;
+        TimerWheel.Timeout deadline = null;
         try (client) {
-            // Увеличиваем таймаут ожидания для долгой прогрузки (например, 60 секунд)
-            client.setSoTimeout(60000);
+            // Вместо SO_TIMEOUT у каждой фазы свой абсолютный срок: по его истечении сокет закрывается
             InputStream in = client.getInputStream();
             OutputStream out = client.getOutputStream();
+            FrameBuffer frames = new FrameBuffer(PRELOGIN_BUFFER_SIZE, MAX_PRELOGIN_FRAME);
+            ByteBuffer buf = frames.buffer();
             // Читаем handshake
-            int packetLen = readVarInt(in);
-            byte[] handshake = in.readNBytes(packetLen);
-            // Определяем state (последний байт handshake)
-            int state = handshake[handshake.length - 1] & 0xFF;
-            if (state == 1) { // status (ping)
+            deadline = enterPhase(PreLoginPhases.Phase.HANDSHAKE, frames, client);
+            Handshake handshake = new Handshake().read(buf, frames.readFrame(in));
+            deadline.cancel();
+            trace.mark(ConnectionTrace.Phase.HANDSHAKE);
+            trace.setKind(handshake.nextState == Handshake.STATE_STATUS ? ConnectionTrace.KIND_PING : ConnectionTrace.KIND_LOGIN);
+            if (handshake.nextState == Handshake.STATE_STATUS) { // status (ping)
+                if (!admission.allowPing(slot)) return;
                 // Читаем следующий пакет (status request)
-                @SuppressWarnings("unused")
-                int nextPacketLen = readVarInt(in); // ОБЯЗАТЕЛЬНО читать VarInt длины!
-                int packetId = in.read();
-                if (packetId == 0x00) {
-                    logger.log("[Proxy] Ping-запрос (MOTD) от " + client.getRemoteSocketAddress());
-                    // --- MOTD всегда кастомный, онлайн/max — с реального сервера если возможно ---
-                    int playersOnline, playersMax;
-                    int[] real = getRealServerPlayers();
-                    if (real != null) {
-                        playersOnline = real[0];
-                        playersMax = real[1];
-                    } else {
-                        playersOnline = configManager.getPlayersOnline();
-                        playersMax = configManager.getPlayersMax();
-                    }
-                    String playersSample = "[]";
-                    String versionBlock;
-                    if (lastGetRealServerPlayersError != null && lastGetRealServerPlayersError.contains("Connection refused")) {
-                        String offlineFlag = configManager.getOfflineFlag();
-                        versionBlock = "\"version\":{\"name\":\"" + offlineFlag + "\",\"protocol\":999},";
-                    } else {
-                        versionBlock = "\"version\":{\"name\":\"" + configManager.getVersionName() + "\",\"protocol\":" + configManager.getVersionProtocol() + "},";
-                    }
-                    String favicon = getFaviconBase64();
-                    String motdJson;
-                    // ВСЕГДА используем motdManager.getMotd() (кастомный MOTD), никогда не парсим с реального сервера!
-                    if (favicon != null) {
-                        String safeFavicon = favicon.replace("\\", "\\\\").replace("\"", "\\\"");
-                        motdJson = "{" +
-                                versionBlock +
-                                "\"players\":{\"max\":" + playersMax + ",\"online\":" + playersOnline + ",\"sample\":" + playersSample + "}," +
-                                "\"description\":{\"text\":\"" + motdManager.getMotd() + "\"}," +
-                                "\"favicon\":\"" + safeFavicon + "\"}";
-                    } else {
-                        motdJson = "{" +
-                                versionBlock +
-                                "\"players\":{\"max\":" + playersMax + ",\"online\":" + playersOnline + ",\"sample\":" + playersSample + "}," +
-                                "\"description\":{\"text\":\"" + motdManager.getMotd() + "\"}" +
-                                "}";
-                    }
-                    byte[] response = createStatusResponse(motdJson);
-                    out.write(response);
+                deadline = enterPhase(PreLoginPhases.Phase.STATUS, frames, client);
+                if (StatusPackets.packetId(buf, frames.readFrame(in)) != StatusPackets.STATUS_REQUEST) return;
+                deadline.cancel();
+                logger.debug("[Proxy] Ping-запрос (MOTD) от " + client.getRemoteSocketAddress());
+                // onPing выполняется до ответа, в пределах pingBudget
+                byte[] response = buildPingResponse(handshake.protocolVersion);
+                trace.mark(ConnectionTrace.Phase.MIDDLEWARE);
+                out.write(response);
+                out.flush();
+                pings.inc();
+                trace.mark(ConnectionTrace.Phase.STATUS);
+                // Попытка прочитать ping (0x01), если есть, с коротким сроком
+                try {
+                    deadline = enterPhase(PreLoginPhases.Phase.PING, frames, client);
+                    long payload = StatusPackets.readPing(buf, frames.readFrame(in));
+                    out.write(StatusPackets.pong(payload));
                     out.flush();
-                    // Попытка прочитать ping (0x01), если есть, с коротким таймаутом
-                    try {
-                        client.setSoTimeout(300); // короткий таймаут (300 мс)
-                        int pingLen = readVarInt(in);
-                        byte[] pingPacket = in.readNBytes(pingLen);
-                        out.write(createPingResponse(pingPacket));
-                        out.flush();
-                    } catch (Exception ignored) {
-                        // Если ping не пришёл — это нормально, просто закрываем соединение
-                    }
-                    // --- интеграция Lua-middleware ---
-                    if (luaModuleLoader != null) {
-                        var pingEvent = new java.util.HashMap<String, Object>();
-                        pingEvent.put("motd", motdManager.getMotd());
-                        pingEvent.put("favicon", getFaviconBase64());
-                        for (var mw : luaModuleLoader.getMiddlewareHandlers("onPing")) {
-                            var handler = mw.globals.get(mw.handler);
-                            if (!handler.isnil() && handler.isfunction()) {
-                                try {
-                                    org.luaj.vm2.LuaTable eventTable = new org.luaj.vm2.LuaTable();
-                                    for (var e : pingEvent.entrySet()) {
-                                        eventTable.set(e.getKey(), org.luaj.vm2.LuaValue.valueOf(e.getValue() != null ? e.getValue().toString() : ""));
-                                    }
-                                    handler.call(eventTable);
-                                    // После вызова можно обновить значения из eventTable
-                                    if (!eventTable.get("motd").isnil()) pingEvent.put("motd", eventTable.get("motd").tojstring());
-                                    if (!eventTable.get("favicon").isnil()) pingEvent.put("favicon", eventTable.get("favicon").tojstring());
-                                } catch (Exception ex) {
-                                    System.err.println("[LuaMiddleware] Ошибка в " + mw.handler + ": " + ex.getMessage());
-                                }
-                            }
-                        }
-                        // Использовать pingEvent.get("motd") и pingEvent.get("favicon") для ответа клиенту
-                    }
-                    return;
+                    trace.mark(ConnectionTrace.Phase.PONG);
+                } catch (Exception ignored) {
+                    // Если ping не пришёл — это нормально, просто закрываем соединение
                 }
+                return;
             }
+            if (!admission.allowLogin(slot)) return;
             // --- Логирование входа игрока ---
-            int loginLen = readVarInt(in);
-            byte[] loginPacket = in.readNBytes(loginLen);
-            if (loginPacket.length > 0 && loginPacket[0] == 0x00) {
-                int offset = 1;
-                int nameLen = 0;
-                int shift = 0;
-                do {
-                    nameLen |= (loginPacket[offset] & 0x7F) << shift;
-                    shift += 7;
-                } while ((loginPacket[offset++] & 0x80) != 0);
-                String name = new String(loginPacket, offset, nameLen, java.nio.charset.StandardCharsets.UTF_8);
-                offset += nameLen;
-                String uuid = "-";
-                if (loginPacket.length >= offset + 16) {
-                    byte[] uuidBytes = new byte[16];
-                    System.arraycopy(loginPacket, offset, uuidBytes, 0, 16);
-                    uuid = bytesToHex(uuidBytes);
+            deadline = enterPhase(PreLoginPhases.Phase.LOGIN, frames, client);
+            LoginStart login = new LoginStart();
+            boolean parsed = login.read(buf, frames.readFrame(in));
+            deadline.cancel();
+            trace.mark(ConnectionTrace.Phase.LOGIN);
+            if (parsed) trace.setPlayer(login.name);
+            Backend backend = acquireBackend(parsed ? login : null);
+            if (backend == null) {
+                trace.finish("rejected");
+                out.write(rejectLogin(client.getRemoteSocketAddress()));
+                out.flush();
+                return;
+            }
+            logins.inc();
+            trace.mark(ConnectionTrace.Phase.BACKEND);
+            trace.setBackend(backend.name);
+            try {
+                if (parsed) {
+                    session = registerUser(login, (InetSocketAddress) client.getRemoteSocketAddress(), backend, () -> {
+                        try {
+                            client.close();
+                        } catch (IOException ignored) {}
+                    });
                 }
-                logger.log("[Proxy] Игрок подключился: " + name + " (UUID: " + uuid + ")");
-                userName = name;
-                userUuid = uuid;
-                // Добавляем пользователя в список
-                connectedUsers.put(name, new ConnectedUser(name, uuid, client));
+                // Не ping — проксируем принятые байты (handshake + login start + хвост) одной записью
+                proxyToRealServer(client, frames.received(), backend, trace, session);
+            } finally {
+                backend.release();
             }
-            // Не ping — проксируем handshake + login start + всё остальное
-            InputStream fullIn = new java.io.SequenceInputStream(
-                new java.io.SequenceInputStream(
-                    new java.io.ByteArrayInputStream(encodeVarInt(packetLen, handshake)),
-                    new java.io.ByteArrayInputStream(encodeVarInt(loginLen, loginPacket))
-                ),
-                in
-            );
-            proxyToRealServer(client, fullIn, out);
         } catch (Exception e) {
-            logger.error("[Proxy] Ошибка клиента (" + client.getRemoteSocketAddress() + "): " + e.getMessage());
+            if (e instanceof ProtocolException) phases.recordViolation((ProtocolException) e);
+            // Закрытый по сроку фазы сокет уже залогирован
+            if (!client.isClosed()) {
+                logger.error("[Proxy] Ошибка клиента (" + client.getRemoteSocketAddress() + "): " + e.getMessage());
+            }
         } finally {
-            // Удаляем пользователя из списка при отключении
-            if (userName != null) {
-                connectedUsers.remove(userName);
-                logger.log("[Proxy] Игрок отключился: " + userName + (userUuid != null ? " (UUID: " + userUuid + ")" : ""));
+            if (deadline != null) deadline.cancel();
+            trace.onClose();
+            // Снимаем сессию при отключении; закрывать уже нечего — сокет закрыт try-with-resources
+            if (session != null) {
+                session.markClosed();
+                unregisterUser(session);
             }
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
+    // Срок фазы блокирующего движка: по истечении сокет закрывается, и заблокированное чтение завершается
+    private TimerWheel.Timeout enterPhase(PreLoginPhases.Phase phase, FrameBuffer frames, Socket client) {
+        return phases.enter(phase, frames, () -> {
+            if (phase.violation) {
+                logger.debug("[Proxy] Истёк срок (фаза " + phase + "), соединение закрыто: " + client.getRemoteSocketAddress());
+            }
+            try {
+                client.close();
+            } catch (IOException ignored) {}
+        });
     }
 
-    private byte[] encodeVarInt(int len, byte[] data) {
-        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
-        try {
-            int value = len;
-            do {
-                byte temp = (byte) (value & 0b01111111);
-                value >>>= 7;
-                if (value != 0) temp |= 0b10000000;
-                out.write(temp);
-            } while (value != 0);
-            out.write(data);
-        } catch (Exception ignored) {}
-        return out.toByteArray();
-    }
-
-    private void proxyToRealServer(Socket client, InputStream clientIn, OutputStream clientOut) {
-        try (Socket server = new Socket(realHost, realPort)) {
-            // Увеличиваем таймауты для обеих сторон (например, 60 секунд)
-            server.setSoTimeout(60000);
-            client.setSoTimeout(60000);
-            logger.log("[Proxy] Проксируем к реальному серверу: " + realHost + ":" + realPort);
-            OutputStream serverOut = server.getOutputStream();
-            InputStream serverIn = server.getInputStream();
-            Thread t1 = new Thread(() -> forward(clientIn, serverOut, "client->server"));
-            Thread t2 = new Thread(() -> forward(serverIn, clientOut, "server->client"));
-            t1.start();
-            t2.start();
-            t1.join();
-            t2.join();
-            logger.log("[Proxy] Проксирование завершено для " + client.getRemoteSocketAddress());
+    private void proxyToRealServer(Socket client, ByteBuffer prefix, Backend backend, ConnectionTrace trace, Session session) {
+        SocketChannel clientChannel = client.getChannel();
+        try (SocketChannel server = SocketChannel.open()) {
+            // kick/остановка закрывают и backend-ногу: оба потока пересылки выходят сразу
+            if (session != null) session.attachBackend(server);
+            relaySettings.apply(server.socket());
+            relaySettings.apply(client);
+            try {
+                server.socket().connect(new InetSocketAddress(backend.host, backend.port), backendConnectTimeout);
+            } catch (IOException e) {
+                // Канал закрыт kick'ом или остановкой прокси — это не ошибка backend
+                if (server.isOpen()) backend.onConnectFailure(String.valueOf(e.getMessage()));
+                throw e;
+            }
+            backend.onConnectSuccess();
+            trace.mark(ConnectionTrace.Phase.CONNECTED);
+            logger.debug("[Proxy] Проксируем к реальному серверу: " + backend);
+            mainListener.bytesFromClients.add(prefix.remaining());
+            if (session != null) session.bytesFromClient.add(prefix.remaining());
+            while (prefix.hasRemaining()) {
+                server.write(prefix);
+            }
+            // server->client в отдельной задаче, client->server — в текущем потоке
+            executor.execute("Loadless-Forward-S2C", () -> {
+                forward(server, clientChannel, "server->client", mainListener.bytesToClients,
+                        session != null ? session.bytesToClient : null, trace);
+                // Реальный сервер закрыл соединение — разрываем и клиентскую сторону
+                try {
+                    client.close();
+                } catch (IOException ignored) {}
+            });
+            forward(clientChannel, server, "client->server", mainListener.bytesFromClients,
+                    session != null ? session.bytesFromClient : null, null);
+            logger.debug("[Proxy] Проксирование завершено для " + client.getRemoteSocketAddress());
         } catch (Exception e) {
             logger.error("[Proxy] Ошибка проксирования: " + e.getMessage());
         }
     }
 
-    private void forward(InputStream in, OutputStream out, String direction) {
-        byte[] buf = new byte[4096];
-        int len;
+    private void forward(SocketChannel in, SocketChannel out, String direction, LongAdder transferred,
+                         LongAdder sessionTransferred, ConnectionTrace trace) {
         try {
-            while ((len = in.read(buf)) != -1) {
-                out.write(buf, 0, len);
-                out.flush();
-            }
-            logger.log("[Proxy] Поток завершён: " + direction);
+            RelayBuffer.pump(in, out, bufferPool, transferred, sessionTransferred, trace);
+            logger.debug("[Proxy] Поток завершён: " + direction);
         } catch (IOException e) {
-            logger.log("[Proxy] Обрыв потока (" + direction + "): " + e.getMessage());
+            logger.debug("[Proxy] Обрыв потока (" + direction + "): " + e.getMessage());
         }
     }
 
-    private int readVarInt(InputStream in) throws IOException {
-        int numRead = 0;
-        int result = 0;
-        byte read;
-        do {
-            read = (byte) in.read();
-            int value = (read & 0b01111111);
-            result |= (value << (7 * numRead));
-            numRead++;
-            if (numRead > 5) throw new IOException("VarInt слишком длинный");
-        } while ((read & 0b10000000) != 0);
-        return result;
+    private void testRealServerConnection() {
+        for (Backend backend : backendPool.getBackends()) {
+            try (Socket testSocket = new Socket()) {
+                testSocket.connect(new InetSocketAddress(backend.host, backend.port), backendConnectTimeout);
+                logger.log("[Proxy] Тестовое соединение с реальным сервером успешно: " + backend);
+            } catch (IOException e) {
+                logger.error("[Proxy] Не удалось подключиться к реальному серверу: " + backend + " — " + e.getMessage());
+            }
+        }
     }
 
-    private void writeVarInt(OutputStream out, int value) throws IOException {
-        do {
-            byte temp = (byte) (value & 0b01111111);
-            value >>>= 7;
-            if (value != 0) temp |= 0b10000000;
-            out.write(temp);
-        } while (value != 0);
-    }
-
-    private byte[] createStatusResponse(String json) throws IOException {
-        byte[] jsonBytes = json.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        java.io.ByteArrayOutputStream data = new java.io.ByteArrayOutputStream();
-        data.write(0x00); // packet id
-        writeVarInt(data, jsonBytes.length);
-        data.write(jsonBytes);
-        byte[] dataBytes = data.toByteArray();
-        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
-        writeVarInt(out, dataBytes.length);
-        out.write(dataBytes);
-        return out.toByteArray();
-    }
-
-    private byte[] createPingResponse(byte[] pingPacket) {
-        int len = 1 + (pingPacket.length - 1);
-        byte[] packet = new byte[len + 5];
-        int idx = 0;
-        idx += writeVarIntToArray(packet, idx, len);
-        packet[idx++] = 0x01; // packet id
-        System.arraycopy(pingPacket, 1, packet, idx, pingPacket.length - 1);
-        return packet;
-    }
-
-    private int writeVarIntToArray(byte[] arr, int offset, int value) {
-        int start = offset;
-        do {
-            byte temp = (byte) (value & 0b01111111);
-            value >>>= 7;
-            if (value != 0) temp |= 0b10000000;
-            arr[offset++] = temp;
-        } while (value != 0);
-        return offset - start;
+    /**
+     * Плавная остановка: закрыть порты (основной и переадресации), отвечать offline на ping
+     * и отклонять логины уже принятых подключений, подождать до graceMillis, пока игроки
+     * отключатся сами, затем закрыть оставшиеся сессии и остановить всё остальное ({@link #stop()}).
+     * Уже вошедшим игрокам причину не отправить: после логина поток сжат/зашифрован и идёт
+     * напрямую между клиентом и backend.
+     * @return число подключений, закрытых принудительно по истечении срока
+     */
+    public int shutdown(long graceMillis) {
+        if (!running) return 0;
+        draining = true;
+        for (String name : new ArrayList<>(forwards.keySet())) removeListener(name);
+        if (nioEngine != null) {
+            nioEngine.stopAccepting();
+        } else {
+            closeServerChannels();
+        }
+        logger.log("[Proxy] Приём подключений остановлен, ожидание отключения игроков: " + sessions.size()
+                + " (не дольше " + graceMillis + " мс)");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+        try {
+            while (mainListener.getActive() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int remaining = mainListener.getActive();
+        if (remaining > 0) logger.log("[Proxy] Срок ожидания истёк, подключения закрываются принудительно: " + remaining);
+        stop();
+        return remaining;
     }
 
-    private void testRealServerConnection() {
-        try (Socket testSocket = new Socket(realHost, realPort)) {
-            logger.log("[Proxy] Тестовое соединение с реальным сервером успешно: " + realHost + ":" + realPort);
-        } catch (IOException e) {
-            logger.error("[Proxy] Не удалось подключиться к реальному серверу: " + realHost + ":" + realPort + " — " + e.getMessage());
+    private void closeServerChannels() {
+        ServerSocketChannel[] channels = serverChannels;
+        if (channels == null) return;
+        for (ServerSocketChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
         }
     }
 
     public void stop() {
         running = false;
+        configManager.removeReloadListener(reloadListener);
+        for (String name : new ArrayList<>(forwards.keySet())) removeListener(name);
+        if (nioEngine != null) nioEngine.stop();
+        closeServerChannels();
+        // Обе стороны каждой сессии закрываются сразу, не дожидаясь таймаутов чтения
+        sessions.closeAll();
+        executor.shutdown();
+        backendPool.stop();
+        faviconManager.stop();
+        timerWheel.stop();
+        stopMetricsServer();
         logger.log("[Proxy] Сервер остановлен");
     }
 
-    // Метод для получения копии списка пользователей (например, для команды list)
-    public Map<String, ConnectedUser> getConnectedUsers() {
-        return new java.util.HashMap<>(connectedUsers);
+    // Реестр сессий (для команд list/kick и метрик)
+    public SessionRegistry getSessions() {
+        return sessions;
     }
 
-    // Отключение пользователя по нику (или UUID)
-    public boolean kickUser(String nameOrUuid) {
-        ConnectedUser user = connectedUsers.values().stream()
-                .filter(u -> u.name.equalsIgnoreCase(nameOrUuid) || u.uuid.equalsIgnoreCase(nameOrUuid))
-                .findFirst().orElse(null);
-        if (user != null) {
-            try {
-                user.socket.close();
-            } catch (Exception ignored) {}
-            connectedUsers.remove(user.name);
-            logger.log("[Proxy] Игрок был отключён через kick: " + user.name + " (UUID: " + user.uuid + ")");
-            return true;
-        }
-        return false;
+    /**
+     * Отключение игрока по нику (или UUID): закрываются клиентская и backend-сторона.
+     * @return отключённая сессия или null, если игрок не найден
+     */
+    public Session kickUser(String nameOrUuid) {
+        Session session = sessions.find(nameOrUuid);
+        if (session == null || !session.close()) return null;
+        logger.log("[Proxy] Игрок был отключён через kick: " + session.name + " (UUID: " + session.getUuid() + ")");
+        return session;
     }
 }
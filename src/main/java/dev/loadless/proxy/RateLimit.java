@@ -0,0 +1,50 @@
+package dev.loadless.proxy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket в форме GCRA: всё состояние корзины — один long (теоретическое время
+ * следующего прихода), поэтому проверка сводится к одному CAS и не требует блокировок.
+ * Сам объект хранит только параметры и общий для многих корзин.
+ */
+final class RateLimit {
+    // Интервал пополнения одного токена и допуск на всплеск, нс
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    private RateLimit(long intervalNanos, long toleranceNanos) {
+        this.intervalNanos = intervalNanos;
+        this.toleranceNanos = toleranceNanos;
+    }
+
+    /**
+     * @param perSecond токенов в секунду; ёмкость корзины равна той же величине
+     * @return null, если ограничение выключено (perSecond &lt;= 0)
+     */
+    static RateLimit perSecond(int perSecond) {
+        if (perSecond <= 0) return null;
+        long interval = Math.max(1, TimeUnit.SECONDS.toNanos(1) / perSecond);
+        return new RateLimit(interval, interval * (perSecond - 1));
+    }
+
+    /** Состояние новой (полной) корзины. */
+    static AtomicLong newBucket() {
+        return new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /** Взять токен из корзины state; false — корзина пуста. */
+    boolean tryAcquire(AtomicLong state, long nowNanos) {
+        while (true) {
+            long tat = state.get();
+            long base = tat == Long.MIN_VALUE || tat - nowNanos < 0 ? nowNanos : tat;
+            if (base - nowNanos > toleranceNanos) return false;
+            if (state.compareAndSet(tat, base + intervalNanos)) return true;
+        }
+    }
+
+    /** Сколько времени полностью опустевшая корзина восстанавливается, нс. */
+    long refillNanos() {
+        return intervalNanos + toleranceNanos;
+    }
+}
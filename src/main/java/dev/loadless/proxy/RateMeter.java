@@ -0,0 +1,67 @@
+package dev.loadless.proxy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Частота событий по посекундным ячейкам за последние несколько секунд. Каждая ячейка —
+ * одно long: номер секунды в старших битах и счётчик в младших, поэтому смена секунды
+ * и инкремент выполняются одним CAS без блокировок.
+ */
+final class RateMeter {
+    private static final int SLOTS = 16;
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int windowSeconds;
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS);
+    private final long startNanos = System.nanoTime();
+
+    /** @param windowSeconds за сколько полных секунд считается частота (не больше 15) */
+    RateMeter(int windowSeconds) {
+        this.windowSeconds = Math.max(1, Math.min(windowSeconds, SLOTS - 1));
+    }
+
+    void mark() {
+        // Секунды считаются с 1, чтобы пустая ячейка (0) не совпадала ни с одной секундой
+        long second = currentSecond();
+        int i = (int) (second & (SLOTS - 1));
+        while (true) {
+            long v = slots.get(i);
+            long next;
+            if (v >>> COUNT_BITS == second) {
+                if ((v & COUNT_MASK) == COUNT_MASK) return;
+                next = v + 1;
+            } else {
+                next = (second << COUNT_BITS) | 1;
+            }
+            if (slots.compareAndSet(i, v, next)) return;
+        }
+    }
+
+    /** Среднее число событий в секунду за окно (текущая неполная секунда не учитывается). */
+    double rate() {
+        long total = 0;
+        long second = currentSecond();
+        for (long s = second - windowSeconds; s < second; s++) total += count(s);
+        return (double) total / windowSeconds;
+    }
+
+    /** Наибольшее число событий за одну секунду окна. */
+    long peak() {
+        long max = 0;
+        long second = currentSecond();
+        for (long s = second - windowSeconds; s < second; s++) max = Math.max(max, count(s));
+        return max;
+    }
+
+    private long count(long second) {
+        if (second <= 0) return 0;
+        long v = slots.get((int) (second & (SLOTS - 1)));
+        return v >>> COUNT_BITS == second ? v & COUNT_MASK : 0;
+    }
+
+    private long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos) + 1;
+    }
+}
@@ -0,0 +1,111 @@
+package dev.loadless.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Буфер одного направления пересылки с адаптивным размером: при потоке данных,
+ * заполняющем буфер целиком, берёт увеличенный буфер из пула, а после долгого
+ * затишья возвращается к обычному. Менять буфер можно только когда он пуст.
+ */
+final class RelayBuffer {
+    // Сколько полностью заполненных чтений подряд нужно для перехода на большой буфер
+    private static final int GROW_AFTER = 2;
+    // Сколько небольших чтений подряд нужно для возврата к обычному буферу
+    private static final int SHRINK_AFTER = 64;
+
+    private final BufferPool pool;
+    private ByteBuffer buf;
+    private int fullStreak;
+    private int smallStreak;
+
+    RelayBuffer(BufferPool pool) {
+        this.pool = pool;
+        this.buf = pool.acquireSmall();
+    }
+
+    ByteBuffer buffer() {
+        return buf;
+    }
+
+    /** Гарантирует место под минимум bytes байт (для первичного префикса handshake + login). */
+    void ensureCapacity(int bytes) {
+        if (buf.remaining() >= bytes) return;
+        ByteBuffer bigger = ByteBuffer.allocateDirect(buf.position() + bytes);
+        buf.flip();
+        bigger.put(buf);
+        pool.release(buf);
+        buf = bigger;
+    }
+
+    /** Вызывается после того, как очередная порция из batch байт полностью отправлена и буфер очищен. */
+    void onDrained(int batch) {
+        int capacity = buf.capacity();
+        if (capacity != pool.getSmallSize() && capacity != pool.getLargeSize()) {
+            // Временный буфер под префикс — сразу меняем на обычный из пула
+            swap(pool.acquireSmall());
+        } else if (batch >= capacity) {
+            fullStreak++;
+            smallStreak = 0;
+            if (fullStreak >= GROW_AFTER && capacity < pool.getLargeSize()) {
+                swap(pool.acquireLarge());
+            }
+        } else if (capacity > pool.getSmallSize() && batch < pool.getSmallSize()) {
+            fullStreak = 0;
+            if (++smallStreak >= SHRINK_AFTER) {
+                swap(pool.acquireSmall());
+            }
+        } else {
+            fullStreak = 0;
+            smallStreak = 0;
+        }
+    }
+
+    private void swap(ByteBuffer next) {
+        pool.release(buf);
+        buf = next;
+        fullStreak = 0;
+        smallStreak = 0;
+    }
+
+    void release() {
+        pool.release(buf);
+        buf = null;
+    }
+
+    /**
+     * Блокирующая пересылка src -> dst до конца потока. Каждое чтение отправляется
+     * одной записью без промежуточных flush().
+     * @param transferred счётчик слушателя, пополняется по мере отправки (может быть null)
+     * @param sessionTransferred счётчик сессии игрока (может быть null)
+     * @param trace запись подключения, которой сообщается о первом прочитанном байте (может быть null)
+     * @return число переданных байт
+     */
+    static long pump(SocketChannel src, SocketChannel dst, BufferPool pool, LongAdder transferred,
+                     LongAdder sessionTransferred, ConnectionTrace trace) throws IOException {
+        RelayBuffer relay = new RelayBuffer(pool);
+        long total = 0;
+        try {
+            while (true) {
+                ByteBuffer b = relay.buffer();
+                int n = src.read(b);
+                if (n == -1) break;
+                if (trace != null && total == 0 && n > 0) trace.onFirstByte();
+                b.flip();
+                while (b.hasRemaining()) {
+                    dst.write(b);
+                }
+                b.clear();
+                total += n;
+                if (transferred != null) transferred.add(n);
+                if (sessionTransferred != null) sessionTransferred.add(n);
+                relay.onDrained(n);
+            }
+        } finally {
+            relay.release();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,45 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigManager;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Параметры сокетов и буферов для пересылки байт (секция &lt;core&gt;&lt;relay&gt; в config.xml).
+ */
+public class RelaySettings {
+    public final boolean tcpNoDelay;
+    // 0 — оставить значение ОС
+    public final int sendBuffer;
+    public final int receiveBuffer;
+    public final int bufferSize;
+    public final int maxBufferSize;
+
+    public RelaySettings(boolean tcpNoDelay, int sendBuffer, int receiveBuffer, int bufferSize, int maxBufferSize) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBuffer = sendBuffer;
+        this.receiveBuffer = receiveBuffer;
+        this.bufferSize = bufferSize;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    public static RelaySettings fromConfig(ConfigManager configManager) {
+        return new RelaySettings(
+                configManager.getRelayTcpNoDelay(),
+                configManager.getRelaySendBuffer(),
+                configManager.getRelayReceiveBuffer(),
+                configManager.getRelayBufferSize(),
+                configManager.getRelayMaxBufferSize());
+    }
+
+    public void apply(Socket socket) throws IOException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (sendBuffer > 0) socket.setSendBufferSize(sendBuffer);
+        if (receiveBuffer > 0) socket.setReceiveBufferSize(receiveBuffer);
+    }
+
+    public BufferPool createBufferPool() {
+        return new BufferPool(bufferSize, maxBufferSize);
+    }
+}
@@ -0,0 +1,45 @@
+package dev.loadless.proxy;
+
+import dev.loadless.protocol.LoginStart;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Взвешенный round-robin. Порядок обхода заранее строится «плавным» алгоритмом
+ * (как в nginx), поэтому backend с большим весом не получают подключения пачками,
+ * а выбор — это один инкремент счётчика.
+ */
+final class RoundRobinStrategy implements BalancingStrategy {
+    // Предел длины расписания при больших весах
+    private static final int MAX_SCHEDULE = 4096;
+
+    private final Backend[] schedule;
+    private final AtomicInteger next = new AtomicInteger();
+
+    RoundRobinStrategy(Backend[] backends) {
+        int total = 0;
+        for (Backend b : backends) total += b.weight;
+        int length = Math.min(total, MAX_SCHEDULE);
+        schedule = new Backend[length];
+        int[] current = new int[backends.length];
+        for (int slot = 0; slot < length; slot++) {
+            int best = 0;
+            for (int i = 0; i < backends.length; i++) {
+                current[i] += backends[i].weight;
+                if (current[i] > current[best]) best = i;
+            }
+            current[best] -= total;
+            schedule[slot] = backends[best];
+        }
+    }
+
+    @Override
+    public Backend select(LoginStart login) {
+        int start = Math.floorMod(next.getAndIncrement(), schedule.length);
+        for (int i = 0; i < schedule.length; i++) {
+            Backend b = schedule[(start + i) % schedule.length];
+            if (b.isAvailable()) return b;
+        }
+        return null;
+    }
+}
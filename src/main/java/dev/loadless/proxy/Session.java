@@ -0,0 +1,96 @@
+package dev.loadless.proxy;
+
+import dev.loadless.protocol.Codec;
+import dev.loadless.protocol.LoginStart;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сессия игрока от логина до закрытия: имя, UUID (двумя long), адрес, backend, счётчики
+ * байт и владение обеими сторонами соединения. {@link #close()} закрывает клиента и
+ * backend сразу — потоки или selector-задачи пересылки завершаются и возвращают буферы,
+ * не дожидаясь таймаутов.
+ */
+public final class Session {
+    public final String name;
+    public final boolean hasUuid;
+    public final long uuidMost;
+    public final long uuidLeast;
+    public final InetSocketAddress remote;
+    // Имя backend, на который направлен игрок
+    public final String backend;
+    public final Instant connectedAt = Instant.now();
+    final LongAdder bytesFromClient = new LongAdder();
+    final LongAdder bytesToClient = new LongAdder();
+    // Закрывает клиентскую сторону (блокирующий движок) или всё соединение (NIO)
+    private final Runnable teardown;
+    private volatile Closeable backendLeg;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    Session(LoginStart login, InetSocketAddress remote, String backend, Runnable teardown) {
+        this.name = login.name;
+        this.hasUuid = login.hasUuid;
+        this.uuidMost = login.uuidMost;
+        this.uuidLeast = login.uuidLeast;
+        this.remote = remote;
+        this.backend = backend;
+        this.teardown = teardown;
+    }
+
+    /** Канал к backend блокирующего движка; если сессия уже закрыта — закрывается сразу. */
+    void attachBackend(Closeable leg) {
+        backendLeg = leg;
+        if (closed.get()) closeQuietly(leg);
+    }
+
+    /**
+     * Закрыть обе стороны. Повторный вызов ничего не делает.
+     * @return false, если сессия уже была закрыта
+     */
+    public boolean close() {
+        if (!closed.compareAndSet(false, true)) return false;
+        teardown.run();
+        Closeable leg = backendLeg;
+        if (leg != null) closeQuietly(leg);
+        return true;
+    }
+
+    /** Соединение уже закрыто движком: teardown не нужен, повторный {@link #close()} ничего не сделает. */
+    void markClosed() {
+        closed.set(true);
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /** IP клиента (null, если адрес неизвестен — сокет закрылся до регистрации). */
+    public InetAddress getAddress() {
+        return remote != null ? remote.getAddress() : null;
+    }
+
+    /** UUID в hex-виде (32 символа) или "-", если клиент его не прислал. */
+    public String getUuid() {
+        return hasUuid ? Codec.uuidToHex(uuidMost, uuidLeast) : "-";
+    }
+
+    public long getBytesFromClient() {
+        return bytesFromClient.sum();
+    }
+
+    public long getBytesToClient() {
+        return bytesToClient.sum();
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,89 @@
+package dev.loadless.proxy;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Активные сессии с индексами по имени (без учёта регистра), UUID и IP. Регистрация,
+ * снятие и поиск — O(1); снятие удаляет из индекса только ту же самую сессию, поэтому
+ * повторный вход с тем же ником не теряет новую запись при закрытии старой.
+ */
+public final class SessionRegistry {
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Session> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Session> byUuid = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<InetAddress, Set<Session>> byAddress = new ConcurrentHashMap<>();
+
+    void register(Session session) {
+        sessions.add(session);
+        byName.put(nameKey(session.name), session);
+        if (session.hasUuid) byUuid.put(new UUID(session.uuidMost, session.uuidLeast), session);
+        InetAddress address = session.getAddress();
+        if (address == null) return;
+        // Добавление внутри compute: иначе unregister может убрать опустевший набор между get и add
+        byAddress.compute(address, (a, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(session);
+            return set;
+        });
+    }
+
+    void unregister(Session session) {
+        if (!sessions.remove(session)) return;
+        byName.remove(nameKey(session.name), session);
+        if (session.hasUuid) byUuid.remove(new UUID(session.uuidMost, session.uuidLeast), session);
+        InetAddress address = session.getAddress();
+        if (address == null) return;
+        byAddress.computeIfPresent(address, (a, set) -> {
+            set.remove(session);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /** Сессия по нику или UUID (32 hex-символа, дефисы допускаются); null — не найдена. */
+    public Session find(String nameOrUuid) {
+        Session session = byName.get(nameKey(nameOrUuid));
+        if (session != null) return session;
+        UUID uuid = parseUuid(nameOrUuid);
+        return uuid != null ? byUuid.get(uuid) : null;
+    }
+
+    /** Сессии с одного IP (без копирования). */
+    public Collection<Session> byAddress(InetAddress address) {
+        Set<Session> set = byAddress.get(address);
+        return set != null ? Collections.unmodifiableSet(set) : Collections.emptySet();
+    }
+
+    /** Все сессии (слабо согласованное представление, без копирования). */
+    public Collection<Session> all() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /** Закрыть все сессии (обе стороны каждой). */
+    public void closeAll() {
+        for (Session session : sessions) session.close();
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static UUID parseUuid(String value) {
+        String hex = value.replace("-", "");
+        if (hex.length() != 32) return null;
+        try {
+            return new UUID(Long.parseUnsignedLong(hex.substring(0, 16), 16), Long.parseUnsignedLong(hex.substring(16), 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
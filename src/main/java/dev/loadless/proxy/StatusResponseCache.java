@@ -0,0 +1,156 @@
+package dev.loadless.proxy;
+
+import dev.loadless.protocol.Codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Кэш готовых (уже обрамлённых длиной) пакетов status response.
+ * Пакет пересобирается только при изменении MOTD, онлайна, версии или favicon
+ * (иконки сравниваются по ссылке: FaviconManager публикует новый объект при перезагрузке);
+ * для каждого протокола клиента хранится свой вариант. Кэш помнит несколько последних наборов
+ * значений, чтобы MOTD, чередуемые Lua-модулями, не пересобирались на каждый ping.
+ */
+final class StatusResponseCache {
+    // Защита от перебора номеров протокола: при переполнении варианты сбрасываются
+    private static final int MAX_VARIANTS = 64;
+
+    // Наборы значений; новый вытесняет записи по кругу
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    StatusResponseCache() {
+        this(1);
+    }
+
+    StatusResponseCache(int capacity) {
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @param versionProtocol протокол из конфига (или 999 для offline)
+     * @param echoProtocol отвечать клиенту его же протоколом (версия всегда «совместима»)
+     * @param clientProtocol протокол из handshake клиента
+     */
+    byte[] get(String motd, String versionName, int versionProtocol, boolean echoProtocol,
+               int online, int max, Favicon favicon, int clientProtocol) {
+        Entry entry = find(motd, versionName, versionProtocol, echoProtocol, online, max, favicon);
+        if (entry == null) {
+            entry = new Entry(motd, versionName, versionProtocol, echoProtocol, online, max, favicon);
+            store(entry);
+        }
+        int protocol = echoProtocol ? clientProtocol : versionProtocol;
+        byte[] packet = entry.variants.get(protocol);
+        if (packet == null) {
+            if (entry.variants.size() >= MAX_VARIANTS) entry.variants.clear();
+            packet = entry.build(protocol);
+            entry.variants.put(protocol, packet);
+        }
+        return packet;
+    }
+
+    private Entry find(String motd, String versionName, int versionProtocol, boolean echoProtocol,
+                       int online, int max, Favicon favicon) {
+        for (int i = 0; i < entries.length(); i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && entry.matches(motd, versionName, versionProtocol, echoProtocol, online, max, favicon)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void store(Entry entry) {
+        entries.set(Math.floorMod(nextSlot.getAndIncrement(), entries.length()), entry);
+    }
+
+    /** Сбросить кэш (например, после изменения формата ответа). */
+    void invalidate() {
+        for (int i = 0; i < entries.length(); i++) entries.set(i, null);
+    }
+
+    private static final class Entry {
+        final String motd;
+        final String versionName;
+        final int versionProtocol;
+        final boolean echoProtocol;
+        final int online;
+        final int max;
+        final Favicon favicon;
+        final ConcurrentHashMap<Integer, byte[]> variants = new ConcurrentHashMap<>();
+
+        Entry(String motd, String versionName, int versionProtocol, boolean echoProtocol, int online, int max, Favicon favicon) {
+            this.motd = motd;
+            this.versionName = versionName;
+            this.versionProtocol = versionProtocol;
+            this.echoProtocol = echoProtocol;
+            this.online = online;
+            this.max = max;
+            this.favicon = favicon;
+        }
+
+        boolean matches(String motd, String versionName, int versionProtocol, boolean echoProtocol, int online, int max, Favicon favicon) {
+            return this.online == online && this.max == max
+                    && this.versionProtocol == versionProtocol && this.echoProtocol == echoProtocol
+                    && Objects.equals(this.motd, motd)
+                    && Objects.equals(this.versionName, versionName)
+                    && this.favicon == favicon;
+        }
+
+        byte[] build(int protocol) {
+            StringBuilder json = new StringBuilder(256 + (favicon != null ? favicon.jsonLiteral.length() : 0));
+            json.append("{\"version\":{\"name\":");
+            appendJsonString(json, versionName);
+            json.append(",\"protocol\":").append(protocol).append("},");
+            json.append("\"players\":{\"max\":").append(max).append(",\"online\":").append(online).append(",\"sample\":[]},");
+            json.append("\"description\":{\"text\":");
+            appendJsonString(json, motd);
+            json.append('}');
+            if (favicon != null) {
+                json.append(",\"favicon\":").append(favicon.jsonLiteral);
+            }
+            json.append('}');
+            return frame(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Пакет: VarInt длина | 0x00 | VarInt длина строки | JSON
+    private static byte[] frame(byte[] json) {
+        int bodyLen = 1 + Codec.varIntSize(json.length) + json.length;
+        byte[] packet = new byte[Codec.varIntSize(bodyLen) + bodyLen];
+        int idx = Codec.writeVarInt(packet, 0, bodyLen);
+        packet[idx++] = 0x00;
+        idx = Codec.writeVarInt(packet, idx, json.length);
+        System.arraycopy(json, 0, packet, idx, json.length);
+        return packet;
+    }
+
+    static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    case '\b': sb.append("\\b"); break;
+                    case '\f': sb.append("\\f"); break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -1,79 +1,123 @@
 package dev.loadless.proxy;
 
 import dev.loadless.core.Logger;
+import dev.loadless.core.TaskExecutor;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Прозрачная TCP-переадресация блокирующего движка. Пул задач, буферы и настройки
+ * сокетов общие с основным прокси; счётчики ведутся в {@link ListenerStats}.
+ */
 public class TCPProxy implements Runnable {
-    private final int listenPort;
+    private final ListenerStats stats;
     private final String targetHost;
     private final int targetPort;
+    private final int connectTimeout;
+    private final int backlog;
     private final Logger logger;
+    private final TaskExecutor executor;
+    private final RelaySettings relaySettings;
+    private final BufferPool bufferPool;
+    private ServerSocketChannel serverChannel;
     private volatile boolean running = false;
 
-    public TCPProxy(int listenPort, String targetHost, int targetPort, Logger logger) {
-        this.listenPort = listenPort;
+    public TCPProxy(ListenerStats stats, String targetHost, int targetPort, int connectTimeout, int backlog,
+                    Logger logger, TaskExecutor executor, RelaySettings relaySettings, BufferPool bufferPool) {
+        this.stats = stats;
         this.targetHost = targetHost;
         this.targetPort = targetPort;
+        this.connectTimeout = connectTimeout;
+        this.backlog = backlog;
         this.logger = logger;
+        this.executor = executor;
+        this.relaySettings = relaySettings;
+        this.bufferPool = bufferPool;
     }
 
-    public void start() {
+    /** Порт занимается сразу, чтобы ошибка bind дошла до вызывающего. */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(stats.address, backlog);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
         running = true;
-        new Thread(this, "TCPProxy-" + listenPort).start();
-        logger.log("[TCPProxy] Прокси на порту " + listenPort + " -> " + targetHost + ":" + targetPort + " запущен");
+        new Thread(this, "TCPProxy-" + stats.address.getPort()).start();
+        logger.log("[TCPProxy] Прокси на " + stats.address + " -> " + targetHost + ":" + targetPort + " запущен");
     }
 
     public void stop() {
         running = false;
+        try {
+            // Закрытие канала прерывает accept; уже открытые соединения доживают сами
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException ignored) {}
     }
 
     @Override
     public void run() {
-        try (ServerSocket serverSocket = new ServerSocket(listenPort)) {
+        try (ServerSocketChannel server = serverChannel) {
             while (running) {
-                Socket client = serverSocket.accept();
-                logger.log("[TCPProxy] Новое соединение: " + client.getRemoteSocketAddress());
-                new Thread(() -> handleClient(client), "TCPProxy-Client").start();
+                SocketChannel client = server.accept();
+                stats.acceptRate.mark();
+                stats.accepted.increment();
+                logger.debug("[TCPProxy] Новое соединение: " + client.getRemoteAddress());
+                try {
+                    executor.execute("TCPProxy-Client-" + stats.address.getPort(), () -> {
+                        stats.active.incrementAndGet();
+                        try {
+                            handleClient(client);
+                        } finally {
+                            stats.active.decrementAndGet();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    stats.rejected.increment();
+                    logger.error("[TCPProxy] Нет свободных потоков, соединение отклонено: " + client.getRemoteAddress());
+                    client.close();
+                }
             }
         } catch (IOException e) {
-            logger.error("[TCPProxy] Ошибка сервера на порту " + listenPort + ": " + e.getMessage());
+            if (running) logger.error("[TCPProxy] Ошибка сервера на " + stats.address + ": " + e.getMessage());
         }
+        logger.log("[TCPProxy] Прокси на " + stats.address + " остановлен");
     }
 
-    private void handleClient(Socket client) {
-        try (client; Socket server = new Socket(targetHost, targetPort)) {
-            logger.log("[TCPProxy] Проксируем: " + client.getRemoteSocketAddress() + " <-> " + targetHost + ":" + targetPort);
-            Thread t1 = new Thread(() -> {
+    private void handleClient(SocketChannel client) {
+        try (client; SocketChannel server = SocketChannel.open()) {
+            relaySettings.apply(client.socket());
+            relaySettings.apply(server.socket());
+            server.socket().connect(new InetSocketAddress(targetHost, targetPort), connectTimeout);
+            logger.debug("[TCPProxy] Проксируем: " + client.getRemoteAddress() + " <-> " + targetHost + ":" + targetPort);
+            executor.execute("TCPProxy-S2C-" + stats.address.getPort(), () -> {
                 try {
-                    forward(client.getInputStream(), server.getOutputStream());
-                } catch (IOException e) {
-                    logger.error("[TCPProxy] Ошибка потока client->server: " + e.getMessage());
-                }
-            });
-            Thread t2 = new Thread(() -> {
-                try {
-                    forward(server.getInputStream(), client.getOutputStream());
+                    RelayBuffer.pump(server, client, bufferPool, stats.bytesToClients, null, null);
+                } catch (ClosedChannelException ignored) {
+                    // Клиент отключился первым, и каналы уже закрыты
                 } catch (IOException e) {
                     logger.error("[TCPProxy] Ошибка потока server->client: " + e.getMessage());
                 }
+                try {
+                    client.close();
+                } catch (IOException ignored) {}
             });
-            t1.start();
-            t2.start();
-            t1.join();
-            t2.join();
-            logger.log("[TCPProxy] Соединение завершено: " + client.getRemoteSocketAddress());
+            try {
+                RelayBuffer.pump(client, server, bufferPool, stats.bytesFromClients, null, null);
+            } catch (ClosedChannelException ignored) {
+                // Сервер отключился первым: поток server->client уже закрыл клиентский канал
+            } catch (IOException e) {
+                logger.error("[TCPProxy] Ошибка потока client->server: " + e.getMessage());
+            }
+            logger.debug("[TCPProxy] Соединение завершено: " + client.socket().getRemoteSocketAddress());
         } catch (Exception e) {
             logger.error("[TCPProxy] Ошибка проксирования: " + e.getMessage());
         }
     }
-
-    private void forward(InputStream in, OutputStream out) throws IOException {
-        byte[] buf = new byte[4096];
-        int len;
-        while ((len = in.read(buf)) != -1) {
-            out.write(buf, 0, len);
-            out.flush();
-        }
-    }
 }
@@ -0,0 +1,92 @@
+package dev.loadless.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+    // Маленькое колесо: таймауты длиннее 8 мс проходят его по нескольку кругов
+    private final TimerWheel timer = new TimerWheel(1, 8, null);
+
+    @AfterEach
+    void stop() {
+        timer.stop();
+    }
+
+    @Test
+    void firesOnceAndNotEarlier() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch fired = new CountDownLatch(1);
+        long started = System.nanoTime();
+        AtomicLong elapsed = new AtomicLong();
+        timer.schedule(() -> {
+            elapsed.set(System.nanoTime() - started);
+            runs.incrementAndGet();
+            fired.countDown();
+        }, 30);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(elapsed.get() >= TimeUnit.MILLISECONDS.toNanos(30), "сработал раньше срока: " + elapsed.get());
+        Thread.sleep(30);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void timeoutsSpanningSeveralRoundsKeepTheirDeadlines() throws InterruptedException {
+        long[] delays = {0, 1, 7, 8, 9, 16, 17, 25, 40};
+        CountDownLatch fired = new CountDownLatch(delays.length);
+        AtomicInteger early = new AtomicInteger();
+        for (long delay : delays) {
+            long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            timer.schedule(() -> {
+                if (System.nanoTime() - due < 0) early.incrementAndGet();
+                fired.countDown();
+            }, delay);
+        }
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+    }
+
+    @Test
+    void cancelledTimeoutNeverRuns() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout timeout = timer.schedule(runs::incrementAndGet, 20);
+        // Отмена и до, и после переноса в колесо
+        TimerWheel.Timeout queued = timer.schedule(runs::incrementAndGet, 20);
+        assertTrue(queued.cancel());
+        Thread.sleep(5);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(50);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void cancelAfterFiringReturnsFalse() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel.Timeout timeout = timer.schedule(fired::countDown, 1);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void cancellingOneEntryKeepsItsNeighbours() throws InterruptedException {
+        // Несколько записей в одной ячейке: удаление из середины списка
+        CountDownLatch fired = new CountDownLatch(2);
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        timer.schedule(fired::countDown, 15);
+        TimerWheel.Timeout middle = timer.schedule(cancelledRuns::incrementAndGet, 15);
+        timer.schedule(fired::countDown, 15);
+        Thread.sleep(3);
+        assertTrue(middle.cancel());
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertEquals(0, cancelledRuns.get());
+    }
+}
@@ -0,0 +1,122 @@
+package dev.loadless.modules;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LuaChunkCacheTest {
+    private static final byte[] SOURCE = "return 1 + 1".getBytes(StandardCharsets.UTF_8);
+    // Не компилируется: успешная загрузка с таким исходником означает, что прототип взят из кэша
+    private static final byte[] BROKEN = "!!! not lua".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path temp;
+
+    private final Globals compiler = JsePlatform.standardGlobals();
+
+    @Test
+    void hashFollowsModuleContent() throws IOException {
+        Path module = Files.createDirectories(temp.resolve("mod"));
+        Files.write(module.resolve("main.lua"), SOURCE);
+        Files.createDirectories(module.resolve("lib"));
+        Files.write(module.resolve("lib/util.lua"), SOURCE);
+        String hash = LuaChunkCache.hash(module.toFile());
+        assertEquals(64, hash.length());
+        assertEquals(hash, LuaChunkCache.hash(module.toFile()));
+
+        Files.write(module.resolve("lib/util.lua"), "return 3".getBytes(StandardCharsets.UTF_8));
+        String edited = LuaChunkCache.hash(module.toFile());
+        assertNotEquals(hash, edited);
+
+        // Переименование файла без изменения содержимого тоже меняет хэш
+        Files.move(module.resolve("lib/util.lua"), module.resolve("lib/other.lua"));
+        assertNotEquals(edited, LuaChunkCache.hash(module.toFile()));
+    }
+
+    @Test
+    void unchangedModuleIsLoadedFromCache() throws IOException {
+        Path dir = temp.resolve("cache");
+        LuaChunkCache cache = new LuaChunkCache(dir);
+        String hash = hash('a');
+        assertNotNull(cache.load("mod", hash, SOURCE, "mod/main.lua", compiler));
+        assertEquals(List.of("mod-" + hash.substring(0, 32) + ".luac"), files(dir));
+        assertNotNull(cache.load("mod", hash, BROKEN, "mod/main.lua", compiler));
+        // Другой хэш — исходник компилируется заново
+        assertThrows(LuaError.class, () -> cache.load("mod", hash('b'), BROKEN, "mod/main.lua", compiler));
+    }
+
+    @Test
+    void corruptCacheFileIsRecompiled() throws IOException {
+        Path dir = temp.resolve("cache");
+        LuaChunkCache cache = new LuaChunkCache(dir);
+        String hash = hash('c');
+        cache.load("mod", hash, SOURCE, "mod/main.lua", compiler);
+        Path cached = dir.resolve("mod-" + hash.substring(0, 32) + ".luac");
+        byte[] good = Files.readAllBytes(cached);
+
+        byte[] garbage = "garbage".getBytes(StandardCharsets.UTF_8);
+        Files.write(cached, garbage);
+        assertNotNull(cache.load("mod", hash, SOURCE, "mod/main.lua", compiler));
+        assertArrayEquals(good, Files.readAllBytes(cached));
+
+        // Обрезанный файл тоже не мешает загрузке
+        Files.write(cached, new byte[0]);
+        assertNotNull(cache.load("mod", hash, SOURCE, "mod/main.lua", compiler));
+        assertArrayEquals(good, Files.readAllBytes(cached));
+    }
+
+    @Test
+    void newVersionRemovesOnlyOldVersionsOfSameModule() throws IOException {
+        Path dir = temp.resolve("cache");
+        LuaChunkCache cache = new LuaChunkCache(dir);
+        cache.load("foo", hash('1'), SOURCE, "foo/main.lua", compiler);
+        // Имя "foo-bar" начинается с префикса "foo-"
+        cache.load("foo-bar", hash('2'), SOURCE, "foo-bar/main.lua", compiler);
+        Files.write(dir.resolve("foo-notes.txt"), SOURCE);
+        cache.load("foo", hash('3'), SOURCE, "foo/main.lua", compiler);
+
+        List<String> files = files(dir);
+        assertEquals(List.of(
+                "foo-" + hash('3').substring(0, 32) + ".luac",
+                "foo-bar-" + hash('2').substring(0, 32) + ".luac",
+                "foo-notes.txt"), files);
+        assertFalse(files.stream().anyMatch(name -> name.endsWith(".tmp")));
+    }
+
+    @Test
+    void moduleNameIsSanitizedForFileName() throws IOException {
+        Path dir = temp.resolve("cache");
+        new LuaChunkCache(dir).load("my mod/../x", hash('d'), SOURCE, "main.lua", compiler);
+        List<String> files = files(dir);
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).startsWith("my_mod_.._x-"), files.get(0));
+    }
+
+    private static String hash(char c) {
+        return String.valueOf(c).repeat(64);
+    }
+
+    private static List<String> files(Path dir) throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package dev.loadless.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CodecTest {
+
+    @Test
+    void varIntRoundTripsBoundaryValues() throws ProtocolException {
+        int[] values = {0, 1, 127, 128, 255, 16383, 16384, 2097151, 2097152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (int value : values) {
+            ByteBuffer buf = ByteBuffer.allocate(5);
+            Codec.writeVarInt(buf, value);
+            assertEquals(Codec.varIntSize(value), buf.position(), "размер " + value);
+            buf.flip();
+            assertEquals(value, Codec.readVarInt(buf));
+            assertEquals(0, buf.remaining());
+        }
+    }
+
+    @Test
+    void varIntArrayWriterMatchesBufferWriter() {
+        ByteBuffer buf = ByteBuffer.allocate(5);
+        Codec.writeVarInt(buf, 300);
+        byte[] arr = new byte[5];
+        int end = Codec.writeVarInt(arr, 0, 300);
+        assertEquals(buf.position(), end);
+        assertArrayEquals(java.util.Arrays.copyOf(buf.array(), end), java.util.Arrays.copyOf(arr, end));
+    }
+
+    @Test
+    void varLongRoundTripsNegative() throws ProtocolException {
+        ByteBuffer buf = ByteBuffer.allocate(10);
+        Codec.writeVarLong(buf, Long.MIN_VALUE);
+        assertEquals(10, buf.position());
+        buf.flip();
+        assertEquals(Long.MIN_VALUE, Codec.readVarLong(buf));
+    }
+
+    @Test
+    void rejectsOverlongAndTruncatedVarInt() {
+        ByteBuffer tooLong = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+        assertThrows(ProtocolException.class, () -> Codec.readVarInt(tooLong));
+        ByteBuffer truncated = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80});
+        assertThrows(ProtocolException.class, () -> Codec.readVarInt(truncated));
+    }
+
+    @Test
+    void writeStringMatchesJdkEncoder() throws ProtocolException {
+        String[] values = {"", "Steve", "Привет", "€uro", "emoji 😀", "lone \uD800 high", "lone \uDC00 low", "end \uD83D"};
+        for (String value : values) {
+            byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, Codec.utf8Length(value), value);
+            ByteBuffer buf = ByteBuffer.allocate(64);
+            Codec.writeString(buf, value);
+            buf.flip();
+            assertEquals(expected.length, Codec.readVarInt(buf));
+            byte[] actual = new byte[buf.remaining()];
+            buf.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void readStringFromHeapAndDirectBuffers() throws ProtocolException {
+        ByteBuffer heap = ByteBuffer.allocate(32);
+        Codec.writeString(heap, "Привет");
+        heap.flip();
+        ByteBuffer direct = ByteBuffer.allocateDirect(32);
+        direct.put(heap.duplicate()).flip();
+        assertEquals("Привет", Codec.readString(heap, 16));
+        assertEquals("Привет", Codec.readString(direct, 16));
+    }
+
+    @Test
+    void readStringEnforcesLimits() {
+        ByteBuffer tooManyChars = ByteBuffer.allocate(32);
+        Codec.writeString(tooManyChars, "abcdefgh");
+        tooManyChars.flip();
+        assertThrows(ProtocolException.class, () -> Codec.readString(tooManyChars, 4));
+        // Длина больше оставшихся байт
+        ByteBuffer cut = ByteBuffer.wrap(new byte[]{10, 'a', 'b'});
+        assertThrows(ProtocolException.class, () -> Codec.readString(cut, 16));
+    }
+
+    @Test
+    void uuidRoundTripsAndFormats() throws ProtocolException {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        Codec.writeUuid(buf, 0x0001020304050607L, 0x08090a0b0c0d0e0fL);
+        buf.flip();
+        long most = Codec.readUuidMost(buf);
+        long least = Codec.readUuidLeast(buf);
+        assertEquals("000102030405060708090a0b0c0d0e0f", Codec.uuidToHex(most, least));
+        assertEquals(new java.util.UUID(most, least).toString().replace("-", ""), Codec.uuidToHex(most, least));
+        ByteBuffer cut = ByteBuffer.allocate(12);
+        assertThrows(ProtocolException.class, () -> {
+            Codec.readUuidMost(cut);
+            Codec.readUuidLeast(cut);
+        });
+    }
+
+    @Test
+    void handshakeLengthMatchesWrittenPayload() throws ProtocolException {
+        String[] hosts = {"play.example.org", "сервер.рф", "mc.example.org\0FML3\0"};
+        for (String host : hosts) {
+            int len = Handshake.payloadLength(765, host, Handshake.STATE_LOGIN);
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            Handshake.write(buf, 765, host, 25565, Handshake.STATE_LOGIN);
+            assertEquals(len, buf.position(), host);
+            buf.flip();
+            Handshake handshake = new Handshake().read(buf, len);
+            assertEquals(host, handshake.serverAddress);
+            assertEquals(25565, handshake.serverPort);
+            assertEquals(Handshake.STATE_LOGIN, handshake.nextState);
+        }
+    }
+
+    @Test
+    void frameAddsLengthPrefix() {
+        byte[] payload = new byte[200];
+        byte[] framed = Codec.frame(payload);
+        assertEquals(202, framed.length);
+        assertEquals((byte) 0xC8, framed[0]);
+        assertEquals(0x01, framed[1]);
+    }
+}
@@ -0,0 +1,119 @@
+package dev.loadless.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FrameDecoderTest {
+
+    @Test
+    void waitsForCompleteFrameWithoutMovingPosition() throws ProtocolException {
+        FrameDecoder decoder = new FrameDecoder(1024);
+        ByteBuffer buf = ByteBuffer.wrap(new byte[]{3, 'a', 'b'});
+        assertEquals(-1, decoder.next(buf));
+        assertEquals(0, buf.position());
+        buf = ByteBuffer.wrap(new byte[]{3, 'a', 'b', 'c', 1, 'd'});
+        assertEquals(3, decoder.next(buf));
+        assertEquals(1, buf.position());
+        buf.position(buf.position() + 3);
+        assertEquals(1, decoder.next(buf));
+        assertEquals('d', buf.get());
+    }
+
+    @Test
+    void lengthVarIntSplitAcrossReads() throws ProtocolException {
+        FrameDecoder decoder = new FrameDecoder(1024);
+        // 300 = 0xAC 0x02: во «втором чтении» приходит остаток VarInt и payload
+        byte[] frame = Codec.frame(new byte[300]);
+        ByteBuffer buf = ByteBuffer.wrap(frame);
+        buf.limit(1);
+        assertEquals(-1, decoder.next(buf));
+        assertEquals(0, buf.position());
+        buf.limit(2);
+        assertEquals(-1, decoder.next(buf));
+        buf.limit(frame.length);
+        assertEquals(300, decoder.next(buf));
+        assertEquals(2, buf.position());
+    }
+
+    @Test
+    void rejectsOversizedAndMalformedLengths() {
+        FrameDecoder decoder = new FrameDecoder(16);
+        assertThrows(FrameTooLongException.class, () -> decoder.next(ByteBuffer.wrap(new byte[]{17})));
+        // Длина пакета — не больше трёх байт VarInt
+        ByteBuffer fourBytes = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+        assertThrows(ProtocolException.class, () -> decoder.next(fourBytes));
+    }
+
+    @Test
+    void limitCanChangeBetweenPhases() throws ProtocolException {
+        FrameDecoder decoder = new FrameDecoder(4);
+        assertThrows(FrameTooLongException.class, () -> decoder.next(ByteBuffer.wrap(new byte[]{8})));
+        decoder.setMaxFrameLength(8);
+        assertEquals(8, decoder.next(ByteBuffer.wrap(new byte[]{8, 0, 0, 0, 0, 0, 0, 0, 0})));
+    }
+
+    @Test
+    void frameBufferReadsFramesDeliveredByteByByte() throws IOException {
+        byte[] first = Codec.frame(new byte[]{0x00, 1, 2});
+        byte[] second = Codec.frame(new byte[200]);
+        byte[] all = new byte[first.length + second.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        FrameBuffer frames = new FrameBuffer(8, 512);
+        InputStream in = new OneByteStream(all);
+        int len = frames.readFrame(in);
+        assertEquals(3, len);
+        frames.buffer().position(frames.buffer().position() + len);
+        len = frames.readFrame(in);
+        assertEquals(200, len);
+        frames.buffer().position(frames.buffer().position() + len);
+        // Все принятые байты сохраняются для пересылки на backend
+        assertEquals(all.length, frames.received().remaining());
+        assertThrows(EOFException.class, () -> frames.readFrame(in));
+    }
+
+    @Test
+    void frameBufferRejectsTooMuchDataBeforeLogin() {
+        FrameBuffer frames = new FrameBuffer(8, 16);
+        // Много мелких кадров: каждый в пределах, но суммарно больше буфера до логина
+        byte[] junk = new byte[100];
+        InputStream in = new ByteArrayInputStream(junk);
+        assertThrows(FrameTooLongException.class, () -> {
+            while (true) {
+                int len = frames.readFrame(in);
+                frames.buffer().position(frames.buffer().position() + len);
+            }
+        });
+    }
+
+    // Поток, отдающий по одному байту за чтение (как медленный клиент)
+    private static final class OneByteStream extends InputStream {
+        private final byte[] data;
+        private int pos;
+
+        OneByteStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= data.length) return -1;
+            if (len == 0) return 0;
+            b[off] = data[pos++];
+            return 1;
+        }
+    }
+}
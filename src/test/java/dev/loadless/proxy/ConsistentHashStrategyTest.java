@@ -0,0 +1,142 @@
+package dev.loadless.proxy;
+
+import dev.loadless.config.ConfigManager.BackendConfig;
+import dev.loadless.protocol.LoginStart;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashStrategyTest {
+    private static final int PLAYERS = 6000;
+
+    @Test
+    void samePlayerAlwaysGetsSameBackend() {
+        Backend[] pool = {backend("a", 1, 0), backend("b", 1, 0), backend("c", 1, 0)};
+        ConsistentHashStrategy first = new ConsistentHashStrategy(pool, false);
+        ConsistentHashStrategy second = new ConsistentHashStrategy(pool, false);
+        for (int i = 0; i < 100; i++) {
+            Backend chosen = first.select(login("Player" + i));
+            assertSame(chosen, first.select(login("Player" + i)));
+            assertSame(chosen, second.select(login("player" + i)), "ник без учёта регистра");
+        }
+    }
+
+    @Test
+    void spreadsPlayersByWeight() {
+        Backend a = backend("a", 1, 0);
+        Backend b = backend("b", 1, 0);
+        Backend heavy = backend("heavy", 2, 0);
+        Map<Backend, Integer> counts = distribute(new ConsistentHashStrategy(new Backend[]{a, b, heavy}, false));
+        // Ожидание: 25% / 25% / 50%
+        assertShare(counts.get(a), 0.25);
+        assertShare(counts.get(b), 0.25);
+        assertShare(counts.get(heavy), 0.50);
+    }
+
+    @Test
+    void removingBackendMovesOnlyItsPlayers() {
+        Backend a = backend("a", 1, 0);
+        Backend b = backend("b", 1, 0);
+        Backend c = backend("c", 1, 0);
+        ConsistentHashStrategy before = new ConsistentHashStrategy(new Backend[]{a, b, c}, false);
+        ConsistentHashStrategy after = new ConsistentHashStrategy(new Backend[]{a, b}, false);
+        int moved = 0;
+        for (int i = 0; i < PLAYERS; i++) {
+            LoginStart login = login("Player" + i);
+            Backend was = before.select(login);
+            Backend now = after.select(login);
+            if (was == c) {
+                moved++;
+            } else {
+                assertSame(was, now);
+            }
+        }
+        assertShare(moved, 1.0 / 3);
+    }
+
+    @Test
+    void fullBackendPassesPlayerToNextOnRing() {
+        Backend a = backend("a", 1, 1);
+        Backend b = backend("b", 1, 0);
+        ConsistentHashStrategy strategy = new ConsistentHashStrategy(new Backend[]{a, b}, false);
+        String onA = null;
+        for (int i = 0; onA == null; i++) {
+            if (strategy.select(login("Player" + i)) == a) onA = "Player" + i;
+        }
+        assertTrue(a.tryAcquire());
+        assertSame(b, strategy.select(login(onA)));
+        a.release();
+        assertSame(a, strategy.select(login(onA)));
+    }
+
+    @Test
+    void noBackendAvailable() {
+        Backend a = backend("a", 1, 1);
+        ConsistentHashStrategy strategy = new ConsistentHashStrategy(new Backend[]{a}, false);
+        assertTrue(a.tryAcquire());
+        assertNull(strategy.select(login("Steve")));
+    }
+
+    @Test
+    void keysByUuidWhenPresent() {
+        Backend[] pool = {backend("a", 1, 0), backend("b", 1, 0), backend("c", 1, 0), backend("d", 1, 0)};
+        ConsistentHashStrategy strategy = new ConsistentHashStrategy(pool, true);
+        LoginStart login = login("Steve");
+        login.hasUuid = true;
+        login.uuidMost = 0x1234L;
+        login.uuidLeast = 0x5678L;
+        Backend chosen = strategy.select(login);
+        // Смена ника не меняет backend, смена UUID — почти наверняка меняет для какого-то из игроков
+        login.name = "Alex";
+        assertSame(chosen, strategy.select(login));
+        boolean differs = false;
+        for (long i = 0; i < 32 && !differs; i++) {
+            login.uuidLeast = i;
+            differs = strategy.select(login) != chosen;
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    void withoutLoginFallsBackToRoundRobin() {
+        Backend a = backend("a", 1, 0);
+        Backend b = backend("b", 1, 0);
+        ConsistentHashStrategy strategy = new ConsistentHashStrategy(new Backend[]{a, b}, false);
+        Backend first = strategy.select(null);
+        assertNotNull(first);
+        assertNotSame(first, strategy.select(null));
+    }
+
+    private static Map<Backend, Integer> distribute(ConsistentHashStrategy strategy) {
+        Map<Backend, Integer> counts = new HashMap<>();
+        for (int i = 0; i < PLAYERS; i++) counts.merge(strategy.select(login("Player" + i)), 1, Integer::sum);
+        return counts;
+    }
+
+    // Допуск ±5 п.п.: 160 точек на единицу веса дают отклонение в пределах нескольких процентов
+    private static void assertShare(int count, double expected) {
+        double share = (double) count / PLAYERS;
+        assertEquals(expected, share, 0.05);
+    }
+
+    private static LoginStart login(String name) {
+        LoginStart login = new LoginStart();
+        login.name = name;
+        return login;
+    }
+
+    // Без логгера: тесты не переводят circuit breaker в другое состояние
+    private static Backend backend(String name, int weight, int maxPlayers) {
+        BackendConfig config = new BackendConfig(name, "127.0.0.1", 25565, weight, maxPlayers);
+        BackendStatusPoller poller = new BackendStatusPoller(config.host, config.port, () -> 0, 1000, null, null);
+        return new Backend(config, poller, new CircuitBreaker(name, 1, 1000, null));
+    }
+}
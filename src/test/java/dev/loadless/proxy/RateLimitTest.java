@@ -0,0 +1,100 @@
+package dev.loadless.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void disabledWithoutPositiveRate() {
+        assertNull(RateLimit.perSecond(0));
+        assertNull(RateLimit.perSecond(-5));
+    }
+
+    @Test
+    void fullBucketAllowsBurstThenRejects() {
+        RateLimit limit = RateLimit.perSecond(5);
+        AtomicLong bucket = RateLimit.newBucket();
+        long now = 1_000_000L;
+        for (int i = 0; i < 5; i++) assertTrue(limit.tryAcquire(bucket, now), "токен " + i);
+        assertFalse(limit.tryAcquire(bucket, now));
+        // Отказ не расходует токен и не сдвигает состояние
+        assertFalse(limit.tryAcquire(bucket, now + SECOND / 5 - 1));
+        assertTrue(limit.tryAcquire(bucket, now + SECOND / 5));
+        assertFalse(limit.tryAcquire(bucket, now + SECOND / 5));
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() {
+        RateLimit limit = RateLimit.perSecond(10);
+        AtomicLong bucket = RateLimit.newBucket();
+        long now = 0;
+        while (limit.tryAcquire(bucket, now)) {
+            // опустошаем корзину
+        }
+        int granted = 0;
+        for (long t = now; t <= now + SECOND; t += SECOND / 100) {
+            if (limit.tryAcquire(bucket, t)) granted++;
+        }
+        // Токены приходят через 0.1 с, 0.2 с … 1 с после опустошения — без нового всплеска
+        assertEquals(10, granted);
+    }
+
+    @Test
+    void emptyBucketRecoversFullBurstAfterRefill() {
+        RateLimit limit = RateLimit.perSecond(4);
+        AtomicLong bucket = RateLimit.newBucket();
+        long now = 42;
+        while (limit.tryAcquire(bucket, now)) {
+            // опустошаем корзину
+        }
+        long later = now + limit.refillNanos();
+        for (int i = 0; i < 4; i++) assertTrue(limit.tryAcquire(bucket, later));
+        assertFalse(limit.tryAcquire(bucket, later));
+        // Долгий простой не копит токены сверх ёмкости
+        long idle = later + 100 * SECOND;
+        for (int i = 0; i < 4; i++) assertTrue(limit.tryAcquire(bucket, idle));
+        assertFalse(limit.tryAcquire(bucket, idle));
+    }
+
+    @Test
+    void worksAcrossNanoTimeOverflow() {
+        RateLimit limit = RateLimit.perSecond(2);
+        AtomicLong bucket = RateLimit.newBucket();
+        long now = Long.MAX_VALUE - SECOND / 4;
+        assertTrue(limit.tryAcquire(bucket, now));
+        assertTrue(limit.tryAcquire(bucket, now));
+        assertFalse(limit.tryAcquire(bucket, now));
+        // System.nanoTime() может перейти через Long.MAX_VALUE
+        assertTrue(limit.tryAcquire(bucket, now + SECOND / 2));
+        assertFalse(limit.tryAcquire(bucket, now + SECOND / 2));
+    }
+
+    @Test
+    void concurrentCallersShareOneBucket() throws InterruptedException {
+        RateLimit limit = RateLimit.perSecond(100);
+        AtomicLong bucket = RateLimit.newBucket();
+        AtomicInteger granted = new AtomicInteger();
+        long now = 7;
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int k = 0; k < 100; k++) {
+                    if (limit.tryAcquire(bucket, now)) granted.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(100, granted.get());
+    }
+}